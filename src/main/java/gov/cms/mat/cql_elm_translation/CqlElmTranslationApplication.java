@@ -1,21 +1,45 @@
 package gov.cms.mat.cql_elm_translation;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
 import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.config.CacheSpecProperties;
+import gov.cms.mat.cql_elm_translation.config.CacheSpecProperties.CacheSpec;
+import gov.cms.mat.cql_elm_translation.config.LibraryServiceHttpClients;
+import gov.cms.mat.cql_elm_translation.config.LibraryServiceHttpProperties;
+import gov.cms.mat.cql_elm_translation.config.TranslationDeadlineInterceptor;
 import gov.cms.mat.cql_elm_translation.config.logging.LogInterceptor;
 import gov.cms.mat.cql_elm_translation.config.security.SecurityFilter;
+import gov.cms.mat.cql_elm_translation.controllers.CqlConversionController;
+import gov.cms.mat.cql_elm_translation.service.DraftLibraryRevalidator;
+import gov.cms.mat.cql_elm_translation.service.cache.CompiledLibraryCache;
+import gov.cms.mat.cql_elm_translation.service.cache.CqlConversionPayloadCache;
+import gov.cms.mat.cql_elm_translation.service.cache.CqlToolsCache;
+import gov.cms.mat.cql_elm_translation.service.cache.ElmBaselineStore;
+import gov.cms.mat.cql_elm_translation.service.cache.LibraryVersionExpiry;
+import gov.cms.mat.cql_elm_translation.service.cache.UnresolvedLibraryCache;
+import gov.cms.mat.cql_elm_translation.service.incremental.IncrementalTranslationService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -29,8 +53,11 @@ import java.util.TimeZone;
 @SpringBootApplication(exclude = {MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
 @Configuration
 @Slf4j
-@Import({CqlLibraryService.class, RestTemplate.class})
+@Import(CqlLibraryService.class)
+@EnableConfigurationProperties({CacheSpecProperties.class, LibraryServiceHttpProperties.class})
 public class CqlElmTranslationApplication {
+  /** Cache of library CQL used by the {@link CqlLibraryService} of the translator library. */
+  public static final String CQL_LIBRARIES_CACHE = "cqlLibraries";
 
   public static void main(String[] args) {
     SpringApplication.run(CqlElmTranslationApplication.class, args);
@@ -43,13 +70,111 @@ public class CqlElmTranslationApplication {
     log.info("Set timezone to UTC.");
   }
 
+  /**
+   * Caffeine caches of the node, configured per cache under {@code madie.cache}. Statistics are
+   * recorded unless disabled, so actuator exports hit, miss, eviction and load metrics for every
+   * cache.
+   */
   @Bean
-  public CacheManager cacheManager() {
+  public CacheManager cacheManager(
+      CacheSpecProperties cacheSpecProperties,
+      @Value("${madie.library.draft-version-pattern:0\\.0\\.000}") String draftVersionPattern) {
     SimpleCacheManager cacheManager = new SimpleCacheManager();
-    cacheManager.setCaches(List.of(new ConcurrentMapCache("cqlLibraries")));
+    cacheManager.setCaches(
+        List.of(
+            caffeineCache(
+                CQL_LIBRARIES_CACHE,
+                cacheSpecProperties.spec("cql-libraries"),
+                (key, value) -> value instanceof String cql ? cql.length() : 1,
+                draftVersionPattern),
+            caffeineCache(
+                CqlConversionPayloadCache.CACHE_NAME,
+                cacheSpecProperties.spec("conversion-payloads"),
+                (key, value) -> payloadWeight((CqlConversionPayload) value),
+                draftVersionPattern),
+            caffeineCache(
+                CompiledLibraryCache.CACHE_NAME,
+                cacheSpecProperties.spec("compiled-libraries"),
+                null,
+                draftVersionPattern),
+            caffeineCache(
+                CqlToolsCache.CACHE_NAME,
+                cacheSpecProperties.spec("cql-tools-analysis"),
+                null,
+                draftVersionPattern),
+            caffeineCache(
+                IncrementalTranslationService.CACHE_NAME,
+                cacheSpecProperties.spec("editor-sessions"),
+                null,
+                draftVersionPattern),
+            caffeineCache(
+                UnresolvedLibraryCache.CACHE_NAME,
+                cacheSpecProperties.spec("unresolved-libraries"),
+                null,
+                draftVersionPattern),
+            caffeineCache(
+                DraftLibraryRevalidator.CACHE_NAME,
+                cacheSpecProperties.spec("draft-libraries"),
+                (key, value) -> ((DraftLibraryRevalidator.DraftSource) value).cql().length(),
+                draftVersionPattern),
+            caffeineCache(
+                ElmBaselineStore.CACHE_NAME,
+                cacheSpecProperties.spec("elm-baselines"),
+                (key, value) -> ((String) value).length(),
+                draftVersionPattern)));
     return cacheManager;
   }
 
+  private static CaffeineCache caffeineCache(
+      String name, CacheSpec spec, Weigher<Object, Object> weigher, String draftVersionPattern) {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder();
+    if (spec.getMaximumWeight() != null) {
+      Weigher<Object, Object> entryWeigher = weigher != null ? weigher : (key, value) -> 1;
+      builder.maximumWeight(spec.getMaximumWeight()).weigher(entryWeigher);
+    } else {
+      builder.maximumSize(spec.getMaximumSize());
+    }
+    if (spec.getDraftExpireAfterWrite() != null) {
+      builder.expireAfter(
+          new LibraryVersionExpiry(
+              spec.getDraftExpireAfterWrite(),
+              spec.getExpireAfterWrite(),
+              spec.getExpireAfterAccess(),
+              draftVersionPattern));
+    } else {
+      if (spec.getExpireAfterWrite() != null) {
+        builder.expireAfterWrite(spec.getExpireAfterWrite());
+      }
+      if (spec.getExpireAfterAccess() != null) {
+        builder.expireAfterAccess(spec.getExpireAfterAccess());
+      }
+    }
+    if (spec.isRecordStats()) {
+      builder.recordStats();
+    }
+    return new CaffeineCache(name, builder.build());
+  }
+
+  // weight is the number of characters held by the payload
+  private static int payloadWeight(CqlConversionPayload payload) {
+    return StringUtils.length(payload.getJson()) + StringUtils.length(payload.getXml());
+  }
+
+  /** Pooled HTTP client of the library service, see {@link LibraryServiceHttpClients}. */
+  @Bean
+  public ClientHttpRequestFactory libraryServiceRequestFactory(
+      LibraryServiceHttpProperties libraryServiceHttpProperties,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    return LibraryServiceHttpClients.requestFactory(
+        libraryServiceHttpProperties, meterRegistry.getIfAvailable());
+  }
+
+  /** RestTemplate of the library service client. */
+  @Bean
+  public RestTemplate restTemplate(ClientHttpRequestFactory libraryServiceRequestFactory) {
+    return new RestTemplate(libraryServiceRequestFactory);
+  }
+
   @Bean(name = "FilterRegistrationBeanSecurityFilter")
   public FilterRegistrationBean<SecurityFilter> securityFilter(SecurityFilter securityFilter) {
     FilterRegistrationBean<SecurityFilter> registrationBean =
@@ -60,13 +185,16 @@ public class CqlElmTranslationApplication {
   }
 
   @Bean
-  public WebMvcConfigurer corsConfigurer(@Autowired LogInterceptor logInterceptor) {
+  public WebMvcConfigurer corsConfigurer(
+      @Autowired LogInterceptor logInterceptor,
+      @Autowired TranslationDeadlineInterceptor translationDeadlineInterceptor) {
     return new WebMvcConfigurer() {
 
       @Override
       public void addInterceptors(InterceptorRegistry registry) {
         WebMvcConfigurer.super.addInterceptors(registry);
         registry.addInterceptor(logInterceptor);
+        registry.addInterceptor(translationDeadlineInterceptor);
       }
 
       @Override
@@ -74,6 +202,10 @@ public class CqlElmTranslationApplication {
         registry
             .addMapping("/**")
             .allowedMethods("PUT", "POST", "GET")
+            .exposedHeaders(
+                CqlConversionController.TRANSLATION_CACHE_HEADER,
+                CqlConversionController.ELM_HASH_HEADER,
+                HttpHeaders.ETAG)
             .allowedOrigins(
                 "http://localhost:9000",
                 "https://dev-madie.hcqis.org",
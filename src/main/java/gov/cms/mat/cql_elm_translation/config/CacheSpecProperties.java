@@ -0,0 +1,50 @@
+package gov.cms.mat.cql_elm_translation.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caffeine settings of the caches of the node, bound from {@code madie.cache.<spec>} where the
+ * spec name is the kebab-case name used in {@code application.yaml}, e.g. {@code cql-libraries}.
+ */
+@Data
+@ConfigurationProperties(prefix = "madie")
+public class CacheSpecProperties {
+  private Map<String, CacheSpec> cache = new LinkedHashMap<>();
+
+  /**
+   * Settings of one cache.
+   *
+   * @param name spec name, e.g. {@code cql-libraries}
+   * @return the configured settings, or defaults that bound the cache to 1000 entries
+   */
+  public CacheSpec spec(String name) {
+    return cache.getOrDefault(name, new CacheSpec());
+  }
+
+  @Data
+  public static class CacheSpec {
+    /** Maximum number of entries; ignored when a maximum weight is set. */
+    private long maximumSize = 1000;
+
+    /** Maximum total weight, in the unit of the weigher of the cache, usually characters. */
+    private Long maximumWeight;
+
+    private Duration expireAfterWrite;
+    private Duration expireAfterAccess;
+
+    /**
+     * Expiry of draft and unversioned library entries. When set, released versions use {@link
+     * #expireAfterWrite} or {@link #expireAfterAccess} instead, which then cannot both be set, or
+     * never expire when neither is set.
+     */
+    private Duration draftExpireAfterWrite;
+
+    /** Whether hit, miss, eviction and load statistics are recorded and exported as metrics. */
+    private boolean recordStats = true;
+  }
+}
@@ -0,0 +1,137 @@
+package gov.cms.mat.cql_elm_translation.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Builds the HTTP client used for the library service. By default this is a pooled Apache
+ * HttpClient that keeps connections alive between include fetches, so a fetch rarely pays for a
+ * new connection and TLS handshake. The pool is bounded per route and in total, idle and expired
+ * connections are evicted in the background, and the pool state and the time spent waiting for a
+ * connection are exported as metrics. With HTTP/2 enabled the JDK client is used instead, which
+ * multiplexes all fetches over one connection per host.
+ */
+public final class LibraryServiceHttpClients {
+  public static final String POOL_NAME = "library-service";
+  public static final String ACQUIRE_TIMER = "madie.library.http.acquire";
+
+  private LibraryServiceHttpClients() {}
+
+  /**
+   * Creates the request factory of the library service RestTemplate.
+   *
+   * @param properties client settings
+   * @param meterRegistry registry for the pool metrics, or null
+   * @return request factory; the pooled one must be destroyed with the application context
+   */
+  public static ClientHttpRequestFactory requestFactory(
+      LibraryServiceHttpProperties properties, MeterRegistry meterRegistry) {
+    if (properties.getHttp().isHttp2()) {
+      return http2RequestFactory(properties);
+    }
+    return new HttpComponentsClientHttpRequestFactory(pooledClient(properties, meterRegistry));
+  }
+
+  private static ClientHttpRequestFactory http2RequestFactory(
+      LibraryServiceHttpProperties properties) {
+    HttpClient httpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(properties.getConnectTimeout())
+            .build();
+    JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+    requestFactory.setReadTimeout(properties.getReadTimeout());
+    return requestFactory;
+  }
+
+  static CloseableHttpClient pooledClient(
+      LibraryServiceHttpProperties properties, MeterRegistry meterRegistry) {
+    LibraryServiceHttpProperties.Http http = properties.getHttp();
+    PoolingHttpClientConnectionManager connectionManager =
+        meterRegistry == null
+            ? new PoolingHttpClientConnectionManager()
+            : new TimedConnectionManager(meterRegistry.timer(ACQUIRE_TIMER, "pool", POOL_NAME));
+    connectionManager.setMaxTotal(http.getMaxConnections());
+    connectionManager.setDefaultMaxPerRoute(http.getMaxConnectionsPerRoute());
+    connectionManager.setDefaultConnectionConfig(
+        ConnectionConfig.custom()
+            .setConnectTimeout(timeout(properties.getConnectTimeout()))
+            .setSocketTimeout(timeout(properties.getReadTimeout()))
+            .setTimeToLive(timeValue(http.getTimeToLive()))
+            .build());
+    if (meterRegistry != null) {
+      new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, POOL_NAME)
+          .bindTo(meterRegistry);
+    }
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(
+            RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout(http.getAcquireTimeout()))
+                .setResponseTimeout(timeout(properties.getReadTimeout()))
+                .setConnectionKeepAlive(timeValue(http.getKeepAlive()))
+                .build())
+        .evictExpiredConnections()
+        .evictIdleConnections(timeValue(http.getIdleEviction()))
+        .build();
+  }
+
+  private static Timeout timeout(Duration duration) {
+    return Timeout.ofMilliseconds(duration.toMillis());
+  }
+
+  private static TimeValue timeValue(Duration duration) {
+    return TimeValue.ofMilliseconds(duration.toMillis());
+  }
+
+  /** Connection manager that records how long requests wait for a pooled connection. */
+  private static final class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+    private final Timer acquireTimer;
+
+    TimedConnectionManager(Timer acquireTimer) {
+      this.acquireTimer = acquireTimer;
+    }
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+      LeaseRequest leaseRequest = super.lease(id, route, requestTimeout, state);
+      return new LeaseRequest() {
+        @Override
+        public ConnectionEndpoint get(Timeout timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+          long start = System.nanoTime();
+          try {
+            return leaseRequest.get(timeout);
+          } finally {
+            acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+          }
+        }
+
+        @Override
+        public boolean cancel() {
+          return leaseRequest.cancel();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package gov.cms.mat.cql_elm_translation.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/** HTTP client settings for the library service, bound from {@code madie.library.service}. */
+@Data
+@ConfigurationProperties(prefix = "madie.library.service")
+public class LibraryServiceHttpProperties {
+  private Duration connectTimeout = Duration.ofSeconds(2);
+  private Duration readTimeout = Duration.ofSeconds(10);
+  private Http http = new Http();
+
+  @Data
+  public static class Http {
+    /** Use the JDK client with HTTP/2, multiplexing over one connection, instead of the pool. */
+    private boolean http2 = false;
+
+    private int maxConnections = 50;
+    private int maxConnectionsPerRoute = 20;
+
+    /** Time to wait for a pooled connection before failing the request. */
+    private Duration acquireTimeout = Duration.ofSeconds(2);
+
+    /** Keep-alive of idle connections when the server does not send a Keep-Alive header. */
+    private Duration keepAlive = Duration.ofSeconds(60);
+
+    /** Connections idle for longer than this are closed by a background evictor. */
+    private Duration idleEviction = Duration.ofSeconds(30);
+
+    /** Maximum lifetime of a connection, so DNS and load balancer changes are picked up. */
+    private Duration timeToLive = Duration.ofMinutes(5);
+  }
+}
@@ -0,0 +1,80 @@
+package gov.cms.mat.cql_elm_translation.config;
+
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.Duration;
+
+/**
+ * Binds a {@link TranslationDeadline} to the request thread. The deadline is taken from
+ * {@code madie.deadline.endpoints.<handler method name>}, falling back to {@code
+ * madie.deadline.default}. Clients can shorten or extend it, up to {@code madie.deadline.max},
+ * with the {@value #DEADLINE_HEADER} header given in milliseconds.
+ */
+@Slf4j
+@Component
+public class TranslationDeadlineInterceptor implements AsyncHandlerInterceptor {
+  public static final String DEADLINE_HEADER = "X-Translation-Deadline";
+  private static final String ENDPOINT_PROPERTY = "madie.deadline.endpoints.";
+
+  private final Environment environment;
+  private final Duration defaultTimeout;
+  private final Duration maxTimeout;
+
+  public TranslationDeadlineInterceptor(
+      Environment environment,
+      @Value("${madie.deadline.default:60s}") Duration defaultTimeout,
+      @Value("${madie.deadline.max:120s}") Duration maxTimeout) {
+    this.environment = environment;
+    this.defaultTimeout = defaultTimeout;
+    this.maxTimeout = maxTimeout;
+  }
+
+  @Override
+  public boolean preHandle(
+      HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (handler instanceof HandlerMethod handlerMethod) {
+      TranslationDeadline.start(timeoutFor(request, handlerMethod));
+    }
+    return true;
+  }
+
+  @Override
+  public void afterCompletion(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Object handler,
+      @Nullable Exception ex) {
+    TranslationDeadline.clear();
+  }
+
+  /** Streamed responses release the request thread before completion, without afterCompletion. */
+  @Override
+  public void afterConcurrentHandlingStarted(
+      HttpServletRequest request, HttpServletResponse response, Object handler) {
+    TranslationDeadline.clear();
+  }
+
+  Duration timeoutFor(HttpServletRequest request, HandlerMethod handlerMethod) {
+    String header = request.getHeader(DEADLINE_HEADER);
+    if (header != null) {
+      long millis = NumberUtils.toLong(header.trim(), -1);
+      if (millis > 0) {
+        Duration requested = Duration.ofMillis(millis);
+        return requested.compareTo(maxTimeout) > 0 ? maxTimeout : requested;
+      }
+      log.warn("Ignoring invalid {} header [{}]", DEADLINE_HEADER, header);
+    }
+    return environment.getProperty(
+        ENDPOINT_PROPERTY + handlerMethod.getMethod().getName(), Duration.class, defaultTimeout);
+  }
+}
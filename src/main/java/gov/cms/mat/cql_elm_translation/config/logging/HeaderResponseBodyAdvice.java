@@ -2,6 +2,7 @@ package gov.cms.mat.cql_elm_translation.config.logging;
 
 import gov.cms.mat.config.logging.ThreadLocalBody;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.MethodParameter;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
@@ -10,6 +11,10 @@ import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
 
+/**
+ * Hands the response body to {@link RequestHeaderInterceptor} for debug logging. The body is only
+ * kept when that logging is enabled, so large responses are not retained by the request thread.
+ */
 @Slf4j
 @ControllerAdvice
 public class HeaderResponseBodyAdvice implements ResponseBodyAdvice<Object> {
@@ -28,7 +33,9 @@ public class HeaderResponseBodyAdvice implements ResponseBodyAdvice<Object> {
       ServerHttpRequest request,
       ServerHttpResponse response) {
 
-    ThreadLocalBody.setBody(body);
+    if (LoggerFactory.getLogger(RequestHeaderInterceptor.class).isDebugEnabled()) {
+      ThreadLocalBody.setBody(body);
+    }
     return body;
   }
 }
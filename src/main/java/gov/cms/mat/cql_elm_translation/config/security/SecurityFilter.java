@@ -58,6 +58,7 @@ public class SecurityFilter implements Filter {
   private boolean isWhiteListUrl(HttpServletRequest req) {
     String uri = req.getRequestURI();
     String method = req.getMethod();
-    return uri.equals("/actuator/health") && method.equals("GET");
+    return (uri.equals("/actuator/health") || uri.startsWith("/actuator/health/"))
+        && method.equals("GET");
   }
 }
@@ -1,28 +1,37 @@
 package gov.cms.mat.cql_elm_translation.controllers;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
 import gov.cms.mat.cql.dto.CqlConversionPayload;
 import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql_elm_translation.dto.BatchTranslationItem;
+import gov.cms.mat.cql_elm_translation.dto.BatchTranslationResult;
+import gov.cms.mat.cql_elm_translation.dto.ElmArtifacts;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
+import gov.cms.mat.cql_elm_translation.service.BatchTranslationExecutor;
 import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.TranslationETags;
 import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.mat.cql_elm_translation.service.cache.CqlConversionPayloadCache;
+import gov.cms.mat.cql_elm_translation.service.incremental.IncrementalTranslationService;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.cqframework.cql.cql2elm.LibraryBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.io.UncheckedIOException;
-import java.util.Iterator;
-import java.util.Objects;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping(path = "/cql/translator")
@@ -30,11 +39,41 @@ import java.util.Objects;
 @Slf4j
 @RequiredArgsConstructor
 public class CqlConversionController {
+  public static final String TRANSLATION_CACHE_HEADER = "X-Translation-Cache";
+  public static final String EDITOR_SESSION_HEADER = "X-Editor-Session";
+  public static final String ELM_BASELINE_HEADER = "X-Elm-Baseline";
+  public static final String ELM_HASH_HEADER = "X-Elm-Hash";
+  private static final String HIT = "HIT";
+  private static final String MISS = "MISS";
+  private static final String INCREMENTAL = "INCREMENTAL";
 
   private final CqlConversionService cqlConversionService;
   private final CqlLibraryService cqlLibraryService;
+  private final CqlConversionPayloadCache cqlConversionPayloadCache;
+  private final BatchTranslationExecutor batchTranslationExecutor;
+  private final IncrementalTranslationService incrementalTranslationService;
+  private final TranslationETags translationETags;
 
-  @PutMapping(path = "/cql", consumes = "text/plain", produces = "application/elm+json")
+  /**
+   * Translates CQL to ELM. Clients that accept {@link ElmMediaTypes#ELM_PAYLOAD_V2_VALUE} get the
+   * ELM JSON embedded as an object instead of an escaped string; the Smile and CBOR encodings use
+   * that shape too. Responses carry a strong ETag, and a matching {@code If-None-Match} is
+   * answered with 304, before any translation work when the include tree is known.
+   *
+   * <p>Clients that accept {@link ElmMediaTypes#JSON_PATCH_VALUE} get the hash of the ELM JSON in
+   * {@value #ELM_HASH_HEADER}; when they send it back in {@value #ELM_BASELINE_HEADER}, the
+   * response is a JSON Patch against that document, see {@link ElmPatchResponseAdvice}.
+   */
+  @PutMapping(
+      path = "/cql",
+      consumes = "text/plain",
+      produces = {
+        ElmMediaTypes.ELM_JSON_VALUE,
+        ElmMediaTypes.ELM_PAYLOAD_V2_VALUE,
+        ElmMediaTypes.SMILE_VALUE,
+        ElmMediaTypes.CBOR_VALUE,
+        ElmMediaTypes.JSON_PATCH_VALUE
+      })
   public CqlConversionPayload cqlToElmJson(
       @RequestBody String cqlData,
       @RequestParam(required = false) LibraryBuilder.SignatureLevel signatures,
@@ -49,7 +88,11 @@ public class CqlConversionController {
           Boolean disableMethodInvocation,
       @RequestParam(value = "validate-units", defaultValue = "true") Boolean validateUnits,
       @RequestParam(value = "result-types", defaultValue = "true") Boolean resultTypes,
-      @RequestHeader("Authorization") String accessToken) {
+      @RequestParam(defaultValue = "both") String artifacts,
+      @RequestHeader("Authorization") String accessToken,
+      @RequestHeader(value = EDITOR_SESSION_HEADER, required = false) String editorSession,
+      HttpServletRequest request,
+      HttpServletResponse response) {
 
     RequestData requestData =
         RequestData.builder()
@@ -65,66 +108,203 @@ public class CqlConversionController {
             .resultTypes(resultTypes)
             .build();
 
-    cqlLibraryService.setUpLibrarySourceProvider(cqlData, accessToken);
+    ElmArtifacts selection = ElmArtifacts.fromParameter(artifacts);
+    String variant = selection + "|" + request.getHeader(HttpHeaders.ACCEPT);
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    String etag = etagFor(requestData, variant, null);
+    if (notModified(response, ifNoneMatch, etag)) {
+      return null;
+    }
 
-    CqlConversionPayload cqlConversionPayload =
-        cqlConversionService.processCqlDataWithErrors(requestData);
-    // Todo Do we need to remove empty annotations from library object, Also why are we removing
-    // translatorOptions from annotations, Could be MAT specific.
-    TranslatorOptionsRemover remover = new TranslatorOptionsRemover(cqlConversionPayload.getJson());
-    String cleanedJson = remover.clean();
-    cqlConversionPayload.setJson(cleanedJson);
-    return cqlConversionPayload;
+    Translation translation = translate(requestData, selection, accessToken, editorSession);
+    response.setHeader(TRANSLATION_CACHE_HEADER, translation.status());
+    if (!hasStableContent(translation)) {
+      return translation.payload();
+    }
+    // draft includes can only be vouched for by the sources this request fetched
+    if (etag == null) {
+      etag = etagFor(requestData, variant, translation.fetched());
+    }
+    return notModified(response, ifNoneMatch, etag) ? null : translation.payload();
   }
 
   /**
-   * Removes this node, when present, which blows up array processing for annotation array. {
-   * "translatorOptions":
-   * "DisableMethodInvocation,EnableLocators,DisableListPromotion,EnableDetailedErrors,
-   * EnableAnnotations,DisableListDemotion", "type": "CqlToElmInfo" },
+   * Translates a list of CQL documents in parallel on the bounded batch executor. Each item
+   * carries its own options and gets its own result, in input order, so one broken document does
+   * not fail the whole batch.
    */
-  static class TranslatorOptionsRemover {
-    final String json;
+  @PutMapping(
+      path = "/cql/batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public List<BatchTranslationResult> cqlToElmJsonBatch(
+      @RequestBody List<BatchTranslationItem> items,
+      @RequestHeader("Authorization") String accessToken) {
+    if (items.size() > batchTranslationExecutor.getMaxItems()) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST,
+          "Batch of "
+              + items.size()
+              + " items exceeds the limit of "
+              + batchTranslationExecutor.getMaxItems());
+    }
+    log.info("Translating batch of {} CQL documents", items.size());
+    return batchTranslationExecutor.mapInOrder(
+        items,
+        (index, item) -> {
+          Translation translation =
+              translate(toRequestData(item), ElmArtifacts.BOTH, accessToken, null);
+          return BatchTranslationResult.builder()
+              .index(index)
+              .id(item.getId())
+              .cacheHit(HIT.equals(translation.status()))
+              .payload(translation.payload())
+              .build();
+        },
+        (index, e) -> {
+          log.warn("Batch item {} failed to translate", index, e);
+          return BatchTranslationResult.builder()
+              .index(index)
+              .id(items.get(index).getId())
+              .error(e.getMessage())
+              .build();
+        });
+  }
 
-    TranslatorOptionsRemover(String json) {
-      this.json = json;
+  /**
+   * Translates through the payload cache. A payload holding both artifacts also serves requests
+   * for the JSON only. CQL with draft includes is keyed by the draft sources, so these are fetched
+   * before the cache is consulted. Requests of an editor session are translated incrementally
+   * against the session's previous translation when possible. Incremental payloads carry the ELM
+   * JSON only, so sessions that also want the XML are translated in full.
+   */
+  private Translation translate(
+      RequestData requestData, ElmArtifacts artifacts, String accessToken, String editorSession) {
+    boolean session =
+        StringUtils.isNotBlank(editorSession)
+            && incrementalTranslationService != null
+            && artifacts == ElmArtifacts.JSON;
+    Map<String, String> fetched = null;
+    if (!cqlConversionPayloadCache.isKeyedWithoutFetch(requestData.getCqlData())) {
+      fetched =
+          cqlConversionService.setUpLibrarySources(
+              requestData.getCqlData(), accessToken, cqlLibraryService);
+    }
+    String requestKey = cqlConversionPayloadCache.keyFor(requestData, fetched);
+    String cacheKey =
+        requestKey == null ? null : CqlConversionPayloadCache.keyFor(requestKey, artifacts);
+    CqlConversionPayload cachedPayload =
+        cacheKey == null ? null : cqlConversionPayloadCache.get(cacheKey);
+    if (cachedPayload == null && cacheKey != null && artifacts != ElmArtifacts.BOTH) {
+      cachedPayload = artifacts.narrow(cqlConversionPayloadCache.get(requestKey));
+    }
+    if (cachedPayload != null) {
+      if (session) {
+        incrementalTranslationService.remember(
+            editorSession, requestData, fetched, cachedPayload);
+      }
+      return new Translation(cachedPayload, HIT, fetched);
     }
 
-    String clean() {
-
-      try {
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode rootNode = objectMapper.readTree(json);
-        JsonNode libraryNode = rootNode.get("library");
-        JsonNode annotationNode = libraryNode.get("annotation");
-
-        if (annotationNode == null || annotationNode.isMissingNode()) {
-          return json;
-        }
-
-        if (annotationNode.isEmpty() && libraryNode instanceof ObjectNode) {
-          ObjectNode objectNode = (ObjectNode) libraryNode;
-          objectNode.remove("annotation");
-          return rootNode.toPrettyString();
-        }
-
-        for (int i = 0; i < annotationNode.size(); i++) {
-          // remove translator options that are not the version
-          if (annotationNode.get(i).has("translatorOptions")) {
-            Iterator<String> fieldNames = annotationNode.get(i).fieldNames();
-            while (fieldNames.hasNext()) {
-              if (!Objects.equals(fieldNames.next(), "translatorVersion")) {
-                fieldNames.remove();
-              }
-            }
-          }
-        }
-
-        return rootNode.toPrettyString();
-
-      } catch (JsonProcessingException e) {
-        throw new UncheckedIOException(e);
+    if (fetched == null) {
+      fetched =
+          cqlConversionService.setUpLibrarySources(
+              requestData.getCqlData(), accessToken, cqlLibraryService);
+    }
+
+    if (session) {
+      Map<String, String> sources = fetched;
+      // the reduced CQL of an incremental compile has the includes of the full CQL
+      IncrementalTranslationService.Result result =
+          incrementalTranslationService.translate(
+              editorSession,
+              requestData,
+              sources,
+              data -> {
+                cqlConversionService.reuseLibrarySources(data.getCqlData(), sources);
+                return compile(data, artifacts, accessToken);
+              });
+      if (result.incremental()) {
+        return new Translation(result.payload(), INCREMENTAL, fetched);
       }
+      if (cacheKey != null) {
+        cqlConversionPayloadCache.put(cacheKey, result.payload());
+      }
+      return new Translation(result.payload(), MISS, fetched);
+    }
+
+    CqlConversionPayload cqlConversionPayload = compile(requestData, artifacts, accessToken);
+    if (cacheKey != null) {
+      cqlConversionPayloadCache.put(cacheKey, cqlConversionPayload);
     }
+    return new Translation(cqlConversionPayload, MISS, fetched);
+  }
+
+  private String etagFor(RequestData requestData, String variant, Map<String, String> fetched) {
+    return translationETags == null
+        ? null
+        : translationETags.forRequest(requestData, variant, fetched);
+  }
+
+  /**
+   * Incremental payloads differ from a full translation in their localIds, and payloads with
+   * unresolved includes change once the library service is back, so neither gets an ETag.
+   */
+  private static boolean hasStableContent(Translation translation) {
+    CqlConversionPayload payload = translation.payload();
+    return payload != null
+        && !INCREMENTAL.equals(translation.status())
+        && !StringUtils.contains(
+            payload.getJson(), CqlConversionPayloadCache.UNRESOLVED_INCLUDE_MESSAGE)
+        && !StringUtils.contains(
+            payload.getXml(), CqlConversionPayloadCache.UNRESOLVED_INCLUDE_MESSAGE);
   }
+
+  /** Sets the ETag and answers 304 when the client already holds that representation. */
+  static boolean notModified(HttpServletResponse response, String ifNoneMatch, String etag) {
+    if (etag == null) {
+      return false;
+    }
+    response.setHeader(HttpHeaders.ETAG, etag);
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    if (TranslationETags.matches(ifNoneMatch, etag)) {
+      response.setStatus(HttpStatus.NOT_MODIFIED.value());
+      return true;
+    }
+    return false;
+  }
+
+  /** Translator options are already stripped from the payload by the post-processing. */
+  private CqlConversionPayload compile(
+      RequestData requestData, ElmArtifacts artifacts, String accessToken) {
+    return cqlConversionService.processCqlDataWithErrors(requestData, artifacts, accessToken);
+  }
+
+  private static RequestData toRequestData(BatchTranslationItem item) {
+    if (StringUtils.isBlank(item.getCql())) {
+      throw new IllegalArgumentException("CQL is required");
+    }
+    return RequestData.builder()
+        .cqlData(item.getCql())
+        .showWarnings(item.isShowWarnings())
+        .signatures(item.getSignatures())
+        .annotations(item.isAnnotations())
+        .locators(item.isLocators())
+        .disableListDemotion(item.isDisableListDemotion())
+        .disableListPromotion(item.isDisableListPromotion())
+        .disableMethodInvocation(item.isDisableMethodInvocation())
+        .validateUnits(item.isValidateUnits())
+        .resultTypes(item.isResultTypes())
+        .build();
+  }
+
+  /**
+   * Outcome of a translation.
+   *
+   * @param payload translation result
+   * @param status value of the {@value #TRANSLATION_CACHE_HEADER} header
+   * @param fetched include sources fetched by this request, or null when none were needed
+   */
+  private record Translation(
+      CqlConversionPayload payload, String status, Map<String, String> fetched) {}
 }
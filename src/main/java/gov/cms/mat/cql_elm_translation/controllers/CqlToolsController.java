@@ -7,37 +7,107 @@ import gov.cms.mat.cql_elm_translation.service.CqlParsingService;
 import gov.cms.madie.cql_elm_translator.dto.SourceDataCriteria;
 import gov.cms.mat.cql_elm_translation.dto.CqlLookupRequest;
 import gov.cms.mat.cql_elm_translation.dto.CqlLookups;
+import gov.cms.mat.cql_elm_translation.dto.ElmArtifacts;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
 import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService.LibraryBuilders;
+import gov.cms.mat.cql_elm_translation.service.TranslationETags;
 import gov.cms.mat.cql_elm_translation.service.DataCriteriaService;
 import gov.cms.madie.cql_elm_translator.utils.cql.parsing.model.CQLDefinition;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.IOException;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
 @RequiredArgsConstructor
 public class CqlToolsController {
 
+  private static final List<MediaType> LIBRARY_CONTENT_TYPES =
+      List.of(
+          MediaType.APPLICATION_JSON,
+          ElmMediaTypes.ELM_PAYLOAD_V2,
+          ElmMediaTypes.SMILE,
+          ElmMediaTypes.CBOR);
+
   private final DataCriteriaService dataCriteriaService;
   private final CqlConversionService cqlConversionService;
   private final CqlParsingService cqlParsingService;
+  private final TranslationETags translationETags;
 
-  @PutMapping("/cql/elm")
-  public ResponseEntity<List<TranslatedLibrary>> getLibraryElms(
-      @RequestBody String cql, @RequestHeader("Authorization") String accessToken) {
-    try {
-      return ResponseEntity.status(HttpStatus.OK)
-          .body(cqlConversionService.getTranslatedLibrariesForCql(cql, accessToken));
-    } catch (IOException e) {
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+  /**
+   * Translates the CQL and its includes. The libraries are streamed one at a time, as compact JSON
+   * unless {@code pretty} is set; the ELM JSON is embedded as an object when the client accepts
+   * {@link ElmMediaTypes#ELM_PAYLOAD_V2_VALUE}, Smile or CBOR. A matching {@code If-None-Match}
+   * is answered with 304, before compiling when the include tree is known. The measure library is
+   * built before the response is committed, so a failure to build it is still answered with an
+   * error status.
+   */
+  @PutMapping(
+      path = "/cql/elm",
+      produces = {
+        MediaType.APPLICATION_JSON_VALUE,
+        ElmMediaTypes.ELM_PAYLOAD_V2_VALUE,
+        ElmMediaTypes.SMILE_VALUE,
+        ElmMediaTypes.CBOR_VALUE
+      })
+  public ResponseEntity<StreamingResponseBody> getLibraryElms(
+      @RequestBody String cql,
+      @RequestParam(defaultValue = "both") String artifacts,
+      @RequestParam(defaultValue = "false") boolean pretty,
+      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      @RequestHeader("Authorization") String accessToken) {
+    ElmArtifacts selection = ElmArtifacts.fromParameter(artifacts);
+    MediaType contentType = libraryContentType(accept);
+    String variant = selection + "|" + pretty + "|" + contentType;
+    String etag = etagFor(cql, variant, null);
+    if (TranslationETags.matches(ifNoneMatch, etag)) {
+      return notModified(etag);
     }
+
+    LibraryBuilders libraries =
+        cqlConversionService.getTranslatedLibraryBuildersForCql(cql, accessToken, selection);
+    if (!libraries.complete()) {
+      etag = null;
+    } else if (etag == null) {
+      // draft includes can only be vouched for by the sources this request fetched
+      etag = etagFor(cql, variant, libraries.fetched());
+      if (TranslationETags.matches(ifNoneMatch, etag)) {
+        return notModified(etag);
+      }
+    }
+    List<Supplier<TranslatedLibrary>> builders = new ArrayList<>(libraries.libraries());
+    if (!builders.isEmpty()) {
+      TranslatedLibrary measureLibrary = builders.get(0).get();
+      builders.set(0, () -> measureLibrary);
+    }
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(contentType);
+    if (etag != null) {
+      response.eTag(etag).varyBy(HttpHeaders.ACCEPT);
+    }
+    return response.body(new TranslatedLibraryResponseWriter(builders, contentType, pretty));
+  }
+
+  private String etagFor(String cql, String variant, Map<String, String> fetched) {
+    return translationETags == null ? null : translationETags.forTooling(cql, variant, fetched);
+  }
+
+  private static ResponseEntity<StreamingResponseBody> notModified(String etag) {
+    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        .eTag(etag)
+        .varyBy(HttpHeaders.ACCEPT)
+        .build();
   }
 
   @PutMapping("/cql/relevant-elements")
@@ -56,7 +126,11 @@ public class CqlToolsController {
 
   @PutMapping(
       value = "/cql/lookups",
-      produces = MediaType.APPLICATION_JSON_VALUE,
+      produces = {
+        MediaType.APPLICATION_JSON_VALUE,
+        ElmMediaTypes.SMILE_VALUE,
+        ElmMediaTypes.CBOR_VALUE
+      },
       consumes = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<CqlLookups> getCqlLookups(
       @RequestBody CqlLookupRequest lookupRequest,
@@ -76,4 +150,32 @@ public class CqlToolsController {
     log.info("Preparing CqlBuilder Lookups");
     return ResponseEntity.ok(cqlParsingService.getCqlBuilderLookups(cql, accessToken));
   }
+
+  /**
+   * Accepted type with the highest quality the library list can be written as, the earlier one on
+   * a tie, JSON when none matches. Types accepted with a quality of 0 are never chosen.
+   */
+  static MediaType libraryContentType(String accept) {
+    if (StringUtils.isBlank(accept)) {
+      return MediaType.APPLICATION_JSON;
+    }
+    try {
+      List<MediaType> acceptedTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+      // the sort is stable, so the header order decides between equal qualities
+      acceptedTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+      for (MediaType accepted : acceptedTypes) {
+        if (accepted.getQualityValue() == 0) {
+          continue;
+        }
+        for (MediaType candidate : LIBRARY_CONTENT_TYPES) {
+          if (candidate.equalsTypeAndSubtype(accepted)) {
+            return candidate;
+          }
+        }
+      }
+    } catch (InvalidMediaTypeException e) {
+      log.debug("Ignoring invalid Accept header [{}]", accept);
+    }
+    return MediaType.APPLICATION_JSON;
+  }
 }
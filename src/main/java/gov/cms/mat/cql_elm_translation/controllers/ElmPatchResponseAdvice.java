@@ -0,0 +1,111 @@
+package gov.cms.mat.cql_elm_translation.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
+import gov.cms.mat.cql_elm_translation.service.cache.ElmBaselineStore;
+import gov.cms.mat.cql_elm_translation.service.incremental.ElmJsonPatch;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Delta responses for clients that accept {@link ElmMediaTypes#JSON_PATCH_VALUE}. Every ELM JSON
+ * returned to such a client is kept in the {@link ElmBaselineStore} and its hash is sent in
+ * {@value CqlConversionController#ELM_HASH_HEADER}. When the client names a known baseline in
+ * {@value CqlConversionController#ELM_BASELINE_HEADER} the response is a JSON Patch from that
+ * baseline to the new ELM JSON; otherwise, or when the XML was requested or the patch is not
+ * smaller than the document, the full payload is sent as {@link ElmMediaTypes#ELM_JSON_VALUE}.
+ * Either way the response depends on the baseline header, so it is listed in {@code Vary}, and a
+ * patch carries its own ETag rather than the one of the full payload.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@ControllerAdvice(assignableTypes = CqlConversionController.class)
+public class ElmPatchResponseAdvice implements ResponseBodyAdvice<Object> {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ElmBaselineStore elmBaselineStore;
+
+  @Override
+  public boolean supports(
+      MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+    return true;
+  }
+
+  @Override
+  public Object beforeBodyWrite(
+      Object body,
+      MethodParameter returnType,
+      MediaType selectedContentType,
+      Class<? extends HttpMessageConverter<?>> selectedConverterType,
+      ServerHttpRequest request,
+      ServerHttpResponse response) {
+    if (!ElmMediaTypes.JSON_PATCH.equalsTypeAndSubtype(selectedContentType)
+        || !(body instanceof CqlConversionPayload payload)) {
+      return body;
+    }
+    // the converter keeps a content type that is already set
+    response.getHeaders().setContentType(MediaType.valueOf(ElmMediaTypes.ELM_JSON_VALUE));
+    replaceHeader(
+        response,
+        HttpHeaders.VARY,
+        HttpHeaders.ACCEPT + ", " + CqlConversionController.ELM_BASELINE_HEADER);
+    if (payload.getJson() == null) {
+      return body;
+    }
+    response
+        .getHeaders()
+        .set(CqlConversionController.ELM_HASH_HEADER, elmBaselineStore.put(payload.getJson()));
+
+    String baselineHash =
+        request.getHeaders().getFirst(CqlConversionController.ELM_BASELINE_HEADER);
+    String baseline = elmBaselineStore.get(baselineHash);
+    if (baseline == null || payload.getXml() != null) {
+      return body;
+    }
+    try {
+      JsonNode patch =
+          ElmJsonPatch.diff(MAPPER.readTree(baseline), MAPPER.readTree(payload.getJson()));
+      String patchJson = MAPPER.writeValueAsString(patch);
+      if (patchJson.length() >= payload.getJson().length()) {
+        return body;
+      }
+      log.debug(
+          "Sending ELM patch of {} chars instead of {} chars",
+          patchJson.length(),
+          payload.getJson().length());
+      response.getHeaders().setContentType(ElmMediaTypes.JSON_PATCH);
+      String etag = response.getHeaders().getETag();
+      if (etag != null) {
+        // a patch is a representation of its own, fixed by the full payload and the baseline
+        String patchEtag = "\"" + TranslationKeyUtil.digest(etag, baselineHash) + "\"";
+        replaceHeader(response, HttpHeaders.ETAG, patchEtag);
+      }
+      return patch;
+    } catch (JsonProcessingException e) {
+      log.warn("Cannot build ELM patch, sending the full payload", e);
+      return body;
+    }
+  }
+
+  // headers the controller set on the servlet response are replaced there, not sent twice
+  private static void replaceHeader(ServerHttpResponse response, String name, String value) {
+    if (response instanceof ServletServerHttpResponse servletResponse) {
+      servletResponse.getServletResponse().setHeader(name, value);
+    } else {
+      response.getHeaders().set(name, value);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package gov.cms.mat.cql_elm_translation.controllers;
+
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
+import gov.cms.mat.cql_elm_translation.dto.RawCqlConversionPayload;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Writes translation responses in the version 2 shape when the client asked for {@link
+ * ElmMediaTypes#ELM_PAYLOAD_V2_VALUE} or one of the binary encodings. The ELM JSON is then
+ * embedded as a structure, so it is neither escaped on the way out nor unescaped by the client.
+ * The streamed library list of {@code /cql/elm} is written in that shape by {@link
+ * TranslatedLibraryResponseWriter}.
+ */
+@ControllerAdvice(assignableTypes = CqlConversionController.class)
+public class ElmPayloadV2ResponseAdvice implements ResponseBodyAdvice<Object> {
+
+  @Override
+  public boolean supports(
+      MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+    return true;
+  }
+
+  @Override
+  public Object beforeBodyWrite(
+      Object body,
+      MethodParameter returnType,
+      MediaType selectedContentType,
+      Class<? extends HttpMessageConverter<?>> selectedConverterType,
+      ServerHttpRequest request,
+      ServerHttpResponse response) {
+    if (!ElmMediaTypes.embedsElm(selectedContentType)) {
+      return body;
+    }
+    if (body instanceof CqlConversionPayload payload) {
+      return RawCqlConversionPayload.from(payload);
+    }
+    return body;
+  }
+}
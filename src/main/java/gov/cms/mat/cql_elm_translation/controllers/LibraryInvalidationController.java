@@ -0,0 +1,48 @@
+package gov.cms.mat.cql_elm_translation.controllers;
+
+import gov.cms.mat.cql_elm_translation.dto.LibraryReference;
+import gov.cms.mat.cql_elm_translation.service.cache.LibraryInvalidator;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping(path = "/admin/libraries")
+@Tag(
+    name = "Library-Invalidation-Controller",
+    description = "API for the library service to invalidate changed libraries.")
+@Slf4j
+@RequiredArgsConstructor
+public class LibraryInvalidationController {
+  private final LibraryInvalidator libraryInvalidator;
+
+  @Value("${madie.library.invalidation.max-items:100}")
+  private int maxItems;
+
+  /**
+   * Drops the cached sources of libraries that changed, typically a draft saved by its author.
+   * Like every endpoint the call is authenticated by the {@value
+   * gov.cms.mat.cql_elm_translation.config.security.SecurityFilter#MAT_API_KEY} header.
+   */
+  @PutMapping(path = "/invalidate", consumes = MediaType.APPLICATION_JSON_VALUE)
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void invalidate(@RequestBody List<LibraryReference> libraries) {
+    if (libraries.isEmpty() || libraries.size() > maxItems) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST,
+          "Between 1 and " + maxItems + " libraries can be invalidated at once");
+    }
+    libraryInvalidator.invalidate(libraries);
+  }
+}
@@ -0,0 +1,50 @@
+package gov.cms.mat.cql_elm_translation.controllers;
+
+import gov.cms.mat.cql_elm_translation.dto.LibraryReference;
+import gov.cms.mat.cql_elm_translation.dto.LibraryWarmupResult;
+import gov.cms.mat.cql_elm_translation.service.warmup.LibraryWarmupService;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+@RestController
+@RequestMapping(path = "/admin/libraries")
+@Tag(name = "Library-Warmup-Controller", description = "API for warming include libraries.")
+@Slf4j
+@RequiredArgsConstructor
+public class LibraryWarmupController {
+  private final LibraryWarmupService libraryWarmupService;
+
+  @Value("${madie.library-bundle.max-warm-items:100}")
+  private int maxItems;
+
+  /**
+   * Fetches and compiles the given released libraries, so that measures including them do not
+   * pay for it on their first translation.
+   */
+  @PutMapping(
+      path = "/warm",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public List<LibraryWarmupResult> warm(
+      @RequestBody List<LibraryReference> libraries,
+      @RequestHeader("Authorization") String accessToken) {
+    if (libraries.isEmpty() || libraries.size() > maxItems) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST, "Between 1 and " + maxItems + " libraries can be warmed at once");
+    }
+    log.info("Warming {} libraries on demand", libraries.size());
+    return libraryWarmupService.warm(libraries, accessToken);
+  }
+}
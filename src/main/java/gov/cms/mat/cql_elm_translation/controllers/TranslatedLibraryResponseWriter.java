@@ -0,0 +1,95 @@
+package gov.cms.mat.cql_elm_translation.controllers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import gov.cms.madie.models.dto.TranslatedLibrary;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
+import gov.cms.mat.cql_elm_translation.dto.EmbeddedJsonSerializer;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Streams translated libraries as an array, building and writing one library at a time so the
+ * artifacts of the earlier libraries can be collected while the later ones are serialized.
+ *
+ * <p>JSON output is compact unless pretty printing is requested. In the version 2 shape, which the
+ * Smile and CBOR encodings also use, the ELM JSON is copied token by token into the response,
+ * which also compacts it.
+ *
+ * <p>Once the first library is written the status can no longer change. When a later library
+ * fails to build, the array is therefore left unterminated, so that clients see a broken response
+ * instead of a well-formed but incomplete list.
+ */
+final class TranslatedLibraryResponseWriter implements StreamingResponseBody {
+  private static final ObjectMapper JSON_MAPPER = mapper(new ObjectMapper());
+  private static final ObjectMapper SMILE_MAPPER = mapper(new ObjectMapper(new SmileFactory()));
+  private static final ObjectMapper CBOR_MAPPER = mapper(new ObjectMapper(new CBORFactory()));
+
+  private final List<Supplier<TranslatedLibrary>> libraries;
+  private final ObjectMapper mapper;
+  private final boolean embedElmJson;
+  private final boolean pretty;
+
+  /**
+   * @param libraries builders of the libraries, in response order
+   * @param contentType response type: JSON, the version 2 JSON shape, Smile or CBOR
+   * @param pretty whether to indent JSON output, ignored for the binary encodings
+   */
+  TranslatedLibraryResponseWriter(
+      List<Supplier<TranslatedLibrary>> libraries, MediaType contentType, boolean pretty) {
+    this.libraries = libraries;
+    if (ElmMediaTypes.SMILE.equalsTypeAndSubtype(contentType)) {
+      this.mapper = SMILE_MAPPER;
+    } else if (ElmMediaTypes.CBOR.equalsTypeAndSubtype(contentType)) {
+      this.mapper = CBOR_MAPPER;
+    } else {
+      this.mapper = JSON_MAPPER;
+    }
+    this.embedElmJson = ElmMediaTypes.embedsElm(contentType);
+    this.pretty = pretty && !ElmMediaTypes.isBinary(contentType);
+  }
+
+  @Override
+  public void writeTo(OutputStream outputStream) throws IOException {
+    try (JsonGenerator generator =
+        mapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8)) {
+      if (pretty) {
+        generator.useDefaultPrettyPrinter();
+      }
+      generator.writeStartArray();
+      for (Supplier<TranslatedLibrary> library : libraries) {
+        write(generator, library.get());
+        generator.flush();
+      }
+      generator.writeEndArray();
+    }
+  }
+
+  private void write(JsonGenerator generator, TranslatedLibrary library) throws IOException {
+    if (library == null || !embedElmJson) {
+      mapper.writeValue(generator, library);
+      return;
+    }
+    generator.writeStartObject();
+    generator.writeStringField("name", library.getName());
+    generator.writeStringField("version", library.getVersion());
+    generator.writeStringField("cql", library.getCql());
+    generator.writeFieldName("elmJson");
+    EmbeddedJsonSerializer.copy(library.getElmJson(), generator);
+    generator.writeStringField("elmXml", library.getElmXml());
+    generator.writeEndObject();
+  }
+
+  private static ObjectMapper mapper(ObjectMapper mapper) {
+    return mapper.disable(
+        JsonGenerator.Feature.AUTO_CLOSE_TARGET, JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+  }
+}
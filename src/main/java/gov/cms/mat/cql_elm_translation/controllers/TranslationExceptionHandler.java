@@ -0,0 +1,48 @@
+package gov.cms.mat.cql_elm_translation.controllers;
+
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationRejectedException;
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Maps translation specific failures to structured error responses. */
+@Slf4j
+@RestControllerAdvice
+public class TranslationExceptionHandler {
+
+  @ExceptionHandler(TranslationRejectedException.class)
+  public ResponseEntity<Map<String, Object>> handleRejected(TranslationRejectedException e) {
+    log.warn("Translation rejected: {}", e.getMessage());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+        .body(errorBody(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+  }
+
+  @ExceptionHandler(TranslationTimeoutException.class)
+  public ResponseEntity<Map<String, Object>> handleTimeout(TranslationTimeoutException e) {
+    log.warn(
+        "Translation timed out in stage [{}] after {} ms", e.getStage(), e.getElapsed().toMillis());
+    Map<String, Object> body = errorBody(HttpStatus.GATEWAY_TIMEOUT, e.getMessage());
+    body.put("stage", e.getStage());
+    body.put("timeoutMs", e.getTimeout().toMillis());
+    body.put("elapsedMs", e.getElapsed().toMillis());
+    return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(body);
+  }
+
+  static Map<String, Object> errorBody(HttpStatus status, String message) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("timestamp", Instant.now().toString());
+    body.put("status", status.value());
+    body.put("error", status.getReasonPhrase());
+    body.put("message", message);
+    return body;
+  }
+}
@@ -0,0 +1,28 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.cqframework.cql.cql2elm.LibraryBuilder;
+
+/** One CQL document of a batch translation, with the same options as the single endpoint. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTranslationItem {
+  /** Caller supplied identifier echoed back in the result, e.g. a measure or library id. */
+  private String id;
+
+  private String cql;
+  private LibraryBuilder.SignatureLevel signatures;
+  @Builder.Default private boolean showWarnings = false;
+  @Builder.Default private boolean annotations = true;
+  @Builder.Default private boolean locators = true;
+  @Builder.Default private boolean disableListDemotion = true;
+  @Builder.Default private boolean disableListPromotion = true;
+  @Builder.Default private boolean disableMethodInvocation = false;
+  @Builder.Default private boolean validateUnits = true;
+  @Builder.Default private boolean resultTypes = true;
+}
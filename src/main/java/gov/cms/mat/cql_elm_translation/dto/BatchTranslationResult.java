@@ -0,0 +1,23 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one batch item. Exactly one of payload and error is set; translator errors in the
+ * CQL itself are reported inside the payload like on the single endpoint.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTranslationResult {
+  private int index;
+  private String id;
+  private boolean cacheHit;
+  private CqlConversionPayload payload;
+  private String error;
+}
@@ -0,0 +1,69 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Locale;
+
+/**
+ * ELM artifacts a caller wants serialized. Artifacts that are not selected are left null. When
+ * the ELM JSON is not selected the payload JSON carries the errors only.
+ */
+public enum ElmArtifacts {
+  JSON(true, false),
+  XML(false, true),
+  BOTH(true, true),
+  ERRORS(false, false);
+
+  private final boolean json;
+  private final boolean xml;
+
+  ElmArtifacts(boolean json, boolean xml) {
+    this.json = json;
+    this.xml = xml;
+  }
+
+  public boolean json() {
+    return json;
+  }
+
+  public boolean xml() {
+    return xml;
+  }
+
+  /**
+   * Parses the artifacts request parameter, case insensitively. Blank selects both artifacts.
+   *
+   * @throws ResponseStatusException with status 400 for unknown values
+   */
+  public static ElmArtifacts fromParameter(String value) {
+    if (StringUtils.isBlank(value)) {
+      return BOTH;
+    }
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST,
+          "Unknown artifacts [" + value + "], expected one of json, xml, both or errors");
+    }
+  }
+
+  /**
+   * Narrows a payload holding both artifacts to this selection, when that is possible without
+   * serializing again.
+   *
+   * @return narrowed copy, or null when the payload cannot be narrowed to this selection
+   */
+  public CqlConversionPayload narrow(CqlConversionPayload payload) {
+    if (payload == null || this == XML || this == ERRORS) {
+      return null;
+    }
+    return CqlConversionPayload.builder()
+        .json(payload.getJson())
+        .xml(xml ? payload.getXml() : null)
+        .build();
+  }
+}
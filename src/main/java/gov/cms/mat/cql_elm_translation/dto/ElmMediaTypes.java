@@ -0,0 +1,45 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import org.springframework.http.MediaType;
+
+/** Media types of the translation responses. */
+public final class ElmMediaTypes {
+  /** Original payload shape, the ELM JSON is an escaped string. */
+  public static final String ELM_JSON_VALUE = "application/elm+json";
+
+  /** Version 2 payload shape, the ELM JSON is embedded as an object. */
+  public static final String ELM_PAYLOAD_V2_VALUE = "application/vnd.madie.elm-payload.v2+json";
+
+  public static final MediaType ELM_PAYLOAD_V2 = MediaType.valueOf(ELM_PAYLOAD_V2_VALUE);
+
+  /** RFC 6902 JSON Patch against a baseline ELM JSON the client holds. */
+  public static final String JSON_PATCH_VALUE = "application/json-patch+json";
+
+  public static final MediaType JSON_PATCH = MediaType.valueOf(JSON_PATCH_VALUE);
+
+  /** Jackson Smile, binary JSON in the version 2 payload shape. */
+  public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+  public static final MediaType SMILE = MediaType.valueOf(SMILE_VALUE);
+
+  /** CBOR, in the version 2 payload shape. */
+  public static final String CBOR_VALUE = MediaType.APPLICATION_CBOR_VALUE;
+
+  public static final MediaType CBOR = MediaType.APPLICATION_CBOR;
+
+  private ElmMediaTypes() {}
+
+  /** Whether the media type is one of the binary encodings. */
+  public static boolean isBinary(MediaType mediaType) {
+    return mediaType != null
+        && (SMILE.equalsTypeAndSubtype(mediaType) || CBOR.equalsTypeAndSubtype(mediaType));
+  }
+
+  /**
+   * Whether responses of the media type embed the ELM JSON as a structure rather than an escaped
+   * string.
+   */
+  public static boolean embedsElm(MediaType mediaType) {
+    return ELM_PAYLOAD_V2.equalsTypeAndSubtype(mediaType) || isBinary(mediaType);
+  }
+}
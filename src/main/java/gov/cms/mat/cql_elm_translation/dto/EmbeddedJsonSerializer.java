@@ -0,0 +1,40 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes a JSON document held in a string as an embedded value. The document is copied token by
+ * token, so unlike {@link com.fasterxml.jackson.annotation.JsonRawValue} it also works with the
+ * binary Smile and CBOR generators, and the embedded JSON follows the output formatting.
+ */
+public class EmbeddedJsonSerializer extends StdSerializer<String> {
+  private static final JsonMapper PARSER_MAPPER = new JsonMapper();
+
+  public EmbeddedJsonSerializer() {
+    super(String.class);
+  }
+
+  @Override
+  public void serialize(String json, JsonGenerator generator, SerializerProvider provider)
+      throws IOException {
+    copy(json, generator);
+  }
+
+  /** Copies the JSON document to the generator, writing null for a null document. */
+  public static void copy(String json, JsonGenerator generator) throws IOException {
+    if (json == null) {
+      generator.writeNull();
+      return;
+    }
+    try (JsonParser parser = PARSER_MAPPER.createParser(json)) {
+      parser.nextToken();
+      generator.copyCurrentStructure(parser);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Name and version of a library, e.g. MATGlobalCommonFunctionsQDM 8.0.000. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LibraryReference {
+  private String name;
+  private String version;
+}
@@ -0,0 +1,18 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Outcome of warming one library; error is set when it could not be fetched or compiled. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LibraryWarmupResult {
+  private String name;
+  private String version;
+  private boolean warmed;
+  private String error;
+}
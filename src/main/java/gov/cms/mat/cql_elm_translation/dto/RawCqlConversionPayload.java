@@ -0,0 +1,27 @@
+package gov.cms.mat.cql_elm_translation.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Version 2 shape of the conversion payload. The ELM JSON, which carries the errorExceptions and
+ * externalErrors next to the library, is written as an embedded object instead of an escaped
+ * string. This is also the shape of the Smile and CBOR responses.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RawCqlConversionPayload {
+  @JsonSerialize(using = EmbeddedJsonSerializer.class)
+  private String json;
+  private String xml;
+
+  public static RawCqlConversionPayload from(CqlConversionPayload payload) {
+    return new RawCqlConversionPayload(payload.getJson(), payload.getXml());
+  }
+}
@@ -0,0 +1,8 @@
+package gov.cms.mat.cql_elm_translation.exceptions;
+
+/** The library service is not called because its circuit breaker is open. */
+public class LibraryServiceUnavailableException extends RuntimeException {
+  public LibraryServiceUnavailableException(String message) {
+    super(message);
+  }
+}
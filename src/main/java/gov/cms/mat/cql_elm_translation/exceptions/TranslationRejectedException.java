@@ -0,0 +1,16 @@
+package gov.cms.mat.cql_elm_translation.exceptions;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/** Translation was not admitted because the node is saturated. Maps to 503 with Retry-After. */
+@Getter
+public class TranslationRejectedException extends RuntimeException {
+  private final Duration retryAfter;
+
+  public TranslationRejectedException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+}
@@ -0,0 +1,24 @@
+package gov.cms.mat.cql_elm_translation.exceptions;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/** Thrown when a translation runs past its deadline. */
+@Getter
+public class TranslationTimeoutException extends RuntimeException {
+  private final String stage;
+  private final Duration timeout;
+  private final Duration elapsed;
+
+  public TranslationTimeoutException(String stage, Duration timeout, Duration elapsed) {
+    super(
+        "Translation exceeded its deadline of "
+            + timeout.toMillis()
+            + " ms during stage "
+            + stage);
+    this.stage = stage;
+    this.timeout = timeout;
+    this.elapsed = elapsed;
+  }
+}
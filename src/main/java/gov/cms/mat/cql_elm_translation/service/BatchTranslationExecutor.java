@@ -0,0 +1,95 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import lombok.Getter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded pool that runs batch translations. Once all workers are busy and the queue is full the
+ * submitting request thread translates the item itself, which throttles large batches instead of
+ * piling work up on the node. Every item gets its own deadline of {@code
+ * madie.batch.item-deadline}, started when the item begins, so the time a batch takes does not
+ * depend on a single deadline shared by all of its items.
+ */
+@Component
+public class BatchTranslationExecutor implements DisposableBean {
+
+  @Getter private final int maxItems;
+  private final Duration itemDeadline;
+  private final ThreadPoolExecutor executor;
+
+  public BatchTranslationExecutor(
+      @Value("${madie.batch.parallelism:4}") int parallelism,
+      @Value("${madie.batch.queue-capacity:100}") int queueCapacity,
+      @Value("${madie.batch.max-items:500}") int maxItems,
+      @Value("${madie.batch.item-deadline:30s}") Duration itemDeadline) {
+    this.maxItems = maxItems;
+    this.itemDeadline = itemDeadline;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+        new ThreadPoolExecutor(
+            parallelism,
+            parallelism,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "batch-translation-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * Applies the task to every item in parallel and returns the results in input order. A failing
+   * item does not affect the others; its result comes from the error handler, also when it ran
+   * out of its own deadline.
+   *
+   * @param items items to process
+   * @param task work for a single item, gets the item index and the item
+   * @param onError maps the index and failure of an item to its result
+   * @return results in the order of the items
+   */
+  public <T, R> List<R> mapInOrder(
+      List<T> items, BiFunction<Integer, T, R> task, BiFunction<Integer, Throwable, R> onError) {
+    List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      int index = i;
+      T item = items.get(i);
+      futures.add(
+          CompletableFuture.supplyAsync(
+                  () ->
+                      TranslationDeadline.callWith(
+                          TranslationDeadline.of(itemDeadline), () -> task.apply(index, item)),
+                  executor)
+              .exceptionally(e -> onError.apply(index, unwrap(e))));
+    }
+    return futures.stream().map(CompletableFuture::join).toList();
+  }
+
+  private static Throwable unwrap(Throwable throwable) {
+    return throwable instanceof CompletionException && throwable.getCause() != null
+        ? throwable.getCause()
+        : throwable;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdown();
+  }
+}
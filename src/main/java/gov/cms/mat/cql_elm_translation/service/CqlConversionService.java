@@ -4,8 +4,12 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,24 +22,21 @@ import org.cqframework.cql.cql2elm.model.CompiledLibrary;
 import org.cqframework.cql.elm.serializing.ElmLibraryWriterFactory;
 import org.hl7.elm.r1.Library;
 import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
-
 import gov.cms.madie.cql_elm_translator.exceptions.InternalServerException;
 import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
 import gov.cms.madie.cql_elm_translator.utils.MadieCqlValidator;
-import gov.cms.madie.cql_elm_translator.utils.cql.cql_translator.MadieLibrarySourceProvider;
 import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
 import gov.cms.madie.models.dto.TranslatedLibrary;
 import gov.cms.mat.cql.dto.CqlConversionPayload;
-import gov.cms.mat.cql_elm_translation.service.filters.AnnotationErrorFilter;
+import gov.cms.mat.cql_elm_translation.dto.ElmArtifacts;
+import gov.cms.mat.cql_elm_translation.service.cache.ElmArtifactStore;
 import gov.cms.mat.cql_elm_translation.service.filters.CqlTranslatorExceptionFilter;
-import gov.cms.mat.cql_elm_translation.service.support.CqlExceptionErrorProcessor;
+import gov.cms.mat.cql_elm_translation.service.support.ElmJsonPostProcessor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.minidev.json.JSONArray;
 
 @Service
 @Slf4j
@@ -44,8 +45,83 @@ public class CqlConversionService extends CqlTooling {
 
   private static final String LOG_MESSAGE_TEMPLATE = "ErrorSeverity: %s, Message: %s";
   private final CqlLibraryService cqlLibraryService;
+  private ElmArtifactStore elmArtifactStore;
+
+  @Autowired
+  public void setElmArtifactStore(ElmArtifactStore elmArtifactStore) {
+    this.elmArtifactStore = elmArtifactStore;
+  }
 
   public CqlConversionPayload processCqlDataWithErrors(RequestData requestData) {
+    return processCqlDataWithErrors(requestData, ElmArtifacts.BOTH);
+  }
+
+  /**
+   * Translates the CQL and serializes only the selected artifacts.
+   *
+   * @param requestData CQL and translator options
+   * @param artifacts artifacts to serialize
+   * @return payload with the selected artifacts and the errors
+   */
+  public CqlConversionPayload processCqlDataWithErrors(
+      RequestData requestData, ElmArtifacts artifacts) {
+    return processCqlDataWithErrors(requestData, artifacts, null);
+  }
+
+  /**
+   * Translates the CQL and serializes only the selected artifacts. The translation works off the
+   * library sources set up on the calling thread with the access token, so only requests with the
+   * same token are coalesced.
+   *
+   * @param requestData CQL and translator options
+   * @param artifacts artifacts to serialize
+   * @param accessToken token the library sources were set up with
+   * @return payload with the selected artifacts and the errors
+   */
+  public CqlConversionPayload processCqlDataWithErrors(
+      RequestData requestData, ElmArtifacts artifacts, String accessToken) {
+    TranslationCoalescer translationCoalescer = getTranslationCoalescer();
+    if (translationCoalescer == null) {
+      return buildPayloadWithErrors(requestData, artifacts);
+    }
+    return translationCoalescer.payload(
+        requestData, artifacts, accessToken, () -> buildPayloadWithErrors(requestData, artifacts));
+  }
+
+  /**
+   * Compiles the CQL with the default options of the conversion endpoint and with the options of
+   * the tooling endpoints, which leaves its includes in the compiled library cache for both.
+   *
+   * @param cql CQL whose includes are warmed
+   * @param accessToken token used for the library service
+   * @return messages of the translator errors, empty when both compiles succeeded
+   */
+  public List<String> precompile(String cql, String accessToken) {
+    Set<String> errors = new LinkedHashSet<>();
+    for (RequestData requestData : List.of(conversionRequestData(cql), toolingRequestData(cql))) {
+      setUpLibrarySources(cql, accessToken, cqlLibraryService);
+      processCqlData(requestData).getErrors().forEach(e -> errors.add(e.getMessage()));
+    }
+    return new ArrayList<>(errors);
+  }
+
+  /** Default translator options of the conversion endpoint. */
+  private static RequestData conversionRequestData(String cql) {
+    return RequestData.builder()
+        .cqlData(cql)
+        .showWarnings(false)
+        .annotations(true)
+        .locators(true)
+        .disableListDemotion(true)
+        .disableListPromotion(true)
+        .disableMethodInvocation(false)
+        .validateUnits(true)
+        .resultTypes(true)
+        .build();
+  }
+
+  private CqlConversionPayload buildPayloadWithErrors(
+      RequestData requestData, ElmArtifacts artifacts) {
     // verify the presence of ^using .*version '[0-9]\.[0-9]\.[0-9]'$ on the cql
     Pattern pattern = Pattern.compile("using .*version '[0-9]\\.[0-9](\\.[0-9])?'");
     Matcher matcher = pattern.matcher(requestData.getCqlData());
@@ -64,35 +140,23 @@ public class CqlConversionService extends CqlTooling {
         processErrors(
             requestData.getCqlData(), requestData.isShowWarnings(), cqlTranslator.getExceptions());
 
-    AnnotationErrorFilter annotationErrorFilter =
-        new AnnotationErrorFilter(
-            requestData.getCqlData(), requestData.isShowWarnings(), cqlTranslator.toJson());
-
-    String processedJson = annotationErrorFilter.filter();
-
+    ElmJsonPostProcessor postProcessor =
+        new ElmJsonPostProcessor(
+            requestData.getCqlData(), requestData.isShowWarnings(), cqlTranslatorExceptions);
     String jsonWithErrors =
-        new CqlExceptionErrorProcessor(cqlTranslatorExceptions, processedJson).process();
-    if (noModelVersion) {
-      // Does jsonWithErrors contain "Model and version don't exist"
-      // Looking for both the original error in cqlTranslatorException
-      //  and the 'Model and version' error in jsonWithErrors
-
-      DocumentContext jsonContext = JsonPath.parse(jsonWithErrors);
-      try {
-        JSONArray errorFound =
-            jsonContext.read(
-                "$.errorExceptions[?(@.message==\"Model Type and version are required\")]");
-        if (errorFound.size() == 0) {
-          log.error(
-              "cqlTranslatorException: There was a problem finding Model and version, "
-                  + "but the error wasn't correctly reported by cqlTranslator?");
-          log.warn("Error list {}", cqlTranslatorExceptions);
-        }
-      } catch (Exception e) {
-        log.info("Model missing, but likely an empty CQL file");
-      }
+        artifacts.json()
+            ? postProcessor.process(cqlTranslator.toJson())
+            : postProcessor.processErrorsOnly();
+    if (noModelVersion && !postProcessor.isMissingModelReported()) {
+      log.error(
+          "cqlTranslatorException: There was a problem finding Model and version, "
+              + "but the error wasn't correctly reported by cqlTranslator?");
+      log.warn("Error list {}", cqlTranslatorExceptions);
     }
-    return CqlConversionPayload.builder().json(jsonWithErrors).xml(cqlTranslator.toXml()).build();
+    return CqlConversionPayload.builder()
+        .json(jsonWithErrors)
+        .xml(artifacts.xml() ? cqlTranslator.toXml() : null)
+        .build();
   }
 
   public void processForLibraryRulesExceptions(CqlTranslator cqlTranslator, String cql) {
@@ -109,44 +173,120 @@ public class CqlConversionService extends CqlTooling {
 
   public List<TranslatedLibrary> getTranslatedLibrariesForCql(String cql, String accessToken)
       throws IOException {
+    return getTranslatedLibrariesForCql(cql, accessToken, ElmArtifacts.BOTH);
+  }
+
+  public List<TranslatedLibrary> getTranslatedLibrariesForCql(
+      String cql, String accessToken, ElmArtifacts artifacts) throws IOException {
+    List<TranslatedLibrary> libraries =
+        getTranslatedLibraryBuildersForCql(cql, accessToken, artifacts).libraries().stream()
+            .map(Supplier::get)
+            .toList();
+    log.info("getTranslatedLibrariesForCql: libraries size = " + libraries.size());
+    return libraries;
+  }
+
+  /**
+   * Compiles the CQL and fetches the CQL of its includes, and returns one builder per library,
+   * the measure library first. The builders serialize the ELM only when called, so a caller
+   * streaming the libraries holds the artifacts of one library at a time.
+   *
+   * @param cql measure or library CQL
+   * @param accessToken token used for the library service
+   * @param artifacts artifacts to serialize
+   * @return library builders, empty for blank CQL
+   */
+  public LibraryBuilders getTranslatedLibraryBuildersForCql(
+      String cql, String accessToken, ElmArtifacts artifacts) {
     if (StringUtils.isBlank(cql)) {
-      return Collections.emptyList();
+      return new LibraryBuilders(Collections.emptyList(), true);
     }
-    CqlTranslator translator = runTranslator(cql, accessToken, cqlLibraryService);
-    TranslatedLibrary translatedMeasureLib =
-        buildTranslatedLibrary(translator.getTranslatedLibrary().getLibrary(), cql);
+    ToolingTranslation translation = runTranslator(cql, accessToken, cqlLibraryService);
+    CqlTranslator translator = translation.translator();
+    Library measureLibrary = translator.getTranslatedLibrary().getLibrary();
+    List<Supplier<TranslatedLibrary>> builders = new ArrayList<>();
+    builders.add(() -> buildMeasureLibrary(measureLibrary, cql, artifacts));
+    boolean complete = !hasUnresolvedIncludes(translator);
     Map<VersionedIdentifier, CompiledLibrary> includedLibraries =
         translator.getTranslatedLibraries();
-    List<TranslatedLibrary> libraries = new ArrayList<>();
-    libraries.add(translatedMeasureLib);
     // if no included libraries, return only measure library
     if (MapUtils.isEmpty(includedLibraries)) {
-      return libraries;
+      return new LibraryBuilders(builders, complete, translation.fetched());
     }
-    // get the cql for included libraries
-    Map<String, String> cqlMap =
-        getIncludedLibrariesCql(new MadieLibrarySourceProvider(), translator);
+    // the cql for included libraries was read where the library sources were set up
+    Map<String, String> cqlMap = translation.includedLibrariesCql();
+    // includes of the tooling endpoints are compiled with the same options for every model
+    String scope = CqlTranslatorFactory.scope(toolingRequestData(cql));
 
     // create TranslatedLibrary for each included library
-    List<TranslatedLibrary> translatedIncludeLibs =
-        includedLibraries.values().stream()
-            .map(compiledLibrary -> buildTranslatedLibrary(compiledLibrary, cqlMap))
-            .toList();
-    libraries.addAll(translatedIncludeLibs);
-    log.info("getTranslatedLibrariesForCql: libraries size = " + libraries.size());
-    return libraries;
+    includedLibraries
+        .values()
+        .forEach(
+            compiledLibrary ->
+                builders.add(
+                    () -> buildTranslatedLibrary(compiledLibrary, cqlMap, artifacts, scope)));
+    return new LibraryBuilders(builders, complete, translation.fetched());
+  }
+
+  private TranslatedLibrary buildMeasureLibrary(
+      Library library, String cql, ElmArtifacts artifacts) {
+    try {
+      return buildTranslatedLibrary(library, cql, artifacts);
+    } catch (IOException e) {
+      log.error("Error occurred while building the translated library artifacts: ", e);
+      throw new InternalServerException(
+          "An error occurred while building translated artifacts for library "
+              + library.getIdentifier().getId());
+    }
   }
 
   public TranslatedLibrary buildTranslatedLibrary(
       CompiledLibrary compiledLibrary, Map<String, String> cqlMap) {
+    return buildTranslatedLibrary(compiledLibrary, cqlMap, ElmArtifacts.BOTH);
+  }
+
+  public TranslatedLibrary buildTranslatedLibrary(
+      CompiledLibrary compiledLibrary, Map<String, String> cqlMap, ElmArtifacts artifacts) {
+    return buildTranslatedLibrary(compiledLibrary, cqlMap, artifacts, null);
+  }
+
+  /**
+   * Builds the artifacts of an included library, reading its ELM from the {@link ElmArtifactStore}
+   * when it was stored for the same scope.
+   *
+   * @param compiledLibrary include compiled by the translator
+   * @param cqlMap CQL of the includes keyed by "name-version"
+   * @param artifacts artifacts to serialize
+   * @param scope model and options the include was compiled with, null to always serialize
+   * @return the library artifacts, null without a compiled library
+   */
+  TranslatedLibrary buildTranslatedLibrary(
+      CompiledLibrary compiledLibrary,
+      Map<String, String> cqlMap,
+      ElmArtifacts artifacts,
+      String scope) {
     if (compiledLibrary == null) {
       return null;
     }
     Library library = compiledLibrary.getLibrary();
     String name = library.getIdentifier().getId();
     String version = library.getIdentifier().getVersion();
+    String cql = cqlMap.get(name + "-" + version);
+    if (elmArtifactStore != null && scope != null) {
+      Optional<ElmArtifactStore.StoredArtifact> stored =
+          elmArtifactStore.get(library.getIdentifier(), scope);
+      if (stored.isPresent()) {
+        return TranslatedLibrary.builder()
+            .name(name)
+            .version(version)
+            .cql(cql)
+            .elmJson(artifacts.json() ? stored.get().elmJson() : null)
+            .elmXml(artifacts.xml() ? stored.get().elmXml() : null)
+            .build();
+      }
+    }
     try {
-      return buildTranslatedLibrary(library, cqlMap.get(name + "-" + version));
+      return buildTranslatedLibrary(library, cql, artifacts);
     } catch (IOException e) {
       log.error("Error occurred while building the translated library artifacts: ", e);
       throw new InternalServerException(
@@ -154,10 +294,11 @@ public class CqlConversionService extends CqlTooling {
     }
   }
 
-  private TranslatedLibrary buildTranslatedLibrary(Library library, String cql) throws IOException {
+  private TranslatedLibrary buildTranslatedLibrary(
+      Library library, String cql, ElmArtifacts artifacts) throws IOException {
     VersionedIdentifier identifier = library.getIdentifier();
-    String elmJson = convertToJson(library, LibraryContentType.JSON);
-    String elmXml = convertToJson(library, LibraryContentType.XML);
+    String elmJson = artifacts.json() ? convertToJson(library, LibraryContentType.JSON) : null;
+    String elmXml = artifacts.xml() ? convertToJson(library, LibraryContentType.XML) : null;
     String name = identifier.getId();
     String version = identifier.getVersion();
     return TranslatedLibrary.builder()
@@ -192,4 +333,19 @@ public class CqlConversionService extends CqlTooling {
         e.getSeverity() != null ? e.getSeverity().name() : null,
         e.getMessage());
   }
+
+  /**
+   * Lazily built libraries of a translation.
+   *
+   * @param libraries builders, the measure library first
+   * @param complete false when an include could not be fetched, so a retry may give other ELM
+   * @param fetched include sources fetched for the translation, keyed by "name|version"
+   */
+  public record LibraryBuilders(
+      List<Supplier<TranslatedLibrary>> libraries, boolean complete, Map<String, String> fetched) {
+
+    public LibraryBuilders(List<Supplier<TranslatedLibrary>> libraries, boolean complete) {
+      this(libraries, complete, Map.of());
+    }
+  }
 }
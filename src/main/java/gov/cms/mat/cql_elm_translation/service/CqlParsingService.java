@@ -186,7 +186,8 @@ public class CqlParsingService extends CqlTooling {
    */
   public Map<String, Set<CQLDefinition>> getDefinitionCallstacks(String cql, String accessToken) {
     CQLTools cqlTools = parseCql(cql, accessToken, cqlLibraryService, null);
-    Map<String, Set<String>> nodeGraph = cqlTools.getCallstack();
+    // copy, the analysis may be shared with other requests through the cache
+    Map<String, Set<String>> nodeGraph = new HashMap<>(cqlTools.getCallstack());
     Set<String> keys = nodeGraph.keySet();
     Set<CQLDefinition> cqlDefinitions =
         cqlTools.getDefinitionContents().stream()
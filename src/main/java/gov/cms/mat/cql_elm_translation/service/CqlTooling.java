@@ -8,28 +8,98 @@ import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
 import gov.cms.madie.cql_elm_translator.utils.cql.parsing.model.CQLModel;
 import gov.cms.mat.cql.CqlTextParser;
 import gov.cms.mat.cql.elements.UsingProperties;
+import gov.cms.mat.cql_elm_translation.service.cache.CqlConversionPayloadCache;
+import gov.cms.mat.cql_elm_translation.service.cache.CqlToolsCache;
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
 
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.LibraryBuilder;
 import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 @RequiredArgsConstructor
 public abstract class CqlTooling {
+  private CqlTranslatorFactory cqlTranslatorFactory;
+  private CqlToolsCache cqlToolsCache;
+  private IncludeLibraryPrefetcher includeLibraryPrefetcher;
+  private TranslationCoalescer translationCoalescer;
+  private TranslationBulkhead translationBulkhead;
+
+  /**
+   * Translations go through the factory when it is wired and enabled, so that compiled includes
+   * are shared across requests. Without it the translator resource from the commons is used.
+   */
+  @Autowired
+  public void setCqlTranslatorFactory(CqlTranslatorFactory cqlTranslatorFactory) {
+    this.cqlTranslatorFactory = cqlTranslatorFactory;
+  }
+
+  @Autowired
+  public void setCqlToolsCache(CqlToolsCache cqlToolsCache) {
+    this.cqlToolsCache = cqlToolsCache;
+  }
+
+  @Autowired
+  public void setIncludeLibraryPrefetcher(IncludeLibraryPrefetcher includeLibraryPrefetcher) {
+    this.includeLibraryPrefetcher = includeLibraryPrefetcher;
+  }
+
+  /** Identical concurrent translations run once when the coalescer is wired. */
+  @Autowired
+  public void setTranslationCoalescer(TranslationCoalescer translationCoalescer) {
+    this.translationCoalescer = translationCoalescer;
+  }
+
+  protected TranslationCoalescer getTranslationCoalescer() {
+    return translationCoalescer;
+  }
+
+  /** Translator work is admitted through the bulkhead when it is wired. */
+  @Autowired
+  public void setTranslationBulkhead(TranslationBulkhead translationBulkhead) {
+    this.translationBulkhead = translationBulkhead;
+  }
+
   protected CQLTools parseCql(
       String cql,
       String accessToken,
       CqlLibraryService cqlLibraryService,
       Set<String> parentExpressions) {
+    if (cqlToolsCache == null) {
+      return generateCqlTools(cql, accessToken, cqlLibraryService, parentExpressions, null)
+          .cqlTools();
+    }
+    Map<String, String> fetched =
+        cqlToolsCache.isKeyedWithoutFetch(cql)
+            ? null
+            // draft includes are keyed by their sources, so they are fetched before the lookup
+            : setUpLibrarySources(cql, accessToken, cqlLibraryService);
+    return cqlToolsCache.get(
+        cql,
+        parentExpressions,
+        fetched,
+        () -> generateCqlTools(cql, accessToken, cqlLibraryService, parentExpressions, fetched));
+  }
+
+  private CqlToolsCache.Analysis generateCqlTools(
+      String cql,
+      String accessToken,
+      CqlLibraryService cqlLibraryService,
+      Set<String> parentExpressions,
+      Map<String, String> fetched) {
     // Run Translator to compile libraries
-    CqlTranslator cqlTranslator = runTranslator(cql, accessToken, cqlLibraryService);
+    ToolingTranslation translation = runTranslator(cql, accessToken, cqlLibraryService, fetched);
+    CqlTranslator cqlTranslator = translation.translator();
     Map<String, CompiledLibrary> translatedLibraries = new HashMap<>();
     cqlTranslator
         .getTranslatedLibraries()
@@ -45,17 +115,27 @@ public abstract class CqlTooling {
     CQLTools cqlTools =
         new CQLTools(
             cql,
-            getIncludedLibrariesCql(new MadieLibrarySourceProvider(), cqlTranslator),
+            translation.includedLibrariesCql(),
             topLevelExpressions,
             cqlTranslator,
             translatedLibraries);
 
+    TranslationDeadline.checkpoint(TranslationDeadline.STAGE_ANALYSIS);
     try {
       cqlTools.generate();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    return cqlTools;
+    TranslationDeadline.checkpoint(TranslationDeadline.STAGE_ANALYSIS);
+    return new CqlToolsCache.Analysis(cqlTools, !hasUnresolvedIncludes(cqlTranslator));
+  }
+
+  protected boolean hasUnresolvedIncludes(CqlTranslator cqlTranslator) {
+    return cqlTranslator.getExceptions().stream()
+        .anyMatch(
+            e ->
+                StringUtils.contains(
+                    e.getMessage(), CqlConversionPayloadCache.UNRESOLVED_INCLUDE_MESSAGE));
   }
 
   protected Map<String, String> getIncludedLibrariesCql(
@@ -77,27 +157,110 @@ public abstract class CqlTooling {
     return includedLibrariesCql;
   }
 
-  protected CqlTranslator runTranslator(
+  protected ToolingTranslation runTranslator(
       String cql, String accessToken, CqlLibraryService cqlLibraryService) {
+    return runTranslator(cql, accessToken, cqlLibraryService, null);
+  }
+
+  /**
+   * Compiles the CQL with the options of the tooling endpoints. The library sources are set up,
+   * and the CQL of the compiled libraries is read, inside the coalesced work, because both rely
+   * on the state of the thread doing the work; joined callers get them from the shared result.
+   *
+   * @param fetched sources returned by {@link #setUpLibrarySources} when they were already set up
+   *     on the calling thread, null otherwise
+   */
+  private ToolingTranslation runTranslator(
+      String cql,
+      String accessToken,
+      CqlLibraryService cqlLibraryService,
+      Map<String, String> fetched) {
+    RequestData requestData = toolingRequestData(cql);
+    Supplier<ToolingTranslation> work =
+        () -> {
+          Map<String, String> sources =
+              fetched == null ? setUpLibrarySources(cql, accessToken, cqlLibraryService) : fetched;
+          CqlTranslator translator = processCqlData(requestData);
+          return new ToolingTranslation(
+              translator,
+              getIncludedLibrariesCql(new MadieLibrarySourceProvider(), translator),
+              sources);
+        };
+    if (translationCoalescer == null) {
+      return work.get();
+    }
+    return translationCoalescer.translator(requestData, accessToken, work);
+  }
+
+  /** Translator options used for the tooling endpoints. */
+  protected static RequestData toolingRequestData(String cql) {
+    return RequestData.builder()
+        .cqlData(cql)
+        .showWarnings(false)
+        .signatures(LibraryBuilder.SignatureLevel.All)
+        .annotations(true)
+        .locators(true)
+        .disableListDemotion(true)
+        .disableListPromotion(true)
+        .disableMethodInvocation(false)
+        .validateUnits(true)
+        .resultTypes(true)
+        .build();
+  }
+
+  /**
+   * Prepares the library source provider for the calling thread and, when the prefetcher is
+   * wired, fetches the include tree ahead of compilation.
+   *
+   * @return library sources fetched for this translation keyed by "name|version", empty when
+   *     nothing was prefetched
+   */
+  public Map<String, String> setUpLibrarySources(
+      String cql, String accessToken, CqlLibraryService cqlLibraryService) {
+    TranslationDeadline.checkpoint(TranslationDeadline.STAGE_INCLUDE_FETCH);
     cqlLibraryService.setUpLibrarySourceProvider(cql, accessToken);
-    RequestData requestData =
-        RequestData.builder()
-            .cqlData(cql)
-            .showWarnings(false)
-            .signatures(LibraryBuilder.SignatureLevel.All)
-            .annotations(true)
-            .locators(true)
-            .disableListDemotion(true)
-            .disableListPromotion(true)
-            .disableMethodInvocation(false)
-            .validateUnits(true)
-            .resultTypes(true)
-            .build();
-
-    return processCqlData(requestData);
+    if (includeLibraryPrefetcher == null
+        || cqlTranslatorFactory == null
+        || !cqlTranslatorFactory.isEnabled()) {
+      return Map.of();
+    }
+    Map<String, String> fetched = includeLibraryPrefetcher.prefetch(cql, accessToken);
+    TranslationDeadline.checkpoint(TranslationDeadline.STAGE_INCLUDE_FETCH);
+    return fetched;
   }
 
+  /**
+   * Hands the sources returned by {@link #setUpLibrarySources} to the next translator built on
+   * the calling thread for a CQL with the same includes, such as the reduced CQL of an
+   * incremental translation, instead of fetching them again.
+   */
+  public void reuseLibrarySources(String cql, Map<String, String> fetched) {
+    if (includeLibraryPrefetcher != null && fetched != null && !fetched.isEmpty()) {
+      includeLibraryPrefetcher.offer(cql, fetched);
+    }
+  }
+
+  /**
+   * Compiles the CQL. The deadline of the request is checked before and after the compile, and
+   * by the translator factory whenever an include library is loaded.
+   */
   protected CqlTranslator processCqlData(RequestData requestData) {
+    CqlTranslator translator;
+    if (translationBulkhead == null) {
+      translator = compile(requestData);
+    } else {
+      translator =
+          translationBulkhead.execute(requestData.getCqlData(), () -> compile(requestData));
+    }
+    TranslationDeadline.checkpoint(TranslationDeadline.STAGE_COMPILE);
+    return translator;
+  }
+
+  private CqlTranslator compile(RequestData requestData) {
+    TranslationDeadline.checkpoint(TranslationDeadline.STAGE_COMPILE);
+    if (cqlTranslatorFactory != null && cqlTranslatorFactory.isEnabled()) {
+      return cqlTranslatorFactory.buildTranslator(requestData);
+    }
     CqlTextParser cqlTextParser = new CqlTextParser(requestData.getCqlData());
     UsingProperties usingProperties = cqlTextParser.getUsing();
     return TranslationResource.getInstance(
@@ -115,4 +278,16 @@ public abstract class CqlTooling {
 
     return cqlModel.getExpressionListFromCqlModel();
   }
+
+  /**
+   * Result of a tooling compile, shared read-only between coalesced callers.
+   *
+   * @param translator translator holding the compiled libraries
+   * @param includedLibrariesCql CQL of the compiled libraries keyed by "name-version"
+   * @param fetched include sources prefetched for the compile keyed by "name|version"
+   */
+  public record ToolingTranslation(
+      CqlTranslator translator,
+      Map<String, String> includedLibrariesCql,
+      Map<String, String> fetched) {}
 }
@@ -0,0 +1,199 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.cql_translator.MadieLibrarySourceProvider;
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.CqlTextParser;
+import gov.cms.mat.cql.elements.UsingProperties;
+import gov.cms.mat.cql_elm_translation.service.cache.CompiledLibraryCache;
+import gov.cms.mat.cql_elm_translation.service.cache.ElmArtifactStore;
+import gov.cms.mat.cql_elm_translation.service.cache.LibraryBundle;
+import gov.cms.mat.cql_elm_translation.service.cache.LibrarySourceStore;
+import gov.cms.mat.cql_elm_translation.service.cache.UnresolvedLibraryCache;
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.cql2elm.model.Model;
+import org.hl7.cql.model.ModelIdentifier;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds translators whose LibraryManager shares compiled include libraries across requests
+ * through the {@link CompiledLibraryCache}, so a versioned include is compiled once per node.
+ * Include sources fetched ahead of time by the {@link IncludeLibraryPrefetcher} are compiled from
+ * memory, bundled libraries come from the {@link LibraryBundle} and released include sources are
+ * kept on disk by the {@link LibrarySourceStore}.
+ *
+ * <p>Loading model info is costly, so translations share one ModelManager per model family.
+ * cqframework's ModelManager resolves models lazily into unsynchronized maps, so the shared
+ * instances serialize model resolution; after the first load a resolution is a map lookup, and
+ * the translator warm-up resolves the QDM and FHIR models before the node accepts traffic.
+ */
+@Slf4j
+@Component
+public class CqlTranslatorFactory {
+
+  @Getter private final boolean enabled;
+  private final CompiledLibraryCache compiledLibraryCache;
+  private final IncludeLibraryPrefetcher includeLibraryPrefetcher;
+  private final ElmArtifactStore elmArtifactStore;
+  private final LibrarySourceStore librarySourceStore;
+  private final LibraryBundle libraryBundle;
+  private final UnresolvedLibraryCache unresolvedLibraryCache;
+  private final LibraryFetchGuard libraryFetchGuard;
+  private final Map<Boolean, ModelManager> modelManagers = new ConcurrentHashMap<>();
+
+  public CqlTranslatorFactory(
+      CompiledLibraryCache compiledLibraryCache,
+      IncludeLibraryPrefetcher includeLibraryPrefetcher,
+      ElmArtifactStore elmArtifactStore,
+      LibrarySourceStore librarySourceStore,
+      LibraryBundle libraryBundle,
+      UnresolvedLibraryCache unresolvedLibraryCache,
+      LibraryFetchGuard libraryFetchGuard,
+      @Value("${madie.translation.compiled-library-cache.enabled:true}") boolean enabled) {
+    this.compiledLibraryCache = compiledLibraryCache;
+    this.includeLibraryPrefetcher = includeLibraryPrefetcher;
+    this.elmArtifactStore = elmArtifactStore;
+    this.librarySourceStore = librarySourceStore;
+    this.libraryBundle = libraryBundle;
+    this.unresolvedLibraryCache = unresolvedLibraryCache;
+    this.libraryFetchGuard = libraryFetchGuard;
+    this.enabled = enabled;
+  }
+
+  public CqlTranslator buildTranslator(RequestData requestData) {
+    UsingProperties usingProperties = new CqlTextParser(requestData.getCqlData()).getUsing();
+    boolean fhir = usingProperties != null && "FHIR".equals(usingProperties.getLibraryType());
+
+    String scope = scope(requestData, usingProperties);
+    LibraryManager libraryManager =
+        new LibraryManager(
+            modelManagers.computeIfAbsent(fhir, isFhir -> new SerializedModelManager()),
+            buildCompilerOptions(requestData),
+            compiledLibraryCache.newTranslationView(scope));
+    // Checked first on every include lookup, so a translation past its deadline stops loading.
+    libraryManager.getLibrarySourceLoader().registerProvider(new DeadlineCheckingSourceProvider());
+    // Includes the library service recently did not find fail without asking it again.
+    libraryManager
+        .getLibrarySourceLoader()
+        .registerProvider(unresolvedLibraryCache.failFastProvider());
+    if (elmArtifactStore.isEnabled()) {
+      // Versioned includes stored on disk are loaded from ELM instead of being compiled.
+      libraryManager
+          .getLibrarySourceLoader()
+          .registerProvider(elmArtifactStore.sourceProvider(scope));
+    }
+    // Sources prefetched for this CQL are served from memory, the rest is resolved lazily.
+    PrefetchedLibrarySourceProvider prefetched =
+        includeLibraryPrefetcher.take(requestData.getCqlData());
+    if (prefetched != null) {
+      libraryManager.getLibrarySourceLoader().registerProvider(prefetched);
+    }
+    if (!libraryBundle.isEmpty()) {
+      libraryManager.getLibrarySourceLoader().registerProvider(libraryBundle.sourceProvider());
+    }
+    libraryManager.getLibrarySourceLoader().registerProvider(librarySourceProvider());
+    CqlTranslator translator = CqlTranslator.fromText(requestData.getCqlData(), libraryManager);
+    if (translator.getErrors().isEmpty()) {
+      // serialized and written in the background, outside of the deadline of this request
+      elmArtifactStore.putAll(translator.getTranslatedLibraries().values(), scope);
+    }
+    return translator;
+  }
+
+  // released sources are read from and written to disk before the library service is asked
+  // through its circuit breaker, and libraries it does not find are remembered for a short while
+  private LibrarySourceProvider librarySourceProvider() {
+    LibrarySourceProvider provider = libraryFetchGuard.guard(new MadieLibrarySourceProvider());
+    if (librarySourceStore.isEnabled()) {
+      provider = librarySourceStore.sourceProvider(provider);
+    }
+    return unresolvedLibraryCache.recordingProvider(provider);
+  }
+
+  /** Translator options and model that the compiled includes of this CQL depend on. */
+  static String scope(RequestData requestData) {
+    return scope(requestData, new CqlTextParser(requestData.getCqlData()).getUsing());
+  }
+
+  /** Translator options and model that the compiled includes of this request depend on. */
+  static String scope(RequestData requestData, UsingProperties usingProperties) {
+    String model =
+        usingProperties == null
+            ? "none"
+            : usingProperties.getLibraryType() + "-" + usingProperties.getVersion();
+    return model + "|" + TranslationKeyUtil.compilerOptions(requestData);
+  }
+
+  static CqlCompilerOptions buildCompilerOptions(RequestData requestData) {
+    CqlCompilerOptions compilerOptions = new CqlCompilerOptions();
+    compilerOptions.getOptions().add(CqlCompilerOptions.Options.EnableDetailedErrors);
+    if (requestData.isAnnotations()) {
+      compilerOptions.getOptions().add(CqlCompilerOptions.Options.EnableAnnotations);
+    }
+    if (requestData.isLocators()) {
+      compilerOptions.getOptions().add(CqlCompilerOptions.Options.EnableLocators);
+    }
+    if (requestData.isResultTypes()) {
+      compilerOptions.getOptions().add(CqlCompilerOptions.Options.EnableResultTypes);
+    }
+    if (requestData.isDisableListDemotion()) {
+      compilerOptions.getOptions().add(CqlCompilerOptions.Options.DisableListDemotion);
+    }
+    if (requestData.isDisableListPromotion()) {
+      compilerOptions.getOptions().add(CqlCompilerOptions.Options.DisableListPromotion);
+    }
+    if (requestData.isDisableMethodInvocation()) {
+      compilerOptions.getOptions().add(CqlCompilerOptions.Options.DisableMethodInvocation);
+    }
+    if (requestData.getSignatures() != null) {
+      compilerOptions.setSignatureLevel(requestData.getSignatures());
+    }
+    compilerOptions.setValidateUnits(requestData.isValidateUnits());
+    return compilerOptions;
+  }
+
+  /** ModelManager that resolves one model at a time, so it can be shared by translations. */
+  private static final class SerializedModelManager extends ModelManager {
+    @Override
+    public synchronized Model resolveModel(String modelName) {
+      return super.resolveModel(modelName);
+    }
+
+    @Override
+    public synchronized Model resolveModel(String modelName, String version) {
+      return super.resolveModel(modelName, version);
+    }
+
+    @Override
+    public synchronized Model resolveModel(ModelIdentifier modelIdentifier) {
+      return super.resolveModel(modelIdentifier);
+    }
+
+    @Override
+    public synchronized Model resolveModelByUri(String namespaceUri) {
+      return super.resolveModelByUri(namespaceUri);
+    }
+  }
+
+  /** Fails the include lookup once the deadline of the request has passed, never serves one. */
+  private static final class DeadlineCheckingSourceProvider implements LibrarySourceProvider {
+    @Override
+    public InputStream getLibrarySource(VersionedIdentifier libraryIdentifier) {
+      TranslationDeadline.checkpoint(TranslationDeadline.STAGE_COMPILE);
+      return null;
+    }
+  }
+}
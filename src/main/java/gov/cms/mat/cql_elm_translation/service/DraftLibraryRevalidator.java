@@ -0,0 +1,170 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Long-lived cache of draft library sources, keyed by "name|version" and a digest of the access
+ * token, that stays correct by revalidating with the library service. Like the library service
+ * client's own cache it is scoped to the token, so a fresh entry is never served to a caller the
+ * library service has not authorized. Once an entry is older than the revalidation interval
+ * the next fetch is a conditional GET with the ETag of the cached source; a 304 keeps the entry
+ * without transferring the CQL again, and only changed content replaces it. The library service
+ * can also drop an entry at once through the invalidation endpoint.
+ */
+@Slf4j
+@Component
+public class DraftLibraryRevalidator {
+  public static final String CACHE_NAME = "draftLibraries";
+  public static final String METRIC_NAME = "madie.library.draft.revalidations";
+
+  private final Cache cache;
+  private final RestTemplate restTemplate;
+  private final MeterRegistry meterRegistry;
+  private final String cqlUrl;
+  private final Duration revalidateAfter;
+  private final Pattern draftVersionPattern;
+
+  public DraftLibraryRevalidator(
+      CacheManager cacheManager,
+      RestTemplate restTemplate,
+      MeterRegistry meterRegistry,
+      @Value("${madie.library.service.baseUrl}") String baseUrl,
+      @Value("${madie.library.service.cql.uri}") String cqlUri,
+      @Value("${madie.library.draft.revalidate-after:0s}") Duration revalidateAfter,
+      @Value("${madie.library.draft-version-pattern:0\\.0\\.000}") String draftVersionPattern) {
+    this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+    this.restTemplate = restTemplate;
+    this.meterRegistry = meterRegistry;
+    this.cqlUrl = baseUrl + cqlUri;
+    this.revalidateAfter = revalidateAfter;
+    this.draftVersionPattern = Pattern.compile(draftVersionPattern);
+  }
+
+  /** Whether the library is a draft with a version, the only kind this cache holds. */
+  public boolean handles(VersionedIdentifier identifier) {
+    return identifier.getVersion() != null
+        && draftVersionPattern.matcher(identifier.getVersion()).matches();
+  }
+
+  /**
+   * CQL of a draft library, from the cache while it is fresh and otherwise revalidated with the
+   * library service.
+   *
+   * @param identifier draft library
+   * @param accessToken token used for the library service
+   * @return the CQL, or null when the library service returned none
+   */
+  public String fetch(VersionedIdentifier identifier, String accessToken) {
+    String key = key(identifier, accessToken);
+    DraftSource cached = cache.get(key, DraftSource.class);
+    if (cached != null && System.nanoTime() - cached.validatedAt() < revalidateAfter.toNanos()) {
+      count("fresh");
+      return cached.cql();
+    }
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.AUTHORIZATION, accessToken);
+    if (cached != null && cached.etag() != null) {
+      headers.setIfNoneMatch(cached.etag());
+    }
+    ResponseEntity<String> response;
+    try {
+      response =
+          restTemplate.exchange(
+              uri(identifier), HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    } catch (RuntimeException e) {
+      cache.evict(key);
+      throw e;
+    }
+
+    if (cached != null && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+      cache.put(key, new DraftSource(cached.cql(), cached.etag(), System.nanoTime()));
+      count("not_modified");
+      return cached.cql();
+    }
+    String cql = response.getBody();
+    if (StringUtils.isBlank(cql)) {
+      cache.evict(key);
+      return cql;
+    }
+    cache.put(key, new DraftSource(cql, response.getHeaders().getETag(), System.nanoTime()));
+    if (cached == null) {
+      count("miss");
+    } else if (cql.equals(cached.cql())) {
+      count("unchanged");
+    } else {
+      log.debug("Draft library {} {} changed", identifier.getId(), identifier.getVersion());
+      count("changed");
+    }
+    return cql;
+  }
+
+  /**
+   * Drops the cached sources of a library for every token, so that the next fetch transfers it
+   * again.
+   */
+  public void evict(VersionedIdentifier identifier) {
+    String prefix = identifier.getId() + "|" + identifier.getVersion() + "|";
+    Map<?, ?> entries;
+    if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine) {
+      entries = caffeine.asMap();
+    } else if (cache.getNativeCache() instanceof Map<?, ?> map) {
+      entries = map;
+    } else {
+      cache.clear();
+      return;
+    }
+    entries.keySet().removeIf(key -> String.valueOf(key).startsWith(prefix));
+  }
+
+  private URI uri(VersionedIdentifier identifier) {
+    return UriComponentsBuilder.fromHttpUrl(cqlUrl)
+        .queryParam("name", identifier.getId())
+        .queryParam("version", identifier.getVersion())
+        .build()
+        .encode()
+        .toUri();
+  }
+
+  private void count(String outcome) {
+    meterRegistry.counter(METRIC_NAME, "outcome", outcome).increment();
+  }
+
+  private static String key(VersionedIdentifier identifier, String accessToken) {
+    return identifier.getId()
+        + "|"
+        + identifier.getVersion()
+        + "|"
+        + TranslationKeyUtil.digest(String.valueOf(accessToken));
+  }
+
+  /**
+   * Cached draft source.
+   *
+   * @param cql library CQL
+   * @param etag ETag the library service sent with it, or null
+   * @param validatedAt {@link System#nanoTime()} of the last fetch or revalidation
+   */
+  public record DraftSource(String cql, String etag, long validatedAt) {}
+}
@@ -0,0 +1,265 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.mat.cql_elm_translation.service.cache.LibraryBundle;
+import gov.cms.mat.cql_elm_translation.service.cache.LibrarySourceStore;
+import gov.cms.mat.cql_elm_translation.service.cache.UnresolvedLibraryCache;
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Fetches the include tree of a CQL document before it is compiled. The includes of each level
+ * are fetched concurrently, so the wait is bounded by the depth of the tree rather than the number
+ * of includes. The fetched sources are served to the translator of the same thread through a
+ * {@link PrefetchedLibrarySourceProvider}; anything that could not be fetched in time is left to
+ * the lazy lookup of the MadieLibrarySourceProvider. Includes found in the {@link LibraryBundle}
+ * or the {@link LibrarySourceStore} are read from memory or disk instead of the library service,
+ * drafts are revalidated through the {@link DraftLibraryRevalidator}, and calls to the service go
+ * through the {@link LibraryFetchGuard}.
+ */
+@Slf4j
+@Component
+public class IncludeLibraryPrefetcher implements DisposableBean {
+
+  private static final ThreadLocal<Prefetched> CURRENT = new ThreadLocal<>();
+
+  @Getter private final boolean enabled;
+  private final CqlLibraryService cqlLibraryService;
+  private final Duration timeout;
+  private final ExecutorService executor;
+  private LibrarySourceStore librarySourceStore;
+  private LibraryBundle libraryBundle;
+  private UnresolvedLibraryCache unresolvedLibraryCache;
+  private LibraryFetchGuard libraryFetchGuard;
+  private DraftLibraryRevalidator draftLibraryRevalidator;
+
+  public IncludeLibraryPrefetcher(
+      CqlLibraryService cqlLibraryService,
+      @Value("${madie.library.prefetch.enabled:true}") boolean enabled,
+      @Value("${madie.library.prefetch.parallelism:8}") int parallelism,
+      @Value("${madie.library.prefetch.timeout:10s}") Duration timeout) {
+    this.cqlLibraryService = cqlLibraryService;
+    this.enabled = enabled;
+    this.timeout = timeout;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            parallelism,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "include-prefetch-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  @Autowired
+  public void setLibrarySourceStore(LibrarySourceStore librarySourceStore) {
+    this.librarySourceStore = librarySourceStore;
+  }
+
+  @Autowired
+  public void setLibraryBundle(LibraryBundle libraryBundle) {
+    this.libraryBundle = libraryBundle;
+  }
+
+  @Autowired
+  public void setUnresolvedLibraryCache(UnresolvedLibraryCache unresolvedLibraryCache) {
+    this.unresolvedLibraryCache = unresolvedLibraryCache;
+  }
+
+  @Autowired
+  public void setLibraryFetchGuard(LibraryFetchGuard libraryFetchGuard) {
+    this.libraryFetchGuard = libraryFetchGuard;
+  }
+
+  @Autowired
+  public void setDraftLibraryRevalidator(DraftLibraryRevalidator draftLibraryRevalidator) {
+    this.draftLibraryRevalidator = draftLibraryRevalidator;
+  }
+
+  /**
+   * Fetches all includes of the CQL, level by level, and keeps them for the next translator built
+   * on the calling thread for the same CQL.
+   *
+   * @param cql CQL about to be translated
+   * @param accessToken token used for the library service
+   * @return library sources keyed by "name|version"
+   */
+  public Map<String, String> prefetch(String cql, String accessToken) {
+    CURRENT.remove();
+    if (!enabled || StringUtils.isBlank(cql)) {
+      return Map.of();
+    }
+    Map<String, String> sources = new LinkedHashMap<>();
+    Set<String> seen = new HashSet<>();
+    Set<String> level = TranslationKeyUtil.includes(cql);
+    int depth = 0;
+    while (!level.isEmpty()) {
+      seen.addAll(level);
+      Map<String, String> fetched = fetchLevel(level, accessToken);
+      sources.putAll(fetched);
+      Set<String> next = new HashSet<>();
+      fetched.values().forEach(source -> next.addAll(TranslationKeyUtil.includes(source)));
+      next.removeAll(seen);
+      level = next;
+      depth++;
+    }
+    if (!sources.isEmpty()) {
+      log.debug("Prefetched {} include libraries in {} level(s)", sources.size(), depth);
+    }
+    CURRENT.set(new Prefetched(cql, sources));
+    return sources;
+  }
+
+  /**
+   * Keeps sources that were already fetched for the next translator built on the calling thread
+   * for the given CQL, typically a derived CQL with the same includes.
+   */
+  public void offer(String cql, Map<String, String> sources) {
+    if (enabled) {
+      CURRENT.set(new Prefetched(cql, sources));
+    }
+  }
+
+  /**
+   * Hands out the sources prefetched on this thread for the given CQL and forgets them, so that a
+   * later translation on a pooled thread never sees stale draft sources.
+   *
+   * @param cql CQL that is being translated
+   * @return provider over the prefetched sources, or null when nothing was prefetched for the CQL
+   */
+  public PrefetchedLibrarySourceProvider take(String cql) {
+    Prefetched prefetched = CURRENT.get();
+    CURRENT.remove();
+    if (prefetched == null || !StringUtils.equals(prefetched.cql(), cql)) {
+      return null;
+    }
+    return new PrefetchedLibrarySourceProvider(prefetched.sources());
+  }
+
+  private Map<String, String> fetchLevel(Set<String> level, String accessToken) {
+    Map<String, String> fetched = new HashMap<>();
+    Map<String, Future<String>> futures = new HashMap<>();
+    TranslationDeadline translationDeadline = TranslationDeadline.current();
+    for (String include : level) {
+      String name = StringUtils.substringBefore(include, "|");
+      String version = StringUtils.substringAfter(include, "|");
+      VersionedIdentifier identifier =
+          new VersionedIdentifier()
+              .withId(name)
+              .withVersion("null".equals(version) ? null : version);
+      String stored = storedSource(identifier);
+      if (stored != null) {
+        fetched.put(include, stored);
+        continue;
+      }
+      if (unresolvedLibraryCache != null && unresolvedLibraryCache.isUnresolved(identifier)) {
+        // left to the translator, which fails it from the negative cache
+        continue;
+      }
+      // the fetch runs under the deadline of the translation, so a hedged fetch is bounded by it
+      futures.put(
+          include,
+          executor.submit(
+              () ->
+                  TranslationDeadline.callWith(
+                      translationDeadline, () -> fetch(identifier, accessToken))));
+    }
+
+    long deadline = System.nanoTime() + TranslationDeadline.remaining(timeout).toNanos();
+    List<String> failed = new ArrayList<>();
+    for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+      try {
+        String source =
+            entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (StringUtils.isNotBlank(source)) {
+          fetched.put(entry.getKey(), source);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        entry.getValue().cancel(true);
+        failed.add(entry.getKey());
+      } catch (ExecutionException | TimeoutException e) {
+        entry.getValue().cancel(true);
+        failed.add(entry.getKey());
+      }
+    }
+    if (!failed.isEmpty()) {
+      log.info("Could not prefetch include libraries {}, resolving them lazily", failed);
+    }
+    return fetched;
+  }
+
+  private String storedSource(VersionedIdentifier identifier) {
+    String bundled = libraryBundle == null ? null : libraryBundle.get(identifier).orElse(null);
+    if (bundled != null) {
+      return bundled;
+    }
+    return librarySourceStore == null ? null : librarySourceStore.get(identifier).orElse(null);
+  }
+
+  private String fetch(VersionedIdentifier identifier, String accessToken) {
+    Supplier<String> request;
+    if (draftLibraryRevalidator != null && draftLibraryRevalidator.handles(identifier)) {
+      request = () -> draftLibraryRevalidator.fetch(identifier, accessToken);
+    } else {
+      request =
+          () ->
+              cqlLibraryService.getLibraryCql(
+                  identifier.getId(), identifier.getVersion(), accessToken);
+    }
+    String source;
+    try {
+      source = libraryFetchGuard == null ? request.get() : libraryFetchGuard.executeHedged(request);
+    } catch (RuntimeException e) {
+      if (unresolvedLibraryCache != null && UnresolvedLibraryCache.isNotFound(e)) {
+        unresolvedLibraryCache.markUnresolved(identifier);
+      }
+      throw e;
+    }
+    if (unresolvedLibraryCache != null) {
+      if (StringUtils.isBlank(source)) {
+        unresolvedLibraryCache.markUnresolved(identifier);
+      } else {
+        unresolvedLibraryCache.markResolved(identifier);
+      }
+    }
+    if (librarySourceStore != null) {
+      librarySourceStore.put(identifier, source);
+    }
+    return source;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  private record Prefetched(String cql, Map<String, String> sources) {}
+}
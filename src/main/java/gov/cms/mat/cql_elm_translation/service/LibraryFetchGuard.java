@@ -0,0 +1,296 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.mat.cql_elm_translation.exceptions.LibraryServiceUnavailableException;
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationTimeoutException;
+import gov.cms.mat.cql_elm_translation.service.cache.UnresolvedLibraryCache;
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.cqframework.cql.cql2elm.CqlIncludeException;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Protects translations from a slow or failing library service. A circuit breaker opens after a
+ * number of consecutive failed fetches and then rejects fetches at once, so translations fall back
+ * to the include sources and compiled libraries the node already holds instead of blocking on the
+ * service; after the open period one trial fetch decides whether it closes again. Fetches that
+ * may run on any thread can be hedged: when the first attempt is slower than the hedge delay a
+ * second one is started and the first successful answer wins. Once hedged, the fetch waits no
+ * longer than the read timeout of the library service or what is left of the translation
+ * deadline; past that both attempts are cancelled and the fetch counts as failed. Missing
+ * libraries and other client errors are answers, not failures.
+ */
+@Slf4j
+@Component
+public class LibraryFetchGuard implements DisposableBean {
+  public static final String METRIC_PREFIX = "madie.library.fetch";
+
+  @Getter private final boolean enabled;
+  private final int failureThreshold;
+  private final Duration openDuration;
+  private final Duration hedgeDelay;
+  private final Duration readTimeout;
+  private final ExecutorService executor;
+  private final MeterRegistry meterRegistry;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openUntilNanos;
+  private boolean trialRunning;
+
+  public LibraryFetchGuard(
+      MeterRegistry meterRegistry,
+      @Value("${madie.library.fetch.circuit-breaker.enabled:true}") boolean enabled,
+      @Value("${madie.library.fetch.circuit-breaker.failure-threshold:5}") int failureThreshold,
+      @Value("${madie.library.fetch.circuit-breaker.open-duration:30s}") Duration openDuration,
+      @Value("${madie.library.fetch.hedge.delay:0s}") Duration hedgeDelay,
+      @Value("${madie.library.fetch.hedge.parallelism:8}") int hedgeParallelism,
+      @Value("${madie.library.service.read-timeout:10s}") Duration readTimeout) {
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.failureThreshold = failureThreshold;
+    this.openDuration = openDuration;
+    this.hedgeDelay = hedgeDelay;
+    this.readTimeout = readTimeout;
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            hedgeParallelism,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "library-fetch-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    Gauge.builder(METRIC_PREFIX + ".circuit.state", this, guard -> guard.getState().ordinal())
+        .description("0 closed, 1 half open, 2 open")
+        .register(meterRegistry);
+  }
+
+  public synchronized State getState() {
+    if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+      return State.HALF_OPEN;
+    }
+    return state;
+  }
+
+  /**
+   * Runs a fetch on the calling thread, for fetches that depend on thread-local state.
+   *
+   * @throws LibraryServiceUnavailableException when the circuit is open
+   */
+  public <T> T execute(Supplier<T> fetch) {
+    boolean trial = admit();
+    try {
+      T result = fetch.get();
+      onSuccess(trial);
+      return result;
+    } catch (RuntimeException e) {
+      onFailure(trial, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Runs a fetch that may run on any thread, hedged when a hedge delay is configured.
+   *
+   * @throws LibraryServiceUnavailableException when the circuit is open
+   */
+  public <T> T executeHedged(Supplier<T> fetch) {
+    if (hedgeDelay.isZero() || hedgeDelay.isNegative()) {
+      return execute(fetch);
+    }
+    return execute(() -> hedged(fetch));
+  }
+
+  /**
+   * Provider that asks the delegate through the circuit breaker. While the circuit is open the
+   * lookup fails with the translator's usual unresolved include error.
+   */
+  public LibrarySourceProvider guard(LibrarySourceProvider delegate) {
+    return identifier -> {
+      try {
+        return execute(() -> delegate.getLibrarySource(identifier));
+      } catch (LibraryServiceUnavailableException e) {
+        throw new CqlIncludeException(
+            String.format(
+                "Could not load source for library %s, version %s. %s",
+                identifier.getId(), identifier.getVersion(), e.getMessage()),
+            identifier.getSystem(),
+            identifier.getId(),
+            identifier.getVersion());
+      }
+    };
+  }
+
+  private <T> T hedged(Supplier<T> fetch) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger started = new AtomicInteger();
+    AtomicInteger failed = new AtomicInteger();
+    List<Future<?>> attempts = new CopyOnWriteArrayList<>();
+    attempts.add(attempt(fetch, result, started, failed, false));
+    try {
+      try {
+        return result.get(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        meterRegistry.counter(METRIC_PREFIX + ".hedged").increment();
+        attempts.add(attempt(fetch, result, started, failed, true));
+      }
+      Duration wait = TranslationDeadline.remaining(readTimeout);
+      try {
+        return result.get(wait.toNanos(), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        attempts.forEach(attempt -> attempt.cancel(true));
+        throw timedOut(wait);
+      }
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while fetching a library", e);
+    }
+  }
+
+  // the first success completes the result; a failure only does once every attempt failed
+  private <T> Future<?> attempt(
+      Supplier<T> fetch,
+      CompletableFuture<T> result,
+      AtomicInteger started,
+      AtomicInteger failed,
+      boolean hedge) {
+    started.incrementAndGet();
+    return executor.submit(
+        () -> {
+          T value;
+          try {
+            value = fetch.get();
+          } catch (RuntimeException failure) {
+            if (failed.incrementAndGet() >= started.get()) {
+              result.completeExceptionally(failure);
+            }
+            return;
+          }
+          if (result.complete(value) && hedge) {
+            meterRegistry.counter(METRIC_PREFIX + ".hedge.won").increment();
+          }
+        });
+  }
+
+  // past the translation deadline the translation times out, otherwise it is a read timeout
+  private static RuntimeException timedOut(Duration wait) {
+    TranslationDeadline deadline = TranslationDeadline.current();
+    if (deadline != null && deadline.isExpired()) {
+      return new TranslationTimeoutException(
+          TranslationDeadline.STAGE_INCLUDE_FETCH, deadline.getTimeout(), deadline.elapsed());
+    }
+    return new ResourceAccessException(
+        "Library fetch timed out after " + wait.toMillis() + " ms");
+  }
+
+  private synchronized boolean admit() {
+    if (!enabled) {
+      return false;
+    }
+    State current = getState();
+    if (current == State.OPEN || (current == State.HALF_OPEN && trialRunning)) {
+      meterRegistry.counter(METRIC_PREFIX + ".calls", "outcome", "rejected").increment();
+      throw new LibraryServiceUnavailableException("The library service is unavailable.");
+    }
+    if (current == State.HALF_OPEN) {
+      transition(State.HALF_OPEN);
+      trialRunning = true;
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized void onSuccess(boolean trial) {
+    meterRegistry.counter(METRIC_PREFIX + ".calls", "outcome", "success").increment();
+    consecutiveFailures = 0;
+    if (trial) {
+      trialRunning = false;
+      transition(State.CLOSED);
+    }
+  }
+
+  private synchronized void onFailure(boolean trial, RuntimeException failure) {
+    if (!countsAsFailure(failure)) {
+      meterRegistry.counter(METRIC_PREFIX + ".calls", "outcome", "client_error").increment();
+      onSuccess(trial);
+      return;
+    }
+    meterRegistry.counter(METRIC_PREFIX + ".calls", "outcome", "failure").increment();
+    if (trial) {
+      trialRunning = false;
+      open();
+    } else if (enabled && ++consecutiveFailures >= failureThreshold && state == State.CLOSED) {
+      open();
+    }
+  }
+
+  private void open() {
+    openUntilNanos = System.nanoTime() + openDuration.toNanos();
+    consecutiveFailures = 0;
+    transition(State.OPEN);
+  }
+
+  private void transition(State next) {
+    if (state != next) {
+      log.warn("Library service circuit breaker is now {}", next);
+      meterRegistry.counter(METRIC_PREFIX + ".circuit.transitions", "to", next.name()).increment();
+      state = next;
+    }
+  }
+
+  /** Missing libraries, bad tokens and other client errors say nothing about the service. */
+  static boolean countsAsFailure(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof HttpClientErrorException || UnresolvedLibraryCache.isNotFound(cause)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static RuntimeException unwrap(ExecutionException failure) {
+    Throwable cause = failure.getCause();
+    if (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause instanceof RuntimeException runtime
+        ? runtime
+        : new IllegalStateException("Library fetch failed", cause);
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  public enum State {
+    CLOSED,
+    HALF_OPEN,
+    OPEN
+  }
+}
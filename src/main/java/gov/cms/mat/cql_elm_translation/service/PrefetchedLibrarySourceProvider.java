@@ -0,0 +1,30 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Serves library sources that were fetched ahead of compilation by the {@link
+ * IncludeLibraryPrefetcher}. Returns null for anything else, so the next provider is asked.
+ */
+public class PrefetchedLibrarySourceProvider implements LibrarySourceProvider {
+  private final Map<String, String> sources;
+
+  public PrefetchedLibrarySourceProvider(Map<String, String> sources) {
+    this.sources = sources;
+  }
+
+  @Override
+  public InputStream getLibrarySource(VersionedIdentifier libraryIdentifier) {
+    String source = sources.get(libraryIdentifier.getId() + "|" + libraryIdentifier.getVersion());
+    if (source == null) {
+      return null;
+    }
+    return new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+  }
+}
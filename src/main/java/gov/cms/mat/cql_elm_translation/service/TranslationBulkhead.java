@@ -0,0 +1,179 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationRejectedException;
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits the translator work running on the node. Each translation takes permits weighted by the
+ * size of its CQL and the number of its includes, so a few large measures cannot exhaust the heap.
+ * Requests that cannot get their permits right away wait in a bounded queue; when the queue is
+ * full or the wait times out they are rejected with a {@link TranslationRejectedException}.
+ *
+ * <p>While the queue is full the node refuses traffic through the readiness state, so that only
+ * {@code /actuator/health/readiness} reports it and the root health endpoint stays usable under
+ * load. It accepts traffic again once the queue has room.
+ */
+@Slf4j
+@Component
+public class TranslationBulkhead {
+  public static final String METRIC_PREFIX = "madie.translation.bulkhead";
+
+  @Getter private final boolean enabled;
+  @Getter private final int permits;
+  @Getter private final int maxQueue;
+  private final int bytesPerPermit;
+  private final Duration maxWait;
+  private final Duration retryAfter;
+  private final Semaphore semaphore;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final Timer waitTimer;
+  private final Counter rejections;
+  private ApplicationEventPublisher eventPublisher;
+  @Getter private volatile boolean saturated;
+
+  public TranslationBulkhead(
+      MeterRegistry meterRegistry,
+      @Value("${madie.bulkhead.enabled:true}") boolean enabled,
+      @Value("${madie.bulkhead.permits:16}") int permits,
+      @Value("${madie.bulkhead.bytes-per-permit:65536}") int bytesPerPermit,
+      @Value("${madie.bulkhead.max-queue:32}") int maxQueue,
+      @Value("${madie.bulkhead.max-wait:10s}") Duration maxWait,
+      @Value("${madie.bulkhead.retry-after:5s}") Duration retryAfter) {
+    this.enabled = enabled;
+    this.permits = permits;
+    this.bytesPerPermit = bytesPerPermit;
+    this.maxQueue = maxQueue;
+    this.maxWait = maxWait;
+    this.retryAfter = retryAfter;
+    this.semaphore = new Semaphore(permits, true);
+    this.waitTimer = meterRegistry.timer(METRIC_PREFIX + ".wait");
+    this.rejections = meterRegistry.counter(METRIC_PREFIX + ".rejected");
+    Gauge.builder(METRIC_PREFIX + ".active", this, TranslationBulkhead::activePermits)
+        .register(meterRegistry);
+    Gauge.builder(METRIC_PREFIX + ".queued", queued, AtomicInteger::get).register(meterRegistry);
+  }
+
+  @Autowired
+  public void setEventPublisher(ApplicationEventPublisher eventPublisher) {
+    this.eventPublisher = eventPublisher;
+  }
+
+  /** Other components may accept traffic again while the queue is still full. */
+  @EventListener
+  public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+    if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && saturated) {
+      AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+    }
+  }
+
+  /**
+   * Runs translator work once its permits are available.
+   *
+   * @param cql CQL being translated, used to weigh the work
+   * @param work the translator work
+   * @return result of the work
+   * @throws TranslationRejectedException when the queue is full or the wait timed out
+   */
+  public <T> T execute(String cql, Supplier<T> work) {
+    if (!enabled) {
+      return work.get();
+    }
+    int weight = weigh(cql);
+    acquire(weight);
+    try {
+      return work.get();
+    } finally {
+      semaphore.release(weight);
+      int waiting = queued.get();
+      if (saturated && (waiting < maxQueue || waiting == 0)) {
+        updateReadiness(false);
+      }
+    }
+  }
+
+  /** Permits for a CQL: one, plus one per started block of CQL text and one per include. */
+  int weigh(String cql) {
+    int length = StringUtils.length(cql);
+    int weight = 1 + length / bytesPerPermit + TranslationKeyUtil.includes(cql).size();
+    return Math.min(weight, permits);
+  }
+
+  public int activePermits() {
+    return permits - semaphore.availablePermits();
+  }
+
+  public int queued() {
+    return queued.get();
+  }
+
+  private void acquire(int weight) {
+    if (semaphore.tryAcquire(weight)) {
+      waitTimer.record(Duration.ZERO);
+      return;
+    }
+    int position = queued.incrementAndGet();
+    if (position >= maxQueue) {
+      updateReadiness(true);
+    }
+    if (position > maxQueue) {
+      queued.decrementAndGet();
+      reject("translation queue is full");
+    }
+    long start = System.nanoTime();
+    try {
+      Duration wait = TranslationDeadline.remaining(maxWait);
+      if (!semaphore.tryAcquire(weight, wait.toNanos(), TimeUnit.NANOSECONDS)) {
+        // running out of the request deadline is a timeout, not a rejection
+        TranslationDeadline.checkpoint(TranslationDeadline.STAGE_ADMISSION);
+        reject("timed out waiting for translation capacity");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      reject("interrupted while waiting for translation capacity");
+    } finally {
+      queued.decrementAndGet();
+      waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private synchronized void updateReadiness(boolean full) {
+    if (full == saturated) {
+      return;
+    }
+    saturated = full;
+    log.info("Translation queue is {}", full ? "full, refusing traffic" : "free again");
+    if (eventPublisher != null) {
+      AvailabilityChangeEvent.publish(
+          eventPublisher,
+          this,
+          full ? ReadinessState.REFUSING_TRAFFIC : ReadinessState.ACCEPTING_TRAFFIC);
+    }
+  }
+
+  private void reject(String reason) {
+    rejections.increment();
+    log.warn("Rejecting translation: {}", reason);
+    throw new TranslationRejectedException("Service is busy, " + reason, retryAfter);
+  }
+}
@@ -0,0 +1,29 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the state of the translation bulkhead as details of the {@code translationBulkhead}
+ * health contributor. The contributor is always up, so a full queue does not fail the root health
+ * endpoint; the bulkhead refuses traffic through the readiness state instead.
+ */
+@Component
+@RequiredArgsConstructor
+public class TranslationBulkheadHealthIndicator implements HealthIndicator {
+
+  private final TranslationBulkhead translationBulkhead;
+
+  @Override
+  public Health health() {
+    return Health.up()
+        .withDetail("saturated", translationBulkhead.isSaturated())
+        .withDetail("activePermits", translationBulkhead.activePermits())
+        .withDetail("permits", translationBulkhead.getPermits())
+        .withDetail("queued", translationBulkhead.queued())
+        .withDetail("maxQueue", translationBulkhead.getMaxQueue())
+        .build();
+  }
+}
@@ -0,0 +1,71 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.dto.ElmArtifacts;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+import gov.cms.mat.cql_elm_translation.service.support.SingleFlight;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical in-flight translations, keyed by the CQL, the options, the translator version
+ * and the access token, since the includes are fetched with the token of the request doing the
+ * work. Joined requests are counted in the {@code madie.translation.coalesced} counter, tagged
+ * with the operation.
+ */
+@Component
+public class TranslationCoalescer {
+  public static final String COALESCED_COUNTER = "madie.translation.coalesced";
+
+  private final TranslatorVersionConfig translatorVersionConfig;
+  private final SingleFlight<String, CqlTooling.ToolingTranslation> translators;
+  private final SingleFlight<String, CqlConversionPayload> payloads;
+
+  public TranslationCoalescer(
+      TranslatorVersionConfig translatorVersionConfig, MeterRegistry meterRegistry) {
+    this.translatorVersionConfig = translatorVersionConfig;
+    this.translators =
+        new SingleFlight<>(
+            meterRegistry.counter(COALESCED_COUNTER, "operation", "runTranslator")::increment);
+    this.payloads =
+        new SingleFlight<>(
+            meterRegistry.counter(COALESCED_COUNTER, "operation", "processCqlDataWithErrors")
+                ::increment);
+  }
+
+  /** The translation is shared read-only between the joined requests. */
+  public CqlTooling.ToolingTranslation translator(
+      RequestData requestData,
+      String accessToken,
+      Supplier<CqlTooling.ToolingTranslation> work) {
+    return translators.execute(keyFor(requestData, accessToken), work);
+  }
+
+  /**
+   * Callers modify the returned payload, e.g. to strip translator options, so every caller gets
+   * its own copy.
+   */
+  public CqlConversionPayload payload(
+      RequestData requestData,
+      ElmArtifacts artifacts,
+      String accessToken,
+      Supplier<CqlConversionPayload> work) {
+    CqlConversionPayload payload =
+        payloads.execute(keyFor(requestData, accessToken) + "|" + artifacts, work);
+    if (payload == null) {
+      return null;
+    }
+    return CqlConversionPayload.builder().json(payload.getJson()).xml(payload.getXml()).build();
+  }
+
+  private String keyFor(RequestData requestData, String accessToken) {
+    return TranslationKeyUtil.forRequest(
+            requestData, translatorVersionConfig.getCurrentTranslatorVersion())
+        + "|"
+        + TranslationKeyUtil.digest(String.valueOf(accessToken));
+  }
+}
@@ -0,0 +1,93 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+import gov.cms.mat.cql_elm_translation.service.cache.IncludeTreeDigest;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Strong ETags for translation responses, computed from a digest of the CQL, the translator
+ * options, the translator version, the response variant and the include tree. Released includes
+ * pin themselves, so a request without draft includes can be answered from a matching {@code
+ * If-None-Match} before any translation work; draft includes are only described by the sources the
+ * same request fetched, so an ETag never vouches for a draft nobody looked at.
+ */
+@Component
+public class TranslationETags {
+  @Getter private final boolean enabled;
+  private final TranslatorVersionConfig translatorVersionConfig;
+  private final IncludeTreeDigest includeTreeDigest;
+
+  public TranslationETags(
+      TranslatorVersionConfig translatorVersionConfig,
+      IncludeTreeDigest includeTreeDigest,
+      @Value("${madie.etag.enabled:true}") boolean enabled) {
+    this.translatorVersionConfig = translatorVersionConfig;
+    this.includeTreeDigest = includeTreeDigest;
+    this.enabled = enabled;
+  }
+
+  /**
+   * ETag of a translation.
+   *
+   * @param requestData CQL and translator options
+   * @param variant everything else that shapes the response, e.g. artifacts and media type
+   * @param fetched include sources fetched by this request, keyed by "name|version", or null
+   *     when nothing was fetched
+   * @return quoted ETag, or null when a draft include was not fetched
+   */
+  public String forRequest(RequestData requestData, String variant, Map<String, String> fetched) {
+    return etag(
+        requestData.getCqlData(), TranslationKeyUtil.options(requestData), variant, fetched);
+  }
+
+  /** ETag of a translation done with the options of the tooling endpoints. */
+  public String forTooling(String cql, String variant, Map<String, String> fetched) {
+    return etag(
+        cql,
+        TranslationKeyUtil.compilerOptions(CqlTooling.toolingRequestData(cql)),
+        variant,
+        fetched);
+  }
+
+  private String etag(String cql, String options, String variant, Map<String, String> fetched) {
+    if (!enabled || StringUtils.isBlank(cql)) {
+      return null;
+    }
+    String includes = includeTreeDigest.treeDigest(cql, fetched == null ? Map.of() : fetched);
+    if (includes == null) {
+      return null;
+    }
+    return "\""
+        + TranslationKeyUtil.digest(
+            translatorVersionConfig.getCurrentTranslatorVersion(),
+            options,
+            StringUtils.defaultString(variant),
+            includes,
+            cql)
+        + "\"";
+  }
+
+  /**
+   * Whether an {@code If-None-Match} header matches the ETag. Weak validators match their strong
+   * counterpart, as the weak comparison of If-None-Match requires.
+   */
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (StringUtils.isBlank(ifNoneMatch) || etag == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = StringUtils.removeStart(candidate.trim(), "W/");
+      if ("*".equals(tag) || etag.equals(tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,115 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Node wide cache of compiled include libraries. Entries are keyed by the library identifier and
+ * a scope made of the translator options and the using model, since the same library compiles to
+ * different ELM under different options.
+ *
+ * <p>Draft library versions are mutable, so they are never shared across translations.
+ */
+@Slf4j
+@Component
+public class CompiledLibraryCache {
+  public static final String CACHE_NAME = "compiledLibraries";
+
+  private final Cache cache;
+  private final Pattern draftVersionPattern;
+
+  public CompiledLibraryCache(
+      CacheManager cacheManager,
+      @Value("${madie.library.draft-version-pattern:0\\.0\\.000}") String draftVersionPattern) {
+    this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+    this.draftVersionPattern = Pattern.compile(draftVersionPattern);
+  }
+
+  /**
+   * Creates the library map handed to a single translation's LibraryManager. Reads fall through
+   * to the shared cache, while iteration only sees the libraries used by this translation, which
+   * keeps CqlTranslator.getTranslatedLibraries() limited to the actual includes.
+   *
+   * @param scope translator options and model the libraries are compiled with
+   * @return map to use as the LibraryManager's compiled library cache
+   */
+  public Map<VersionedIdentifier, CompiledLibrary> newTranslationView(String scope) {
+    return new TranslationView(scope);
+  }
+
+  public boolean isDraft(VersionedIdentifier identifier) {
+    return StringUtils.isBlank(identifier.getVersion())
+        || draftVersionPattern.matcher(identifier.getVersion()).matches();
+  }
+
+  public void evict(String scope, VersionedIdentifier identifier) {
+    cache.evict(cacheKey(scope, identifier));
+  }
+
+  private String cacheKey(String scope, VersionedIdentifier identifier) {
+    return String.join(
+        "|", scope, identifier.getSystem(), identifier.getId(), identifier.getVersion());
+  }
+
+  private class TranslationView extends AbstractMap<VersionedIdentifier, CompiledLibrary> {
+    private final String scope;
+    private final Map<VersionedIdentifier, CompiledLibrary> used = new LinkedHashMap<>();
+
+    TranslationView(String scope) {
+      this.scope = scope;
+    }
+
+    @Override
+    public CompiledLibrary get(Object key) {
+      if (!(key instanceof VersionedIdentifier identifier)) {
+        return null;
+      }
+      CompiledLibrary library = used.get(identifier);
+      if (library == null && !isDraft(identifier)) {
+        library = cache.get(cacheKey(scope, identifier), CompiledLibrary.class);
+        if (library != null) {
+          log.debug(
+              "Using cached compiled library {}-{}", identifier.getId(), identifier.getVersion());
+          used.put(identifier, library);
+        }
+      }
+      return library;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public CompiledLibrary put(VersionedIdentifier identifier, CompiledLibrary library) {
+      if (!isDraft(identifier)) {
+        cache.put(cacheKey(scope, identifier), library);
+      }
+      return used.put(identifier, library);
+    }
+
+    @Override
+    public CompiledLibrary remove(Object key) {
+      return used.remove(key);
+    }
+
+    @Override
+    public Set<Entry<VersionedIdentifier, CompiledLibrary>> entrySet() {
+      return used.entrySet();
+    }
+  }
+}
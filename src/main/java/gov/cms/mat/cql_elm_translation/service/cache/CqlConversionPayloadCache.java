@@ -0,0 +1,87 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+import gov.cms.mat.cql_elm_translation.dto.ElmArtifacts;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Holds finished {@link CqlConversionPayload}s keyed by a digest of the CQL, every option that
+ * affects the translator output and the include tree, so that repeated translations of unchanged
+ * CQL skip the translator entirely. Released includes stand for their own content; draft includes
+ * are represented by the sources fetched for the translation, so an edited draft, direct or
+ * transitive, gives a new key.
+ */
+@Slf4j
+@Component
+public class CqlConversionPayloadCache {
+  public static final String CACHE_NAME = "cqlConversionPayloads";
+
+  // Translator message for includes that could not be fetched. Such results depend on the
+  // availability of the library service and must not be served from the cache.
+  public static final String UNRESOLVED_INCLUDE_MESSAGE = "Could not load source for library";
+
+  private final Cache cache;
+  private final TranslatorVersionConfig translatorVersionConfig;
+  private final IncludeTreeDigest includeTreeDigest;
+
+  public CqlConversionPayloadCache(
+      CacheManager cacheManager,
+      TranslatorVersionConfig translatorVersionConfig,
+      IncludeTreeDigest includeTreeDigest) {
+    this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+    this.translatorVersionConfig = translatorVersionConfig;
+    this.includeTreeDigest = includeTreeDigest;
+  }
+
+  /** Whether the key of the CQL is known before its includes are fetched, i.e. no drafts. */
+  public boolean isKeyedWithoutFetch(String cql) {
+    return includeTreeDigest.treeDigest(cql, Map.of()) != null;
+  }
+
+  /**
+   * Key of a translation.
+   *
+   * @param requestData CQL and translator options
+   * @param fetched library sources fetched for this translation, or null when none were fetched
+   * @return the key, or null when a draft include was not fetched; such results are not cached
+   */
+  public String keyFor(RequestData requestData, Map<String, String> fetched) {
+    String includeTree =
+        includeTreeDigest.treeDigest(
+            requestData.getCqlData(), fetched == null ? Map.of() : fetched);
+    if (includeTree == null) {
+      return null;
+    }
+    return TranslationKeyUtil.digest(
+        TranslationKeyUtil.forRequest(
+            requestData, translatorVersionConfig.getCurrentTranslatorVersion()),
+        includeTree);
+  }
+
+  /** Key of a payload holding only some artifacts; payloads with both use the request key. */
+  public static String keyFor(String requestKey, ElmArtifacts artifacts) {
+    return artifacts == ElmArtifacts.BOTH ? requestKey : requestKey + "|" + artifacts;
+  }
+
+  public CqlConversionPayload get(String key) {
+    return cache.get(key, CqlConversionPayload.class);
+  }
+
+  public void put(String key, CqlConversionPayload payload) {
+    if (payload == null || StringUtils.contains(payload.getJson(), UNRESOLVED_INCLUDE_MESSAGE)) {
+      log.debug("Not caching conversion payload for key [{}]", key);
+      return;
+    }
+    cache.put(key, payload);
+  }
+}
@@ -0,0 +1,107 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.CQLTools;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Request independent cache of the {@link CQLTools} analysis of a CQL document. The relevant
+ * elements, callstack and lookup endpoints all work off the same analysis, so one compile serves
+ * a whole measure page load. Concurrent first requests for the same key wait on a single
+ * computation. Like the conversion payloads, analyses are keyed by the include tree with drafts
+ * represented by the sources fetched for the request, so an edited draft is analysed again.
+ */
+@Slf4j
+@Component
+public class CqlToolsCache {
+  public static final String CACHE_NAME = "cqlToolsAnalysis";
+
+  private final Cache cache;
+  private final TranslatorVersionConfig translatorVersionConfig;
+  private final IncludeTreeDigest includeTreeDigest;
+
+  public CqlToolsCache(
+      CacheManager cacheManager,
+      TranslatorVersionConfig translatorVersionConfig,
+      IncludeTreeDigest includeTreeDigest) {
+    this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+    this.translatorVersionConfig = translatorVersionConfig;
+    this.includeTreeDigest = includeTreeDigest;
+  }
+
+  /** Whether the key of the CQL is known before its includes are fetched, i.e. no drafts. */
+  public boolean isKeyedWithoutFetch(String cql) {
+    return includeTreeDigest.treeDigest(cql, Map.of()) != null;
+  }
+
+  /**
+   * Returns the cached analysis or computes it. Incomplete analyses (e.g. an include could not
+   * be fetched) are handed to the waiting callers but not kept.
+   *
+   * @param cql CQL that was analysed
+   * @param parentExpressions top level expressions of the analysis, empty for all expressions
+   * @param fetched library sources fetched for this request, or null when none were fetched
+   * @param loader computes the analysis on a miss, on the calling thread
+   * @return the analysis, not cached when a draft include was not fetched
+   */
+  public CQLTools get(
+      String cql,
+      Set<String> parentExpressions,
+      Map<String, String> fetched,
+      Supplier<Analysis> loader) {
+    String key = keyFor(cql, parentExpressions, fetched);
+    if (key == null) {
+      Analysis analysis = loader.get();
+      return analysis == null ? null : analysis.cqlTools();
+    }
+    Analysis analysis;
+    try {
+      analysis = cache.get(key, loader::get);
+    } catch (Cache.ValueRetrievalException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw e;
+    }
+    if (analysis == null) {
+      return null;
+    }
+    if (!analysis.complete()) {
+      log.debug("Discarding incomplete CQL analysis for key [{}]", key);
+      cache.evict(key);
+    }
+    return analysis.cqlTools();
+  }
+
+  String keyFor(String cql, Set<String> parentExpressions, Map<String, String> fetched) {
+    String includeTree = includeTreeDigest.treeDigest(cql, fetched == null ? Map.of() : fetched);
+    if (includeTree == null) {
+      return null;
+    }
+    String parents =
+        CollectionUtils.isEmpty(parentExpressions)
+            ? "*"
+            : String.join("\n", new TreeSet<>(parentExpressions));
+    return TranslationKeyUtil.digest(
+        translatorVersionConfig.getCurrentTranslatorVersion(), parents, includeTree, cql);
+  }
+
+  /**
+   * Result of a CQLTools generation.
+   *
+   * @param cqlTools generated analysis
+   * @param complete false when the analysis may change on retry, e.g. unresolved includes
+   */
+  public record Analysis(CQLTools cqlTools, boolean complete) {}
+}
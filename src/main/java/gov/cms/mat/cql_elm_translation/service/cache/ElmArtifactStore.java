@@ -0,0 +1,330 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.cqframework.cql.cql2elm.LibraryContentType;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.cqframework.cql.elm.serializing.ElmLibraryWriterFactory;
+import org.hl7.elm.r1.Library;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional disk store for the ELM of versioned libraries. Versioned libraries never change, so
+ * their ELM stays valid across restarts as long as the translator version and the scope match,
+ * which are part of the key. The scope is the model and options string the {@link
+ * CompiledLibraryCache} uses, so an include compiled for one model is never loaded for another.
+ * Entries carry a checksum and are read lazily; the store is trimmed to its maximum size by
+ * dropping the least recently used files.
+ *
+ * <p>Compiled includes are serialized and written by a single background thread, so storing them
+ * does not count against the deadline of the translation that compiled them. When the write queue
+ * is full the libraries are skipped; a later translation stores them.
+ */
+@Slf4j
+@Component
+public class ElmArtifactStore implements DisposableBean {
+  private static final String EXTENSION = ".json";
+
+  @Getter private final boolean enabled;
+  private final Path directory;
+  private final long maxSizeBytes;
+  private final TranslatorVersionConfig translatorVersionConfig;
+  private final CompiledLibraryCache compiledLibraryCache;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final AtomicLong totalSize = new AtomicLong();
+  private final ThreadPoolExecutor writer;
+
+  public ElmArtifactStore(
+      TranslatorVersionConfig translatorVersionConfig,
+      CompiledLibraryCache compiledLibraryCache,
+      @Value("${madie.elm-store.enabled:false}") boolean enabled,
+      @Value("${madie.elm-store.directory:${java.io.tmpdir}/madie-elm-store}") Path directory,
+      @Value("${madie.elm-store.max-size:1GB}") DataSize maxSize,
+      @Value("${madie.elm-store.write-queue:100}") int writeQueue) {
+    this.translatorVersionConfig = translatorVersionConfig;
+    this.compiledLibraryCache = compiledLibraryCache;
+    this.directory = directory;
+    this.maxSizeBytes = maxSize.toBytes();
+    this.enabled = enabled && initialize();
+    this.writer =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(writeQueue),
+            runnable -> {
+              Thread thread = new Thread(runnable, "elm-store-writer");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  private boolean initialize() {
+    try {
+      Files.createDirectories(directory);
+      List<Path> files = listEntries();
+      for (Path file : files) {
+        totalSize.addAndGet(Files.size(file));
+      }
+      log.info(
+          "Using ELM artifact store at {} with {} entries ({} bytes)",
+          directory,
+          files.size(),
+          totalSize.get());
+      return true;
+    } catch (IOException e) {
+      log.warn("ELM artifact store at {} is not usable, disabling it", directory, e);
+      return false;
+    }
+  }
+
+  /**
+   * Looks up the stored ELM of a versioned library.
+   *
+   * @param identifier library identifier
+   * @param scope model and translator options the ELM was compiled with
+   * @return the stored artifact, empty for drafts, misses and entries failing verification
+   */
+  public Optional<StoredArtifact> get(VersionedIdentifier identifier, String scope) {
+    if (!enabled || compiledLibraryCache.isDraft(identifier)) {
+      return Optional.empty();
+    }
+    Path file = fileFor(identifier, scope);
+    if (!Files.exists(file)) {
+      return Optional.empty();
+    }
+    try {
+      StoredArtifact artifact = objectMapper.readValue(file.toFile(), StoredArtifact.class);
+      if (!artifact.matches(identifier, translatorVersion(), scope)) {
+        log.warn("Discarding corrupt ELM artifact {}", file);
+        delete(file);
+        return Optional.empty();
+      }
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return Optional.of(artifact);
+    } catch (IOException e) {
+      log.warn("Discarding unreadable ELM artifact {}", file, e);
+      delete(file);
+      return Optional.empty();
+    }
+  }
+
+  /** Stores the ELM of a versioned library, unless it is a draft or already stored. */
+  public void put(VersionedIdentifier identifier, String scope, String elmJson, String elmXml) {
+    if (!enabled || compiledLibraryCache.isDraft(identifier)) {
+      return;
+    }
+    Path file = fileFor(identifier, scope);
+    if (Files.exists(file)) {
+      return;
+    }
+    StoredArtifact artifact =
+        StoredArtifact.of(identifier, translatorVersion(), scope, elmJson, elmXml);
+    try {
+      Path temp = Files.createTempFile(directory, "elm", ".tmp");
+      objectMapper.writeValue(temp.toFile(), artifact);
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      if (totalSize.addAndGet(Files.size(file)) > maxSizeBytes) {
+        evict();
+      }
+    } catch (IOException e) {
+      log.warn("Could not store ELM artifact for {}", identifier.getId(), e);
+    }
+  }
+
+  /**
+   * Serializes and stores, in the background, the ELM of the given compiled includes that are not
+   * stored yet.
+   */
+  public void putAll(Collection<CompiledLibrary> libraries, String scope) {
+    if (!enabled || libraries.isEmpty()) {
+      return;
+    }
+    List<CompiledLibrary> pending = List.copyOf(libraries);
+    try {
+      writer.execute(() -> store(pending, scope));
+    } catch (RejectedExecutionException e) {
+      log.debug("ELM artifact store write queue is full, skipping {} libraries", pending.size());
+    }
+  }
+
+  private void store(List<CompiledLibrary> libraries, String scope) {
+    for (CompiledLibrary compiledLibrary : libraries) {
+      VersionedIdentifier identifier = compiledLibrary.getIdentifier();
+      if (compiledLibraryCache.isDraft(identifier) || Files.exists(fileFor(identifier, scope))) {
+        continue;
+      }
+      try {
+        Library library = compiledLibrary.getLibrary();
+        put(
+            identifier,
+            scope,
+            write(library, LibraryContentType.JSON),
+            write(library, LibraryContentType.XML));
+      } catch (IOException e) {
+        log.warn("Could not serialize ELM of {}", identifier.getId(), e);
+      }
+    }
+  }
+
+  /**
+   * Provider that hands the stored ELM to a LibraryManager, which then loads the library from ELM
+   * instead of compiling its CQL.
+   *
+   * @param scope model and translator options of the LibraryManager
+   * @return provider that never serves CQL sources
+   */
+  public LibrarySourceProvider sourceProvider(String scope) {
+    return new LibrarySourceProvider() {
+      @Override
+      public InputStream getLibrarySource(VersionedIdentifier libraryIdentifier) {
+        return null;
+      }
+
+      @Override
+      public InputStream getLibraryContent(
+          VersionedIdentifier libraryIdentifier, LibraryContentType type) {
+        if (type != LibraryContentType.JSON) {
+          return null;
+        }
+        return get(libraryIdentifier, scope)
+            .map(a -> new ByteArrayInputStream(a.elmJson().getBytes(StandardCharsets.UTF_8)))
+            .orElse(null);
+      }
+    };
+  }
+
+  @Override
+  public void destroy() {
+    writer.shutdownNow();
+  }
+
+  private synchronized void evict() throws IOException {
+    long target = maxSizeBytes * 9 / 10;
+    List<Path> files = listEntries();
+    files.sort(Comparator.comparing(ElmArtifactStore::lastModified));
+    for (Path file : files) {
+      if (totalSize.get() <= target) {
+        break;
+      }
+      delete(file);
+    }
+  }
+
+  private List<Path> listEntries() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+      stream.forEach(files::add);
+    }
+    return files;
+  }
+
+  private void delete(Path file) {
+    try {
+      long size = Files.size(file);
+      if (Files.deleteIfExists(file)) {
+        totalSize.addAndGet(-size);
+      }
+    } catch (IOException e) {
+      log.debug("Could not delete ELM artifact {}", file, e);
+    }
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private Path fileFor(VersionedIdentifier identifier, String scope) {
+    return directory.resolve(
+        TranslationKeyUtil.digest(
+                identifier.getId(), identifier.getVersion(), translatorVersion(), scope)
+            + EXTENSION);
+  }
+
+  private String translatorVersion() {
+    return translatorVersionConfig.getCurrentTranslatorVersion();
+  }
+
+  private static String write(Library library, LibraryContentType contentType)
+      throws IOException {
+    StringWriter writer = new StringWriter();
+    ElmLibraryWriterFactory.getWriter(contentType.mimeType()).write(library, writer);
+    return writer.toString();
+  }
+
+  /**
+   * One stored library.
+   *
+   * @param checksum SHA-256 over the ELM JSON and XML, verified on every read
+   */
+  public record StoredArtifact(
+      String name,
+      String version,
+      String translatorVersion,
+      String scope,
+      String elmJson,
+      String elmXml,
+      String checksum) {
+
+    static StoredArtifact of(
+        VersionedIdentifier identifier,
+        String translatorVersion,
+        String scope,
+        String elmJson,
+        String elmXml) {
+      return new StoredArtifact(
+          identifier.getId(),
+          identifier.getVersion(),
+          translatorVersion,
+          scope,
+          elmJson,
+          elmXml,
+          TranslationKeyUtil.digest(elmJson, elmXml));
+    }
+
+    boolean matches(VersionedIdentifier identifier, String translatorVersion, String scope) {
+      return Objects.equals(name, identifier.getId())
+          && Objects.equals(version, identifier.getVersion())
+          && Objects.equals(this.translatorVersion, translatorVersion)
+          && Objects.equals(this.scope, scope)
+          && elmJson != null
+          && elmXml != null
+          && Objects.equals(checksum, TranslationKeyUtil.digest(elmJson, elmXml));
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+
+/**
+ * Bounded store of recently returned ELM JSON documents, keyed by their content hash. Clients
+ * that opted into delta responses send the hash of the document they hold and receive a patch
+ * against it.
+ */
+@Component
+public class ElmBaselineStore {
+  public static final String CACHE_NAME = "elmBaselines";
+
+  private final Cache cache;
+
+  public ElmBaselineStore(CacheManager cacheManager) {
+    this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+  }
+
+  /**
+   * Keeps the document as a baseline.
+   *
+   * @param json ELM JSON returned to a client
+   * @return content hash the client refers to the document by
+   */
+  public String put(String json) {
+    String hash = TranslationKeyUtil.digest(json);
+    cache.put(hash, json);
+    return hash;
+  }
+
+  public String get(String hash) {
+    return hash == null ? null : cache.get(hash, String.class);
+  }
+}
@@ -0,0 +1,93 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Digest of the include tree of a CQL document, built from the "name|version" of every include.
+ * Released library versions never change, so they stand for their own content; draft and
+ * unversioned includes are mutable and are represented by the digest of the source fetched for the
+ * current translation. Nothing is remembered between requests, so a draft edited since the last
+ * fetch can never be described by an older source.
+ */
+@Component
+public class IncludeTreeDigest {
+  private final String draftVersionPattern;
+
+  public IncludeTreeDigest(
+      @Value("${madie.library.draft-version-pattern:0\\.0\\.000}") String draftVersionPattern) {
+    this.draftVersionPattern = draftVersionPattern;
+  }
+
+  /**
+   * Digest of the include tree of the CQL, with draft includes represented by the sources fetched
+   * for the current translation only.
+   *
+   * @param cql CQL whose includes are described
+   * @param fetched library sources fetched for the translation, keyed by "name|version"
+   * @return digest of the include tree, or null when a draft include was not fetched
+   */
+  public String treeDigest(String cql, Map<String, String> fetched) {
+    return treeDigest(
+        cql,
+        include -> {
+          String source = fetched.get(include);
+          return source == null ? null : digestOf(source);
+        });
+  }
+
+  private String treeDigest(String cql, Function<String, IncludeDigest> drafts) {
+    SortedSet<String> parts = new TreeSet<>();
+    Set<String> seen = new HashSet<>();
+    Deque<String> pending = new ArrayDeque<>(TranslationKeyUtil.includes(cql));
+    while (!pending.isEmpty()) {
+      String include = pending.pop();
+      if (!seen.add(include)) {
+        continue;
+      }
+      if (!isDraft(include)) {
+        // a released version pins its own includes as well
+        parts.add(include);
+        continue;
+      }
+      IncludeDigest digest = drafts.apply(include);
+      if (digest == null) {
+        return null;
+      }
+      parts.add(include + "=" + digest.sourceDigest());
+      pending.addAll(digest.includes());
+    }
+    return TranslationKeyUtil.digest(String.join(";", parts));
+  }
+
+  private static IncludeDigest digestOf(String source) {
+    return new IncludeDigest(
+        TranslationKeyUtil.digest(source), TranslationKeyUtil.includes(source));
+  }
+
+  boolean isDraft(String include) {
+    String version = StringUtils.substringAfter(include, "|");
+    return StringUtils.isBlank(version)
+        || "null".equals(version)
+        || version.matches(draftVersionPattern);
+  }
+
+  /**
+   * Digest of a fetched include.
+   *
+   * @param sourceDigest SHA-256 of the library CQL
+   * @param includes includes declared by the library, as "name|version"
+   */
+  record IncludeDigest(String sourceDigest, Set<String> includes) {}
+}
@@ -0,0 +1,96 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bundle of published library CQL shipped with or mounted into the node, e.g. the libraries
+ * almost every QDM measure includes. The bundle is read once at startup and served from memory
+ * ahead of every other library source, so these includes are never fetched from the library
+ * service. Only released versions are taken; drafts could change under the bundle.
+ */
+@Slf4j
+@Component
+public class LibraryBundle {
+  private static final Pattern LIBRARY_PATTERN =
+      Pattern.compile(
+          "^\\s*library\\s+(\"[^\"]+\"|[\\w.]+)\\s+version\\s+'([^']+)'", Pattern.MULTILINE);
+
+  private final Map<String, String> sources = new TreeMap<>();
+
+  public LibraryBundle(
+      CompiledLibraryCache compiledLibraryCache,
+      @Value("${madie.library-bundle.locations:classpath*:library-bundle/*.cql}")
+          String locations) {
+    try {
+      for (Resource resource : new PathMatchingResourcePatternResolver().getResources(locations)) {
+        add(compiledLibraryCache, resource);
+      }
+    } catch (IOException e) {
+      log.warn("Could not read the library bundle at {}", locations, e);
+    }
+    if (!sources.isEmpty()) {
+      log.info("Loaded {} bundled libraries from {}", sources.size(), locations);
+    }
+  }
+
+  private void add(CompiledLibraryCache compiledLibraryCache, Resource resource)
+      throws IOException {
+    String cql = resource.getContentAsString(StandardCharsets.UTF_8);
+    Matcher matcher = LIBRARY_PATTERN.matcher(cql);
+    if (!matcher.find()) {
+      log.warn("Skipping bundled library {} without a library version", resource);
+      return;
+    }
+    VersionedIdentifier identifier =
+        new VersionedIdentifier()
+            .withId(StringUtils.strip(matcher.group(1), "\""))
+            .withVersion(matcher.group(2));
+    if (compiledLibraryCache.isDraft(identifier)) {
+      log.warn("Skipping bundled draft library {}", resource);
+      return;
+    }
+    sources.put(key(identifier), cql);
+  }
+
+  public boolean isEmpty() {
+    return sources.isEmpty();
+  }
+
+  /** Bundled libraries as "name|version". */
+  public Set<String> libraries() {
+    return sources.keySet();
+  }
+
+  public Optional<String> get(VersionedIdentifier identifier) {
+    return Optional.ofNullable(sources.get(key(identifier)));
+  }
+
+  /** Provider over the bundle; returns null for anything not bundled so the next one is asked. */
+  public LibrarySourceProvider sourceProvider() {
+    return identifier ->
+        get(identifier)
+            .map(cql -> new ByteArrayInputStream(cql.getBytes(StandardCharsets.UTF_8)))
+            .orElse(null);
+  }
+
+  private static String key(VersionedIdentifier identifier) {
+    return identifier.getId() + "|" + identifier.getVersion();
+  }
+}
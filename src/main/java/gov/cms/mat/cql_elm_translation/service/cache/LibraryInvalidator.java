@@ -0,0 +1,79 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import gov.cms.mat.cql_elm_translation.CqlElmTranslationApplication;
+import gov.cms.mat.cql_elm_translation.dto.LibraryReference;
+import gov.cms.mat.cql_elm_translation.service.DraftLibraryRevalidator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drops everything the node remembers about the given libraries, for the library service to call
+ * when a library changes. Sources and not-found entries of the libraries are evicted one by one.
+ * Cached translations and analyses are left alone: their keys include the digest of the draft
+ * sources fetched for them, so once the next fetch returns the changed draft they can no longer
+ * match. Released versions never change, so the compiled library cache and the stores are left
+ * alone too.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LibraryInvalidator {
+  private final CacheManager cacheManager;
+  private final CompiledLibraryCache compiledLibraryCache;
+  private final UnresolvedLibraryCache unresolvedLibraryCache;
+  private final DraftLibraryRevalidator draftLibraryRevalidator;
+
+  /**
+   * Invalidates the libraries.
+   *
+   * @param libraries libraries that changed
+   * @return number of draft libraries among them
+   */
+  public int invalidate(List<LibraryReference> libraries) {
+    int drafts = 0;
+    for (LibraryReference library : libraries) {
+      VersionedIdentifier identifier =
+          new VersionedIdentifier().withId(library.getName()).withVersion(library.getVersion());
+      draftLibraryRevalidator.evict(identifier);
+      unresolvedLibraryCache.markResolved(identifier);
+      evictLibraryCql(identifier);
+      if (compiledLibraryCache.isDraft(identifier)) {
+        drafts++;
+      }
+    }
+    log.info("Invalidated {} libraries, {} of them drafts", libraries.size(), drafts);
+    return drafts;
+  }
+
+  // entries of the library service client are keyed by name, version and token
+  private void evictLibraryCql(VersionedIdentifier identifier) {
+    Cache cache = cacheManager.getCache(CqlElmTranslationApplication.CQL_LIBRARIES_CACHE);
+    if (cache == null) {
+      return;
+    }
+    Map<?, ?> entries;
+    if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine) {
+      entries = caffeine.asMap();
+    } else if (cache.getNativeCache() instanceof Map<?, ?> map) {
+      entries = map;
+    } else {
+      cache.clear();
+      return;
+    }
+    entries
+        .keySet()
+        .removeIf(
+            key -> {
+              List<String> parts = LibraryVersionExpiry.keyParts(key);
+              return parts.contains(identifier.getId())
+                  && parts.contains(String.valueOf(identifier.getVersion()));
+            });
+  }
+}
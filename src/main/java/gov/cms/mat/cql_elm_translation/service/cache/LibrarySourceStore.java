@@ -0,0 +1,227 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional disk tier for the CQL of released include libraries, in front of the library service.
+ * Sources are stored content-addressed under {@code objects/<sha256>.cql} and found through a
+ * small reference file per name and version under {@code refs/}, so the checksum of a source is
+ * its file name and is verified on every read. Files are written atomically, which lets several
+ * nodes share the directory. The objects are trimmed to the maximum size by dropping the least
+ * recently used ones; references to dropped objects are removed when they are next read.
+ */
+@Slf4j
+@Component
+public class LibrarySourceStore {
+  private static final String OBJECTS = "objects";
+  private static final String REFS = "refs";
+  private static final String EXTENSION = ".cql";
+
+  @Getter private final boolean enabled;
+  private final Path directory;
+  private final long maxSizeBytes;
+  private final CompiledLibraryCache compiledLibraryCache;
+  private final AtomicLong totalSize = new AtomicLong();
+
+  public LibrarySourceStore(
+      CompiledLibraryCache compiledLibraryCache,
+      @Value("${madie.library-store.enabled:false}") boolean enabled,
+      @Value("${madie.library-store.directory:${java.io.tmpdir}/madie-library-store}")
+          Path directory,
+      @Value("${madie.library-store.max-size:256MB}") DataSize maxSize) {
+    this.compiledLibraryCache = compiledLibraryCache;
+    this.directory = directory;
+    this.maxSizeBytes = maxSize.toBytes();
+    this.enabled = enabled && initialize();
+  }
+
+  private boolean initialize() {
+    try {
+      Files.createDirectories(directory.resolve(OBJECTS));
+      Files.createDirectories(directory.resolve(REFS));
+      List<Path> objects = listObjects();
+      for (Path object : objects) {
+        totalSize.addAndGet(Files.size(object));
+      }
+      log.info(
+          "Using library source store at {} with {} sources ({} bytes)",
+          directory,
+          objects.size(),
+          totalSize.get());
+      return true;
+    } catch (IOException e) {
+      log.warn("Library source store at {} is not usable, disabling it", directory, e);
+      return false;
+    }
+  }
+
+  /**
+   * Looks up the stored CQL of a released library.
+   *
+   * @param identifier library name and version
+   * @return the CQL, empty for drafts, misses and sources failing verification
+   */
+  public Optional<String> get(VersionedIdentifier identifier) {
+    if (!enabled || compiledLibraryCache.isDraft(identifier)) {
+      return Optional.empty();
+    }
+    Path ref = refFor(identifier);
+    if (!Files.exists(ref)) {
+      return Optional.empty();
+    }
+    try {
+      String checksum = Files.readString(ref, StandardCharsets.UTF_8).trim();
+      Path object = objectFor(checksum);
+      if (!Files.exists(object)) {
+        Files.deleteIfExists(ref);
+        return Optional.empty();
+      }
+      String cql = Files.readString(object, StandardCharsets.UTF_8);
+      if (!checksum.equals(TranslationKeyUtil.digest(cql))) {
+        log.warn("Discarding corrupt library source {}", object);
+        delete(object);
+        Files.deleteIfExists(ref);
+        return Optional.empty();
+      }
+      Files.setLastModifiedTime(object, FileTime.fromMillis(System.currentTimeMillis()));
+      return Optional.of(cql);
+    } catch (IOException e) {
+      log.warn("Could not read stored source of {}", identifier.getId(), e);
+      return Optional.empty();
+    }
+  }
+
+  /** Stores the CQL of a released library, unless it is a draft or blank. */
+  public void put(VersionedIdentifier identifier, String cql) {
+    if (!enabled || compiledLibraryCache.isDraft(identifier) || StringUtils.isBlank(cql)) {
+      return;
+    }
+    String checksum = TranslationKeyUtil.digest(cql);
+    try {
+      Path object = objectFor(checksum);
+      if (!Files.exists(object)) {
+        writeAtomically(object, cql);
+        if (totalSize.addAndGet(Files.size(object)) > maxSizeBytes) {
+          evict();
+        }
+      }
+      writeAtomically(refFor(identifier), checksum);
+    } catch (IOException e) {
+      log.warn("Could not store source of {}", identifier.getId(), e);
+    }
+  }
+
+  /**
+   * Provider that serves stored sources and otherwise asks the delegate, storing what it returns.
+   *
+   * @param delegate provider that fetches from the library service
+   * @return provider backed by this store
+   */
+  public LibrarySourceProvider sourceProvider(LibrarySourceProvider delegate) {
+    return identifier -> {
+      Optional<String> stored = get(identifier);
+      if (stored.isPresent()) {
+        return toStream(stored.get());
+      }
+      InputStream fetched = delegate.getLibrarySource(identifier);
+      if (fetched == null || compiledLibraryCache.isDraft(identifier)) {
+        return fetched;
+      }
+      try (fetched) {
+        String cql = new String(fetched.readAllBytes(), StandardCharsets.UTF_8);
+        put(identifier, cql);
+        return toStream(cql);
+      } catch (IOException e) {
+        log.warn("Could not read source of {}", identifier.getId(), e);
+        return null;
+      }
+    };
+  }
+
+  private void writeAtomically(Path file, String content) throws IOException {
+    Path temp = Files.createTempFile(directory, "library", ".tmp");
+    try {
+      Files.writeString(temp, content, StandardCharsets.UTF_8);
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private synchronized void evict() throws IOException {
+    long target = maxSizeBytes * 9 / 10;
+    List<Path> objects = listObjects();
+    objects.sort(Comparator.comparing(LibrarySourceStore::lastModified));
+    for (Path object : objects) {
+      if (totalSize.get() <= target) {
+        break;
+      }
+      delete(object);
+    }
+  }
+
+  private List<Path> listObjects() throws IOException {
+    List<Path> objects = new ArrayList<>();
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(directory.resolve(OBJECTS), "*" + EXTENSION)) {
+      stream.forEach(objects::add);
+    }
+    return objects;
+  }
+
+  private void delete(Path object) {
+    try {
+      long size = Files.size(object);
+      if (Files.deleteIfExists(object)) {
+        totalSize.addAndGet(-size);
+      }
+    } catch (IOException e) {
+      log.debug("Could not delete library source {}", object, e);
+    }
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private Path objectFor(String checksum) {
+    return directory.resolve(OBJECTS).resolve(checksum + EXTENSION);
+  }
+
+  private Path refFor(VersionedIdentifier identifier) {
+    return directory
+        .resolve(REFS)
+        .resolve(TranslationKeyUtil.digest(identifier.getId(), identifier.getVersion()));
+  }
+
+  private static InputStream toStream(String cql) {
+    return new ByteArrayInputStream(cql.getBytes(StandardCharsets.UTF_8));
+  }
+}
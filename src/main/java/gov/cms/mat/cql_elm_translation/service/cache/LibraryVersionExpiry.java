@@ -0,0 +1,83 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Caffeine expiry for caches keyed by library name and version. Released versions never change,
+ * so they live until evicted or until the optional released TTL passes, counted from the last
+ * write or the last read; draft and unversioned libraries are mutable and expire after the draft
+ * TTL, counted from the write only. The version is looked up in the string form of the key, which
+ * covers both "name|version" keys and the {@code SimpleKey} of {@code @Cacheable} methods; a key
+ * without a released version is treated as a draft.
+ */
+public class LibraryVersionExpiry implements Expiry<Object, Object> {
+  private static final Pattern VERSION = Pattern.compile("\\d+\\.\\d+\\.\\d+");
+  private static final Pattern KEY_SEPARATORS = Pattern.compile("[\\s,|\\[\\]]+");
+
+  private final long draftNanos;
+  private final long releasedNanos;
+  private final boolean releasedAfterAccess;
+  private final Pattern draftVersionPattern;
+
+  /**
+   * Creates the expiry.
+   *
+   * @param draftTtl time a draft entry is kept after it was written
+   * @param releasedTtl time a released entry is kept after it was written, or null
+   * @param releasedIdleTtl time a released entry is kept after it was last written or read, or
+   *     null; at most one of the released TTLs may be set, and without either released entries
+   *     never expire
+   * @param draftVersionPattern pattern of the version MADiE gives to drafts
+   * @throws IllegalArgumentException when both released TTLs are set, which a single deadline per
+   *     entry cannot honour
+   */
+  public LibraryVersionExpiry(
+      Duration draftTtl,
+      Duration releasedTtl,
+      Duration releasedIdleTtl,
+      String draftVersionPattern) {
+    if (releasedTtl != null && releasedIdleTtl != null) {
+      throw new IllegalArgumentException(
+          "Released library entries expire either after write or after access, not both");
+    }
+    Duration released = releasedIdleTtl != null ? releasedIdleTtl : releasedTtl;
+    this.draftNanos = draftTtl.toNanos();
+    this.releasedNanos = released == null ? Long.MAX_VALUE : released.toNanos();
+    this.releasedAfterAccess = releasedIdleTtl != null;
+    this.draftVersionPattern = Pattern.compile(draftVersionPattern);
+  }
+
+  @Override
+  public long expireAfterCreate(Object key, Object value, long currentTime) {
+    return isDraft(key) ? draftNanos : releasedNanos;
+  }
+
+  @Override
+  public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+    return expireAfterCreate(key, value, currentTime);
+  }
+
+  @Override
+  public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+    return releasedAfterAccess && !isDraft(key) ? releasedNanos : currentDuration;
+  }
+
+  boolean isDraft(Object key) {
+    for (String part : keyParts(key)) {
+      if (VERSION.matcher(part).matches() && !draftVersionPattern.matcher(part).matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Parts of the string form of a key, e.g. name, version and token of a {@code SimpleKey}. */
+  static List<String> keyParts(Object key) {
+    return Arrays.asList(KEY_SEPARATORS.split(String.valueOf(key)));
+  }
+}
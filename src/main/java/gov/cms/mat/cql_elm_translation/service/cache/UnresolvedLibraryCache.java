@@ -0,0 +1,103 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.cqframework.cql.cql2elm.CqlIncludeException;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Short-lived negative cache of include libraries the library service did not find, keyed by
+ * "name|version". While an author retranslates CQL with a misspelled or deleted include, the
+ * translator gets the usual "Could not load source for library" error from this cache instead of
+ * waiting for another 404. Only a missing library is cached; timeouts and server errors are not.
+ */
+@Slf4j
+@Component
+public class UnresolvedLibraryCache {
+  public static final String CACHE_NAME = "unresolvedLibraries";
+
+  private final Cache cache;
+
+  public UnresolvedLibraryCache(CacheManager cacheManager) {
+    this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+  }
+
+  public boolean isUnresolved(VersionedIdentifier identifier) {
+    return cache.get(key(identifier)) != null;
+  }
+
+  public void markUnresolved(VersionedIdentifier identifier) {
+    log.debug("Library {} {} not found", identifier.getId(), identifier.getVersion());
+    cache.put(key(identifier), Boolean.TRUE);
+  }
+
+  public void markResolved(VersionedIdentifier identifier) {
+    cache.evict(key(identifier));
+  }
+
+  /**
+   * Provider to register ahead of the others, failing the lookup of a library that was recently
+   * not found. Returns null for anything else.
+   */
+  public LibrarySourceProvider failFastProvider() {
+    return identifier -> {
+      if (isUnresolved(identifier)) {
+        throw new CqlIncludeException(
+            String.format(
+                "Could not load source for library %s, version %s.",
+                identifier.getId(), identifier.getVersion()),
+            identifier.getSystem(),
+            identifier.getId(),
+            identifier.getVersion());
+      }
+      return null;
+    };
+  }
+
+  /**
+   * Provider that asks the delegate and remembers the libraries it did not find.
+   *
+   * @param delegate provider that fetches from the library service
+   * @return provider recording misses of the delegate
+   */
+  public LibrarySourceProvider recordingProvider(LibrarySourceProvider delegate) {
+    return identifier -> {
+      InputStream source;
+      try {
+        source = delegate.getLibrarySource(identifier);
+      } catch (RuntimeException e) {
+        if (isNotFound(e)) {
+          markUnresolved(identifier);
+        }
+        throw e;
+      }
+      if (source == null) {
+        markUnresolved(identifier);
+      }
+      return source;
+    };
+  }
+
+  /** Whether the failure, or one of its causes, is a 404 from the library service. */
+  public static boolean isNotFound(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof HttpStatusCodeException statusCodeException
+          && statusCodeException.getStatusCode().value() == HttpStatus.NOT_FOUND.value()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String key(VersionedIdentifier identifier) {
+    return identifier.getId() + "|" + identifier.getVersion();
+  }
+}
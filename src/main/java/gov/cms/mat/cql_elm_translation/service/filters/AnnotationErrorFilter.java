@@ -30,30 +30,53 @@ public class AnnotationErrorFilter implements CqlLibraryFinder, JsonHelpers {
    * that are not part of current cql library.
    * */
   // Todo Do we even need these annotations ?
+  /**
+   * @deprecated the translation filters the parsed tree through {@link #filter(JsonNode)}, see
+   *     {@link gov.cms.mat.cql_elm_translation.service.support.ElmJsonPostProcessor}
+   */
+  @Deprecated
   public AnnotationErrorFilter(String cqlData, boolean showWarnings, String json) {
     this.cqlData = cqlData;
     this.showWarnings = showWarnings;
     this.json = json;
   }
 
+  /** For filtering an already parsed ELM tree with {@link #filter(JsonNode)}. */
+  public AnnotationErrorFilter(String cqlData, boolean showWarnings) {
+    this(cqlData, showWarnings, null);
+  }
+
+  /**
+   * @deprecated parses and serializes the JSON once more, use {@link #filter(JsonNode)}
+   */
+  @Deprecated
   public String filter() {
     try {
       JsonNode rootNode = readRootNode();
-
-      Optional<ArrayNode> annotationNode = getAnnotationNode(rootNode);
-
-      if (annotationNode.isEmpty()) {
-        return json;
-      } else {
-        libraryProperties = parseLibrary();
-        return processArrayNode(rootNode, annotationNode.get());
-      }
+      return filter(rootNode) ? rootNode.toPrettyString() : json;
     } catch (Exception e) {
       log.info("Error filtering annotations", e);
       return json;
     }
   }
 
+  /**
+   * Filters the annotations of the ELM tree in place.
+   *
+   * @param rootNode parsed ELM JSON
+   * @return false when there were no annotations and the tree is unchanged
+   */
+  public boolean filter(JsonNode rootNode) {
+    Optional<ArrayNode> annotationNode = getAnnotationNode(rootNode);
+
+    if (annotationNode.isEmpty()) {
+      return false;
+    }
+    libraryProperties = parseLibrary();
+    processArrayNode(rootNode, annotationNode.get());
+    return true;
+  }
+
   private JsonNode readRootNode() throws JsonProcessingException {
     return objectMapper.readTree(json);
   }
@@ -86,7 +109,7 @@ public class AnnotationErrorFilter implements CqlLibraryFinder, JsonHelpers {
     }
   }
 
-  private String processArrayNode(JsonNode rootNode, ArrayNode annotationArrayNode) {
+  private void processArrayNode(JsonNode rootNode, ArrayNode annotationArrayNode) {
     annotationArrayNode.forEach(this::filterByNode);
 
     annotationArrayNode.removeAll();
@@ -100,7 +123,8 @@ public class AnnotationErrorFilter implements CqlLibraryFinder, JsonHelpers {
 
       rootObjectNode.set("externalErrors", arrayNode);
     }
-    return fixErrorTags(rootNode.toPrettyString());
+    keeperList.forEach(this::fixErrorTag);
+    externalList.forEach(this::fixErrorTag);
   }
 
   private void filterByNode(JsonNode jsonNode) {
@@ -157,8 +181,11 @@ public class AnnotationErrorFilter implements CqlLibraryFinder, JsonHelpers {
     return p.getName().equals(libraryId) && p.getVersion().equals(version);
   }
 
-  private String fixErrorTags(String cleanedJson) {
-    return cleanedJson.replace("\"errorSeverity\" : \"error\"", "\"errorSeverity\" : \"Error\"");
+  private void fixErrorTag(JsonNode node) {
+    if (node instanceof ObjectNode objectNode
+        && "error".equals(objectNode.path("errorSeverity").asText())) {
+      objectNode.put("errorSeverity", "Error");
+    }
   }
 
   private boolean isLibraryNodeValid(JsonNode node) {
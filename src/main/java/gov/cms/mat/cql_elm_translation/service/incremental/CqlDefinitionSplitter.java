@@ -0,0 +1,130 @@
+package gov.cms.mat.cql_elm_translation.service.incremental;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits CQL text into the header (everything before the first define) and one block per define
+ * statement. The split is purely textual; it only has to be good enough to tell which definitions
+ * an edit touched and which other definitions mention them.
+ */
+public final class CqlDefinitionSplitter {
+  private static final Pattern DEFINE_PATTERN =
+      Pattern.compile(
+          "^\\s*define\\s+(?:(?:public|private)\\s+)?(?:fluent\\s+)?(?:function\\s+)?"
+              + "(\"(?:[^\"\\\\]|\\\\.)*\"|[A-Za-z_]\\w*)");
+  private static final Pattern CONTEXT_PATTERN = Pattern.compile("^\\s*context\\s+\\w+\\s*$");
+  private static final Pattern DECLARATION_PATTERN =
+      Pattern.compile(
+          "^\\s*(?:(?:public|private)\\s+)?"
+              + "(?:library|using|include|codesystem|valueset|code|concept|parameter)\\s");
+
+  private CqlDefinitionSplitter() {}
+
+  /**
+   * Splits the CQL.
+   *
+   * @param cql CQL text
+   * @return header and definition blocks, in source order
+   */
+  public static SplitCql split(String cql) {
+    String[] lines = StringUtils.defaultString(cql).split("\n", -1);
+    StringBuilder header = new StringBuilder();
+    List<CqlDefinitionBlock> blocks = new ArrayList<>();
+    boolean declarationAfterDefine = false;
+
+    String name = null;
+    int start = 0;
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < lines.length; i++) {
+      Matcher matcher = DEFINE_PATTERN.matcher(lines[i]);
+      if (matcher.find()) {
+        if (name != null) {
+          blocks.add(new CqlDefinitionBlock(name, start, i, text.toString()));
+        }
+        name = StringUtils.strip(matcher.group(1), "\"");
+        start = i + 1;
+        text = new StringBuilder();
+      } else if (name != null && DECLARATION_PATTERN.matcher(lines[i]).find()) {
+        declarationAfterDefine = true;
+      }
+      (name == null ? header : text).append(lines[i]).append('\n');
+    }
+    if (name != null) {
+      blocks.add(new CqlDefinitionBlock(name, start, lines.length, text.toString()));
+    }
+    return new SplitCql(header.toString(), blocks, declarationAfterDefine);
+  }
+
+  /**
+   * Builds a CQL text with the same line layout in which every block that is not kept is blanked
+   * out. Context statements inside blanked blocks are kept so the remaining definitions keep
+   * their context.
+   *
+   * @param cql original CQL
+   * @param split split of the original CQL
+   * @param keep names of the definitions to keep
+   * @return reduced CQL with unchanged line numbers
+   */
+  public static String reduce(String cql, SplitCql split, Collection<String> keep) {
+    String[] lines = cql.split("\n", -1);
+    for (CqlDefinitionBlock block : split.blocks()) {
+      if (keep.contains(block.name())) {
+        continue;
+      }
+      for (int line = block.startLine(); line <= block.endLine(); line++) {
+        if (!CONTEXT_PATTERN.matcher(lines[line - 1]).matches()) {
+          lines[line - 1] = "";
+        }
+      }
+    }
+    return String.join("\n", lines);
+  }
+
+  /** Whether the block text mentions the given definition name, quoted or as an identifier. */
+  static boolean references(CqlDefinitionBlock block, String name) {
+    if (block.text().contains("\"" + name + "\"")) {
+      return true;
+    }
+    return name.matches("[A-Za-z_]\\w*")
+        && Pattern.compile("(?<![\\w\"])" + name + "(?![\\w\"])")
+            .matcher(StringUtils.substringAfter(block.text(), ":"))
+            .find();
+  }
+
+  /**
+   * CQL split into its parts.
+   *
+   * @param header text before the first define
+   * @param blocks define statements in source order
+   * @param declarationAfterDefine true when a non-define declaration follows a define, which the
+   *     incremental mode does not handle
+   */
+  public record SplitCql(
+      String header, List<CqlDefinitionBlock> blocks, boolean declarationAfterDefine) {
+
+    public List<String> names() {
+      return blocks.stream().map(CqlDefinitionBlock::name).toList();
+    }
+  }
+
+  /**
+   * One define statement.
+   *
+   * @param name definition or function name without quotes
+   * @param startLine first line, 1 based
+   * @param endLine last line, 1 based and inclusive
+   * @param text source text of the block
+   */
+  public record CqlDefinitionBlock(String name, int startLine, int endLine, String text) {
+
+    public boolean containsLine(int line) {
+      return line >= startLine && line <= endLine;
+    }
+  }
+}
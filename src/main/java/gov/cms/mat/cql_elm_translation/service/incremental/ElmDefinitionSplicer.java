@@ -0,0 +1,158 @@
+package gov.cms.mat.cql_elm_translation.service.incremental;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import gov.cms.mat.cql_elm_translation.service.incremental.CqlDefinitionSplitter.CqlDefinitionBlock;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces the recompiled definitions and their diagnostics in a previous ELM JSON payload.
+ *
+ * <p>Recompiled definitions are numbered by a separate translator run, so their localIds are
+ * shifted past the highest localId anywhere in the previous library, declarations included, to
+ * keep them unique within the library.
+ * They are therefore not the ids a full translation would assign.
+ */
+final class ElmDefinitionSplicer {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String ERROR_ANNOTATION = "CqlToElmError";
+
+  private ElmDefinitionSplicer() {}
+
+  /**
+   * Splices the recompiled definitions into the previous payload.
+   *
+   * @param previousJson ELM JSON of the last translation of the session
+   * @param reducedJson ELM JSON of the reduced CQL
+   * @param recompiled blocks that were recompiled
+   * @return merged ELM JSON, or null when the previous payload has no definitions to splice into
+   */
+  static String splice(
+      String previousJson, String reducedJson, Collection<CqlDefinitionBlock> recompiled) {
+    try {
+      JsonNode previous = MAPPER.readTree(previousJson);
+      JsonNode reduced = MAPPER.readTree(reducedJson);
+      JsonNode previousStatements = previous.at("/library/statements");
+      if (!(previousStatements instanceof ObjectNode statements)
+          || !(statements.get("def") instanceof ArrayNode previousDefs)) {
+        return null;
+      }
+      Set<String> names = new HashSet<>();
+      recompiled.forEach(block -> names.add(block.name()));
+
+      Map<String, List<JsonNode>> reducedDefs = new LinkedHashMap<>();
+      for (JsonNode def : reduced.at("/library/statements/def")) {
+        if (names.contains(def.path("name").asText())) {
+          reducedDefs.computeIfAbsent(def.path("name").asText(), n -> new ArrayList<>()).add(def);
+        }
+      }
+
+      long offset = maxLocalId(previous.path("library"));
+      ArrayNode merged = MAPPER.createArrayNode();
+      for (JsonNode def : previousDefs) {
+        String name = def.path("name").asText();
+        if (!names.contains(name)) {
+          merged.add(def);
+        } else if (reducedDefs.containsKey(name)) {
+          reducedDefs.remove(name).forEach(d -> merged.add(shiftLocalIds(d.deepCopy(), offset)));
+        }
+      }
+      // definitions that did not compile before
+      reducedDefs.values().forEach(d -> d.forEach(def -> merged.add(shiftLocalIds(def, offset))));
+      statements.set("def", merged);
+
+      mergeErrors((ObjectNode) previous, reduced, "errorExceptions", recompiled);
+      if (previous.path("library") instanceof ObjectNode library) {
+        mergeErrors(library, reduced.path("library"), "annotation", recompiled);
+      }
+      return previous.toPrettyString();
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Keeps previous errors outside the recompiled blocks and takes the new errors inside them.
+   * Non error entries of the array are kept from the previous payload.
+   */
+  private static void mergeErrors(
+      ObjectNode previous,
+      JsonNode reduced,
+      String field,
+      Collection<CqlDefinitionBlock> recompiled) {
+    ArrayNode merged = MAPPER.createArrayNode();
+    for (JsonNode entry : previous.path(field)) {
+      if (!isError(entry, field) || !inRecompiled(entry, recompiled)) {
+        merged.add(entry);
+      }
+    }
+    for (JsonNode entry : reduced.path(field)) {
+      if (isError(entry, field) && inRecompiled(entry, recompiled)) {
+        merged.add(entry);
+      }
+    }
+    if (merged.isEmpty()) {
+      previous.remove(field);
+    } else {
+      previous.set(field, merged);
+    }
+  }
+
+  private static boolean isError(JsonNode entry, String field) {
+    return !"annotation".equals(field) || ERROR_ANNOTATION.equals(entry.path("type").asText());
+  }
+
+  private static boolean inRecompiled(JsonNode entry, Collection<CqlDefinitionBlock> recompiled) {
+    int line = entry.path("startLine").asInt(-1);
+    return recompiled.stream().anyMatch(block -> block.containsLine(line));
+  }
+
+  private static long maxLocalId(JsonNode node) {
+    long max = 0;
+    if (node.isObject()) {
+      JsonNode localId = node.get("localId");
+      if (localId != null) {
+        max = NumberUtils.toLong(localId.asText());
+      }
+    }
+    for (JsonNode child : node) {
+      max = Math.max(max, maxLocalId(child));
+    }
+    return max;
+  }
+
+  private static JsonNode shiftLocalIds(JsonNode node, long offset) {
+    if (node instanceof ObjectNode object) {
+      Iterator<Map.Entry<String, JsonNode>> fields = object.fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        String value = field.getValue().asText();
+        // "r" is the localId reference of the narrative annotation
+        if (("localId".equals(field.getKey()) || "r".equals(field.getKey()))
+            && field.getValue().isTextual()
+            && NumberUtils.isDigits(value)) {
+          field.setValue(TextNode.valueOf(String.valueOf(Long.parseLong(value) + offset)));
+        } else {
+          shiftLocalIds(field.getValue(), offset);
+        }
+      }
+    } else if (node instanceof ArrayNode array) {
+      array.forEach(child -> shiftLocalIds(child, offset));
+    }
+    return node;
+  }
+}
@@ -0,0 +1,104 @@
+package gov.cms.mat.cql_elm_translation.service.incremental;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+
+/**
+ * Computes an RFC 6902 JSON Patch between two ELM JSON documents. Objects are compared field by
+ * field. Arrays keep their common head and tail and compare the rest pairwise, so editing,
+ * adding or removing a single definition yields a patch of that definition rather than of the
+ * whole statements array. The patch is correct for any input but not necessarily minimal.
+ */
+public final class ElmJsonPatch {
+  private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+  private ElmJsonPatch() {}
+
+  /**
+   * Builds the patch that turns the source document into the target document.
+   *
+   * @param source document the client holds
+   * @param target current document
+   * @return patch operations, empty when the documents are equal
+   */
+  public static ArrayNode diff(JsonNode source, JsonNode target) {
+    ArrayNode patch = NODES.arrayNode();
+    diff("", source, target, patch);
+    return patch;
+  }
+
+  private static void diff(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+    if (source.equals(target)) {
+      return;
+    }
+    if (source.isObject() && target.isObject()) {
+      diffObjects(path, source, target, patch);
+    } else if (source.isArray() && target.isArray()) {
+      diffArrays(path, source, target, patch);
+    } else {
+      patch.add(operation("replace", path).set("value", target));
+    }
+  }
+
+  private static void diffObjects(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+    Iterator<String> names = source.fieldNames();
+    while (names.hasNext()) {
+      String name = names.next();
+      String child = path + "/" + escape(name);
+      if (target.has(name)) {
+        diff(child, source.get(name), target.get(name), patch);
+      } else {
+        patch.add(operation("remove", child));
+      }
+    }
+    names = target.fieldNames();
+    while (names.hasNext()) {
+      String name = names.next();
+      if (!source.has(name)) {
+        patch.add(operation("add", path + "/" + escape(name)).set("value", target.get(name)));
+      }
+    }
+  }
+
+  private static void diffArrays(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+    int shorter = Math.min(source.size(), target.size());
+    int head = 0;
+    while (head < shorter && source.get(head).equals(target.get(head))) {
+      head++;
+    }
+    int tail = 0;
+    while (tail < shorter - head
+        && source.get(source.size() - 1 - tail).equals(target.get(target.size() - 1 - tail))) {
+      tail++;
+    }
+    int sourceMiddle = source.size() - head - tail;
+    int targetMiddle = target.size() - head - tail;
+    int paired = Math.min(sourceMiddle, targetMiddle);
+    for (int i = head; i < head + paired; i++) {
+      diff(path + "/" + i, source.get(i), target.get(i), patch);
+    }
+    // remove from the back so the indices of the remaining elements do not move
+    for (int i = head + sourceMiddle - 1; i >= head + paired; i--) {
+      patch.add(operation("remove", path + "/" + i));
+    }
+    for (int i = head + paired; i < head + targetMiddle; i++) {
+      patch.add(operation("add", path + "/" + i).set("value", target.get(i)));
+    }
+  }
+
+  private static ObjectNode operation(String op, String path) {
+    ObjectNode operation = NODES.objectNode();
+    operation.put("op", op);
+    operation.put("path", path);
+    return operation;
+  }
+
+  /** Escapes a field name for use in a JSON Pointer (RFC 6901). */
+  static String escape(String name) {
+    return name.replace("~", "~0").replace("/", "~1");
+  }
+}
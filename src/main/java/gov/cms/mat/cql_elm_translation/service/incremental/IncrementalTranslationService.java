@@ -0,0 +1,199 @@
+package gov.cms.mat.cql_elm_translation.service.incremental;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.service.cache.IncludeTreeDigest;
+import gov.cms.mat.cql_elm_translation.service.incremental.CqlDefinitionSplitter.CqlDefinitionBlock;
+import gov.cms.mat.cql_elm_translation.service.incremental.CqlDefinitionSplitter.SplitCql;
+import gov.cms.mat.cql_elm_translation.utils.TranslationKeyUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Incremental translation for editor sessions. The service keeps the last translation of each
+ * session and, when only define bodies changed, compiles a reduced CQL holding the changed
+ * definitions, the definitions that reference them and whatever those need. Every other
+ * definition is blanked out, which keeps line numbers and therefore locators and error positions
+ * unchanged. The recompiled definitions and their diagnostics are then spliced into the previous
+ * ELM JSON.
+ *
+ * <p>Header edits, added, removed or reordered definitions, edits that move other definitions to
+ * different lines and changed draft includes fall back to a full translation. Incremental
+ * payloads carry the ELM JSON only, so callers use the service only for requests that select the
+ * JSON alone.
+ */
+@Slf4j
+@Service
+public class IncrementalTranslationService {
+  public static final String CACHE_NAME = "editorSessions";
+
+  private final Cache sessions;
+  private final IncludeTreeDigest includeTreeDigest;
+
+  public IncrementalTranslationService(
+      CacheManager cacheManager, IncludeTreeDigest includeTreeDigest) {
+    this.sessions = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME));
+    this.includeTreeDigest = includeTreeDigest;
+  }
+
+  /**
+   * Translates the CQL of an editor session, incrementally when possible.
+   *
+   * @param sessionId editor session
+   * @param requestData CQL and options
+   * @param fetched include sources fetched for this request, or null when none were fetched
+   * @param compiler full translation of a request, without caching
+   * @return translation result
+   */
+  public Result translate(
+      String sessionId,
+      RequestData requestData,
+      Map<String, String> fetched,
+      Function<RequestData, CqlConversionPayload> compiler) {
+    SplitCql split = CqlDefinitionSplitter.split(requestData.getCqlData());
+    String options = TranslationKeyUtil.options(requestData);
+    String includeTree = includeTree(requestData, fetched);
+    EditorSession previous = sessions.get(sessionId, EditorSession.class);
+
+    Set<String> recompile =
+        previous == null ? null : recompileSet(previous, options, includeTree, split);
+    if (recompile != null && recompile.isEmpty()) {
+      return new Result(CqlConversionPayload.builder().json(previous.json()).build(), true);
+    }
+    if (recompile != null) {
+      String merged = translateIncrementally(previous, requestData, split, recompile, compiler);
+      if (merged != null) {
+        sessions.put(sessionId, new EditorSession(options, includeTree, split, merged));
+        return new Result(CqlConversionPayload.builder().json(merged).build(), true);
+      }
+    }
+
+    CqlConversionPayload payload = compiler.apply(requestData);
+    remember(sessionId, requestData, fetched, payload);
+    return new Result(payload, false);
+  }
+
+  /** Records a full translation as the latest state of the session. */
+  public void remember(
+      String sessionId,
+      RequestData requestData,
+      Map<String, String> fetched,
+      CqlConversionPayload payload) {
+    sessions.put(
+        sessionId,
+        new EditorSession(
+            TranslationKeyUtil.options(requestData),
+            includeTree(requestData, fetched),
+            CqlDefinitionSplitter.split(requestData.getCqlData()),
+            payload.getJson()));
+  }
+
+  /** Digest of the include tree with drafts taken from the fetched sources, null when unknown. */
+  private String includeTree(RequestData requestData, Map<String, String> fetched) {
+    return includeTreeDigest.treeDigest(
+        requestData.getCqlData(), fetched == null ? Map.of() : fetched);
+  }
+
+  private String translateIncrementally(
+      EditorSession previous,
+      RequestData requestData,
+      SplitCql split,
+      Set<String> recompile,
+      Function<RequestData, CqlConversionPayload> compiler) {
+    Set<String> keep = withDependencies(split, recompile);
+    String reducedCql = CqlDefinitionSplitter.reduce(requestData.getCqlData(), split, keep);
+    log.debug(
+        "Recompiling {} of {} definitions ({} kept for dependencies)",
+        recompile.size(),
+        split.blocks().size(),
+        keep.size() - recompile.size());
+    CqlConversionPayload reduced =
+        compiler.apply(requestData.toBuilder().cqlData(reducedCql).build());
+    List<CqlDefinitionBlock> recompiled =
+        split.blocks().stream().filter(block -> recompile.contains(block.name())).toList();
+    return ElmDefinitionSplicer.splice(previous.json(), reduced.getJson(), recompiled);
+  }
+
+  /**
+   * Names of the definitions to recompile: the changed ones and everything that references them,
+   * transitively. Null when the edit cannot be handled incrementally, which includes a changed or
+   * unknown draft include.
+   */
+  static Set<String> recompileSet(
+      EditorSession previous, String options, String includeTree, SplitCql split) {
+    SplitCql before = previous.split();
+    if (!options.equals(previous.options())
+        || includeTree == null
+        || !includeTree.equals(previous.includeTree())
+        || !before.header().equals(split.header())
+        || before.declarationAfterDefine()
+        || split.declarationAfterDefine()
+        || !before.names().equals(split.names())) {
+      return null;
+    }
+    Set<String> changed = new LinkedHashSet<>();
+    for (int i = 0; i < split.blocks().size(); i++) {
+      CqlDefinitionBlock old = before.blocks().get(i);
+      CqlDefinitionBlock block = split.blocks().get(i);
+      if (old.startLine() != block.startLine() || old.endLine() != block.endLine()) {
+        return null;
+      }
+      if (!old.text().equals(block.text())) {
+        changed.add(block.name());
+      }
+    }
+    boolean grown = !changed.isEmpty();
+    while (grown) {
+      grown = false;
+      for (CqlDefinitionBlock block : split.blocks()) {
+        if (!changed.contains(block.name()) && referencesAny(block, changed)) {
+          grown |= changed.add(block.name());
+        }
+      }
+    }
+    return changed;
+  }
+
+  /** Adds the definitions referenced by the given ones, transitively. */
+  static Set<String> withDependencies(SplitCql split, Set<String> names) {
+    Set<String> keep = new LinkedHashSet<>(names);
+    boolean grown = true;
+    while (grown) {
+      grown = false;
+      for (CqlDefinitionBlock block : split.blocks()) {
+        if (keep.contains(block.name())) {
+          for (String name : split.names()) {
+            if (!keep.contains(name) && CqlDefinitionSplitter.references(block, name)) {
+              grown |= keep.add(name);
+            }
+          }
+        }
+      }
+    }
+    return keep;
+  }
+
+  private static boolean referencesAny(CqlDefinitionBlock block, Set<String> names) {
+    return names.stream().anyMatch(name -> CqlDefinitionSplitter.references(block, name));
+  }
+
+  /**
+   * Result of a session translation.
+   *
+   * @param payload translated payload
+   * @param incremental true when the payload was built from the previous session state
+   */
+  public record Result(CqlConversionPayload payload, boolean incremental) {}
+
+  /** Last translation of an editor session. */
+  record EditorSession(String options, String includeTree, SplitCql split, String json) {}
+}
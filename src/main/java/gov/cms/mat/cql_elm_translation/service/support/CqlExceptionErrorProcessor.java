@@ -2,6 +2,7 @@ package gov.cms.mat.cql_elm_translation.service.support;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import gov.cms.mat.fhir.rest.dto.MatCqlConversionException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
@@ -23,12 +24,25 @@ public class CqlExceptionErrorProcessor {
   /**
    * Transforms CqlTranslatorException to MatCqlConversionException and prepend with
    * "errorExceptions" object to the translator.json
+   *
+   * @deprecated the translation adds the errors to the parsed tree, see {@link
+   *     ElmJsonPostProcessor}
    */
+  @Deprecated
   public CqlExceptionErrorProcessor(List<CqlCompilerException> cqlErrors, String json) {
     this.cqlErrors = cqlErrors;
     this.json = json;
   }
 
+  /** Adds the errors to an already parsed translator JSON, see {@link #process(ObjectNode)}. */
+  public CqlExceptionErrorProcessor(List<CqlCompilerException> cqlErrors) {
+    this(cqlErrors, null);
+  }
+
+  /**
+   * @deprecated parses the JSON once more, use {@link #process(ObjectNode)}
+   */
+  @Deprecated
   public String process() {
     try {
       if (CollectionUtils.isEmpty(cqlErrors)) {
@@ -43,6 +57,24 @@ public class CqlExceptionErrorProcessor {
     }
   }
 
+  /**
+   * Adds the "errorExceptions" node as the first field of an already parsed translator JSON.
+   *
+   * @param root parsed translator JSON
+   * @return false when there were no errors and the tree is unchanged
+   */
+  public boolean process(ObjectNode root) {
+    if (CollectionUtils.isEmpty(cqlErrors)) {
+      return false;
+    }
+    ObjectNode reordered = root.objectNode();
+    reordered.set("errorExceptions", mapper.valueToTree(buildMatErrors()));
+    reordered.setAll(root);
+    root.removeAll();
+    root.setAll(reordered);
+    return true;
+  }
+
   private String addErrorsToJson() throws JsonProcessingException {
     mapper.readTree(json);
 
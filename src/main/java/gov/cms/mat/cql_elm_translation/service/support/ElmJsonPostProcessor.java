@@ -0,0 +1,119 @@
+package gov.cms.mat.cql_elm_translation.service.support;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import gov.cms.mat.cql_elm_translation.service.filters.AnnotationErrorFilter;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.cqframework.cql.cql2elm.CqlCompilerException;
+
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Post-processes the translator JSON in a single pass: the JSON is parsed once, the annotations
+ * are filtered into "externalErrors" with normalized severities, the translator options are
+ * stripped, "errorExceptions" is added, and the tree is serialized once. When no step changes the
+ * tree the translator JSON is returned as is.
+ */
+@Slf4j
+public class ElmJsonPostProcessor {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String MODEL_VERSION_REQUIRED = "Model Type and version are required";
+
+  private final String cqlData;
+  private final boolean showWarnings;
+  private final List<CqlCompilerException> cqlErrors;
+  @Getter private boolean missingModelReported;
+
+  public ElmJsonPostProcessor(
+      String cqlData, boolean showWarnings, List<CqlCompilerException> cqlErrors) {
+    this.cqlData = cqlData;
+    this.showWarnings = showWarnings;
+    this.cqlErrors = cqlErrors;
+  }
+
+  /**
+   * Processes the translator JSON.
+   *
+   * @param json translator JSON
+   * @return processed JSON
+   */
+  public String process(String json) {
+    ObjectNode root = readRoot(json);
+    boolean changed = filterAnnotations(root);
+    changed |= stripTranslatorOptions(root);
+    changed |= new CqlExceptionErrorProcessor(cqlErrors).process(root);
+    checkMissingModel(root);
+    return changed ? root.toPrettyString() : json;
+  }
+
+  /** Builds a JSON holding only the "errorExceptions", without serializing the library. */
+  public String processErrorsOnly() {
+    ObjectNode root = MAPPER.createObjectNode();
+    new CqlExceptionErrorProcessor(cqlErrors).process(root);
+    checkMissingModel(root);
+    return root.toPrettyString();
+  }
+
+  private void checkMissingModel(JsonNode root) {
+    for (JsonNode error : root.path("errorExceptions")) {
+      missingModelReported |= MODEL_VERSION_REQUIRED.equals(error.path("message").asText());
+    }
+  }
+
+  private boolean filterAnnotations(ObjectNode root) {
+    try {
+      return new AnnotationErrorFilter(cqlData, showWarnings).filter(root);
+    } catch (Exception e) {
+      log.info("Error filtering annotations", e);
+      return false;
+    }
+  }
+
+  /**
+   * Removes all fields but the version from the translator options annotation, and drops an empty
+   * annotation array, which blows up array processing for annotations.
+   *
+   * @param root parsed translator JSON
+   * @return false when the library has no annotations and the tree is unchanged
+   */
+  public static boolean stripTranslatorOptions(JsonNode root) {
+    JsonNode libraryNode = root.path("library");
+    JsonNode annotationNode = libraryNode.path("annotation");
+    if (annotationNode.isMissingNode()) {
+      return false;
+    }
+    if (annotationNode.isEmpty() && libraryNode instanceof ObjectNode objectNode) {
+      objectNode.remove("annotation");
+      return true;
+    }
+    for (JsonNode annotation : annotationNode) {
+      // remove translator options that are not the version
+      if (annotation.has("translatorOptions")) {
+        Iterator<String> fieldNames = annotation.fieldNames();
+        while (fieldNames.hasNext()) {
+          if (!Objects.equals(fieldNames.next(), "translatorVersion")) {
+            fieldNames.remove();
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private static ObjectNode readRoot(String json) {
+    try {
+      if (MAPPER.readTree(json) instanceof ObjectNode root) {
+        return root;
+      }
+      throw new IllegalArgumentException("Translator JSON is not an object");
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package gov.cms.mat.cql_elm_translation.service.support;
+
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationRejectedException;
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationTimeoutException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs identical concurrent work once. The first caller for a key does the work on its own
+ * thread; callers arriving while it is in flight wait for and share its result, or its exception.
+ * Nothing is kept once the work has finished.
+ *
+ * <p>The deadline and the bulkhead admission of the first caller are its own: a client can shorten
+ * its deadline, and a caller may be turned away while others would be admitted. A joined caller
+ * therefore waits no longer than its own {@link TranslationDeadline}, and when the first caller
+ * timed out or was rejected it runs the work itself on its own budget instead of sharing that
+ * failure.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+  private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final Runnable onCoalesced;
+
+  /**
+   * @param onCoalesced called each time a caller joins work that is already in flight
+   */
+  public SingleFlight(Runnable onCoalesced) {
+    this.onCoalesced = onCoalesced;
+  }
+
+  /**
+   * Executes the work, or joins the identical work already in flight.
+   *
+   * @param key identity of the work
+   * @param work the work
+   * @return result of the work, shared between all callers that joined it
+   */
+  public V execute(K key, Supplier<V> work) {
+    CompletableFuture<V> own = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+    if (existing != null) {
+      onCoalesced.run();
+      return join(existing, work);
+    }
+    try {
+      V result = work.get();
+      own.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      own.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  public int inFlight() {
+    return inFlight.size();
+  }
+
+  private static <V> V join(CompletableFuture<V> future, Supplier<V> work) {
+    TranslationDeadline deadline = TranslationDeadline.current();
+    try {
+      if (deadline == null) {
+        return future.join();
+      }
+      // a copy, so that the timeout of this caller does not fail the shared future
+      return future
+          .copy()
+          .orTimeout(
+              TranslationDeadline.remaining(deadline.getTimeout()).toNanos(), TimeUnit.NANOSECONDS)
+          .join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof TimeoutException) {
+        throw new TranslationTimeoutException(
+            TranslationDeadline.STAGE_COMPILE, deadline.getTimeout(), deadline.elapsed());
+      }
+      if (cause instanceof TranslationTimeoutException
+          || cause instanceof TranslationRejectedException) {
+        return work.get();
+      }
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (cause instanceof Error error) {
+        throw error;
+      }
+      throw e;
+    }
+  }
+}
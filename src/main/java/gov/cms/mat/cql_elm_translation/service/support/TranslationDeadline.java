@@ -0,0 +1,112 @@
+package gov.cms.mat.cql_elm_translation.service.support;
+
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationTimeoutException;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Deadline of the translation running on the current thread. The translator cannot be
+ * interrupted, so the work checks the deadline cooperatively at its stage boundaries and while
+ * include libraries are loaded. Without a deadline bound to the thread the checks do nothing.
+ */
+public final class TranslationDeadline {
+  public static final String STAGE_ADMISSION = "admission";
+  public static final String STAGE_INCLUDE_FETCH = "include-fetch";
+  public static final String STAGE_COMPILE = "compile";
+  public static final String STAGE_ANALYSIS = "analysis";
+
+  private static final ThreadLocal<TranslationDeadline> CURRENT = new ThreadLocal<>();
+
+  @Getter private final Duration timeout;
+  private final long startNanos;
+  @Getter private volatile String stage;
+
+  private TranslationDeadline(Duration timeout) {
+    this.timeout = timeout;
+    this.startNanos = System.nanoTime();
+  }
+
+  /** Binds a new deadline to the current thread. */
+  public static TranslationDeadline start(Duration timeout) {
+    TranslationDeadline deadline = new TranslationDeadline(timeout);
+    CURRENT.set(deadline);
+    return deadline;
+  }
+
+  /**
+   * Creates a deadline without binding it, e.g. for one item of a batch. The time starts to run
+   * now, so it should be created when the work begins.
+   */
+  public static TranslationDeadline of(Duration timeout) {
+    return new TranslationDeadline(timeout);
+  }
+
+  public static TranslationDeadline current() {
+    return CURRENT.get();
+  }
+
+  public static void clear() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Runs the work with the given deadline bound to the current thread, e.g. on a pool thread
+   * working for a request.
+   */
+  public static <T> T callWith(TranslationDeadline deadline, Supplier<T> work) {
+    TranslationDeadline previous = CURRENT.get();
+    if (deadline == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(deadline);
+    }
+    try {
+      return work.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Records the stage the translation is in and fails when the deadline has passed.
+   *
+   * @param stage stage that is about to run or still running
+   * @throws TranslationTimeoutException when the deadline has passed
+   */
+  public static void checkpoint(String stage) {
+    TranslationDeadline deadline = CURRENT.get();
+    if (deadline != null) {
+      deadline.stage = stage;
+      if (deadline.isExpired()) {
+        throw new TranslationTimeoutException(stage, deadline.timeout, deadline.elapsed());
+      }
+    }
+  }
+
+  /** Time left on the current deadline, limited to the given cap. */
+  public static Duration remaining(Duration cap) {
+    TranslationDeadline deadline = CURRENT.get();
+    if (deadline == null) {
+      return cap;
+    }
+    Duration remaining = deadline.timeout.minus(deadline.elapsed());
+    if (remaining.isNegative()) {
+      return Duration.ZERO;
+    }
+    return remaining.compareTo(cap) < 0 ? remaining : cap;
+  }
+
+  public Duration elapsed() {
+    return Duration.ofNanos(System.nanoTime() - startNanos);
+  }
+
+  public boolean isExpired() {
+    return elapsed().compareTo(timeout) >= 0;
+  }
+}
@@ -0,0 +1,149 @@
+package gov.cms.mat.cql_elm_translation.service.warmup;
+
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.mat.cql.CqlTextParser;
+import gov.cms.mat.cql.elements.UsingProperties;
+import gov.cms.mat.cql_elm_translation.dto.LibraryReference;
+import gov.cms.mat.cql_elm_translation.dto.LibraryWarmupResult;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.cache.LibraryBundle;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles include libraries ahead of the first user request, so their compiled form is in the
+ * compiled library cache, and in the ELM artifact store when that is enabled. The {@link
+ * LibraryBundle} is warmed once the application is up; further libraries can be warmed on demand.
+ * A library is compiled by translating a stub CQL that only includes it, with the options of the
+ * conversion and the tooling endpoints.
+ */
+@Slf4j
+@Service
+public class LibraryWarmupService {
+  // Bundled libraries are served from memory, so the library service never sees this token
+  // unless a bundled library includes a library that is not bundled.
+  private static final String BUNDLE_ACCESS_TOKEN = "library-bundle";
+  private static final String STUB_LIBRARY = "MadieLibraryWarmup";
+
+  private final CqlConversionService cqlConversionService;
+  private final CqlLibraryService cqlLibraryService;
+  private final LibraryBundle libraryBundle;
+  private final boolean warmBundleOnStartup;
+
+  public LibraryWarmupService(
+      CqlConversionService cqlConversionService,
+      CqlLibraryService cqlLibraryService,
+      LibraryBundle libraryBundle,
+      @Value("${madie.library-bundle.warm-on-startup:true}") boolean warmBundleOnStartup) {
+    this.cqlConversionService = cqlConversionService;
+    this.cqlLibraryService = cqlLibraryService;
+    this.libraryBundle = libraryBundle;
+    this.warmBundleOnStartup = warmBundleOnStartup;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (!warmBundleOnStartup || libraryBundle.isEmpty()) {
+      return;
+    }
+    Thread thread = new Thread(this::warmBundle, "library-bundle-warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void warmBundle() {
+    List<LibraryReference> libraries = new ArrayList<>();
+    for (String library : libraryBundle.libraries()) {
+      libraries.add(
+          LibraryReference.builder()
+              .name(StringUtils.substringBefore(library, "|"))
+              .version(StringUtils.substringAfter(library, "|"))
+              .build());
+    }
+    long start = System.currentTimeMillis();
+    long warmed =
+        warm(libraries, BUNDLE_ACCESS_TOKEN).stream().filter(LibraryWarmupResult::isWarmed).count();
+    log.info(
+        "Warmed {} of {} bundled libraries in {} ms",
+        warmed,
+        libraries.size(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Fetches and compiles the libraries one after the other.
+   *
+   * @param libraries libraries to warm
+   * @param accessToken token used for the library service
+   * @return one result per library, in input order
+   */
+  public List<LibraryWarmupResult> warm(List<LibraryReference> libraries, String accessToken) {
+    List<LibraryWarmupResult> results = new ArrayList<>();
+    for (LibraryReference library : libraries) {
+      results.add(warm(library, accessToken));
+    }
+    return results;
+  }
+
+  private LibraryWarmupResult warm(LibraryReference library, String accessToken) {
+    LibraryWarmupResult.LibraryWarmupResultBuilder result =
+        LibraryWarmupResult.builder().name(library.getName()).version(library.getVersion());
+    if (StringUtils.isAnyBlank(library.getName(), library.getVersion())) {
+      return result.error("Name and version are required").build();
+    }
+    try {
+      String source = source(library, accessToken);
+      if (StringUtils.isBlank(source)) {
+        return result.error("Library not found").build();
+      }
+      List<String> errors = cqlConversionService.precompile(stub(library, source), accessToken);
+      if (!errors.isEmpty()) {
+        return result.error(String.join("; ", errors)).build();
+      }
+      log.debug("Warmed library {} {}", library.getName(), library.getVersion());
+      return result.warmed(true).build();
+    } catch (RuntimeException e) {
+      log.warn("Could not warm library {} {}", library.getName(), library.getVersion(), e);
+      return result.error(e.getMessage()).build();
+    }
+  }
+
+  private String source(LibraryReference library, String accessToken) {
+    VersionedIdentifier identifier =
+        new VersionedIdentifier().withId(library.getName()).withVersion(library.getVersion());
+    return libraryBundle
+        .get(identifier)
+        .orElseGet(
+            () ->
+                cqlLibraryService.getLibraryCql(
+                    library.getName(), library.getVersion(), accessToken));
+  }
+
+  /** CQL that only includes the library, using the same model so the compile scope matches. */
+  static String stub(LibraryReference library, String source) {
+    StringBuilder stub =
+        new StringBuilder("library ").append(STUB_LIBRARY).append(" version '0.0.000'\n");
+    UsingProperties using = new CqlTextParser(source).getUsing();
+    if (using != null && StringUtils.isNotBlank(using.getLibraryType())) {
+      stub.append("using ")
+          .append(using.getLibraryType())
+          .append(" version '")
+          .append(using.getVersion())
+          .append("'\n");
+    }
+    return stub.append("include ")
+        .append(library.getName())
+        .append(" version '")
+        .append(library.getVersion())
+        .append("' called Warmed\n")
+        .toString();
+  }
+}
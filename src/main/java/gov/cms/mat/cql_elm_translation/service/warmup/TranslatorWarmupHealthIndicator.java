@@ -0,0 +1,31 @@
+package gov.cms.mat.cql_elm_translation.service.warmup;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Reports the progress of the translator warm-up as details of the {@code translatorWarmup} health
+ * contributor. The contributor is always up, so a long warm-up does not fail the root health
+ * endpoint; traffic is held back through the readiness state, see {@link TranslatorWarmupService}.
+ */
+@Component
+@RequiredArgsConstructor
+public class TranslatorWarmupHealthIndicator implements HealthIndicator {
+
+  private final TranslatorWarmupService translatorWarmupService;
+
+  @Override
+  public Health health() {
+    TranslatorWarmupService.WarmupState state = translatorWarmupService.getState();
+    Health.Builder builder = Health.up().withDetail("state", state);
+    Duration duration = translatorWarmupService.getDuration();
+    if (duration != null) {
+      builder.withDetail("durationMs", duration.toMillis());
+    }
+    return builder.build();
+  }
+}
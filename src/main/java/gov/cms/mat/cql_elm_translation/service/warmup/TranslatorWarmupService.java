@@ -0,0 +1,181 @@
+package gov.cms.mat.cql_elm_translation.service.warmup;
+
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.CqlParsingService;
+import gov.cms.mat.cql_elm_translation.service.DataCriteriaService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Primes class loading, model info loading, the ANTLR caches and the JIT by pushing the bundled
+ * warm-up CQL through the translation services once the application is up. Until the warm-up has
+ * finished the node refuses traffic through the readiness state, so only {@code
+ * /actuator/health/readiness} reports it and the root health endpoint stays up; the progress is
+ * shown by the {@link TranslatorWarmupHealthIndicator}.
+ */
+@Slf4j
+@Service
+public class TranslatorWarmupService {
+  public static final String WARMUP_TIMER = "madie.translator.warmup";
+
+  // The warm-up CQL has no includes, so the library service is never called with this token.
+  private static final String WARMUP_ACCESS_TOKEN = "warmup";
+
+  private final CqlConversionService cqlConversionService;
+  private final CqlParsingService cqlParsingService;
+  private final DataCriteriaService dataCriteriaService;
+  private final CqlLibraryService cqlLibraryService;
+  private final ResourcePatternResolver resourcePatternResolver =
+      new PathMatchingResourcePatternResolver();
+  private final MeterRegistry meterRegistry;
+  private final ApplicationEventPublisher eventPublisher;
+  private final boolean enabled;
+  private final int iterations;
+  private final String locations;
+
+  private volatile WarmupState state = WarmupState.PENDING;
+  private volatile Duration duration;
+
+  public TranslatorWarmupService(
+      CqlConversionService cqlConversionService,
+      CqlParsingService cqlParsingService,
+      DataCriteriaService dataCriteriaService,
+      CqlLibraryService cqlLibraryService,
+      MeterRegistry meterRegistry,
+      ApplicationEventPublisher eventPublisher,
+      @Value("${madie.warmup.enabled:true}") boolean enabled,
+      @Value("${madie.warmup.iterations:3}") int iterations,
+      @Value("${madie.warmup.locations:classpath:warmup/*.cql}") String locations) {
+    this.cqlConversionService = cqlConversionService;
+    this.cqlParsingService = cqlParsingService;
+    this.dataCriteriaService = dataCriteriaService;
+    this.cqlLibraryService = cqlLibraryService;
+    this.meterRegistry = meterRegistry;
+    this.eventPublisher = eventPublisher;
+    this.enabled = enabled;
+    this.iterations = iterations;
+    this.locations = locations;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onApplicationReady() {
+    if (!enabled) {
+      log.info("Translator warm-up is disabled");
+      state = WarmupState.SKIPPED;
+      return;
+    }
+    Thread thread = new Thread(this::warmUp, "translator-warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Spring Boot accepts traffic right after the application is ready, while the warm-up is still
+   * running, and other components may accept it again too; the node refuses it until the warm-up
+   * has finished.
+   */
+  @EventListener
+  public void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+    if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && !state.isFinished()) {
+      AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+    }
+  }
+
+  public WarmupState getState() {
+    return state;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /** Runs the warm-up on the calling thread. Failures are logged and never block readiness. */
+  void warmUp() {
+    state = WarmupState.RUNNING;
+    Timer.Sample sample = Timer.start(meterRegistry);
+    try {
+      List<String> cqls = loadWarmupCql();
+      log.info("Warming up translator with {} CQL file(s), {} times", cqls.size(), iterations);
+      for (int i = 0; i < iterations; i++) {
+        for (String cql : cqls) {
+          // A distinct comment per iteration keeps the analysis caches from short-circuiting
+          // the later iterations.
+          runOnce(cql + "\n// warm-up iteration " + i + "\n");
+        }
+      }
+      state = WarmupState.COMPLETED;
+    } catch (Exception e) {
+      log.error("Translator warm-up failed, continuing with a cold translator", e);
+      state = WarmupState.FAILED;
+    } finally {
+      long nanos = sample.stop(meterRegistry.timer(WARMUP_TIMER, "outcome", state.name()));
+      duration = Duration.ofNanos(nanos);
+      log.info("Translator warm-up finished with state {} in {} ms", state, duration.toMillis());
+      AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+  }
+
+  private void runOnce(String cql) {
+    try {
+      cqlLibraryService.setUpLibrarySourceProvider(cql, WARMUP_ACCESS_TOKEN);
+      cqlConversionService.processCqlDataWithErrors(
+          RequestData.builder()
+              .cqlData(cql)
+              .showWarnings(false)
+              .annotations(true)
+              .locators(true)
+              .disableListDemotion(true)
+              .disableListPromotion(true)
+              .disableMethodInvocation(false)
+              .validateUnits(true)
+              .resultTypes(true)
+              .build());
+      cqlParsingService.getCqlBuilderLookups(cql, WARMUP_ACCESS_TOKEN);
+      cqlParsingService.getCqlLookups(cql, Set.of("Initial Population"), WARMUP_ACCESS_TOKEN);
+      dataCriteriaService.getSourceDataCriteria(cql, WARMUP_ACCESS_TOKEN);
+    } catch (RuntimeException e) {
+      // The lookups are QDM oriented; a model they do not handle still warmed the translator.
+      log.warn("Translator warm-up step failed: {}", e.getMessage());
+    }
+  }
+
+  private List<String> loadWarmupCql() throws IOException {
+    List<String> cqls = new ArrayList<>();
+    for (Resource resource : resourcePatternResolver.getResources(locations)) {
+      cqls.add(resource.getContentAsString(StandardCharsets.UTF_8));
+    }
+    return cqls;
+  }
+
+  public enum WarmupState {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    SKIPPED;
+
+    public boolean isFinished() {
+      return this == COMPLETED || this == FAILED || this == SKIPPED;
+    }
+  }
+}
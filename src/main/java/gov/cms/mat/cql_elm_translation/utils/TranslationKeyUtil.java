@@ -0,0 +1,73 @@
+package gov.cms.mat.cql_elm_translation.utils;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Builds content-addressed keys for translation results. */
+public final class TranslationKeyUtil {
+  private static final Pattern INCLUDE_PATTERN =
+      Pattern.compile(
+          "^\\s*include\\s+(\"[^\"]+\"|[\\w.]+)(\\s+version\\s+'([^']+)')?", Pattern.MULTILINE);
+
+  private TranslationKeyUtil() {}
+
+  /**
+   * Canonical representation of every translator option carried by the request. Two requests with
+   * the same options string produce the same translator output for the same CQL.
+   */
+  public static String options(RequestData requestData) {
+    return "showWarnings=" + requestData.isShowWarnings() + "," + compilerOptions(requestData);
+  }
+
+  /** Canonical representation of the options that change the compiled ELM. */
+  public static String compilerOptions(RequestData requestData) {
+    return String.join(
+        ",",
+        "signatures=" + requestData.getSignatures(),
+        "annotations=" + requestData.isAnnotations(),
+        "locators=" + requestData.isLocators(),
+        "disableListDemotion=" + requestData.isDisableListDemotion(),
+        "disableListPromotion=" + requestData.isDisableListPromotion(),
+        "disableMethodInvocation=" + requestData.isDisableMethodInvocation(),
+        "validateUnits=" + requestData.isValidateUnits(),
+        "resultTypes=" + requestData.isResultTypes());
+  }
+
+  /**
+   * Collects the include declarations of the CQL as "name|version" pairs, sorted so that the order
+   * of the include statements does not change the key.
+   */
+  public static SortedSet<String> includes(String cql) {
+    SortedSet<String> includes = new TreeSet<>();
+    if (StringUtils.isBlank(cql)) {
+      return includes;
+    }
+    Matcher matcher = INCLUDE_PATTERN.matcher(cql);
+    while (matcher.find()) {
+      includes.add(StringUtils.strip(matcher.group(1), "\"") + "|" + matcher.group(3));
+    }
+    return includes;
+  }
+
+  /**
+   * SHA-256 key over the CQL text, the translator options, the translator version and the
+   * versions of the included libraries.
+   */
+  public static String forRequest(RequestData requestData, String translatorVersion) {
+    return digest(
+        translatorVersion,
+        options(requestData),
+        String.join(";", includes(requestData.getCqlData())),
+        requestData.getCqlData());
+  }
+
+  public static String digest(String... parts) {
+    return DigestUtils.sha256Hex(String.join("\n", parts));
+  }
+}
@@ -0,0 +1,83 @@
+package gov.cms.mat.cql_elm_translation.config;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class LibraryServiceHttpClientsTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final Set<InetSocketAddress> clientAddresses = ConcurrentHashMap.newKeySet();
+  private HttpServer server;
+  private String url;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/cql-libraries/cql",
+        exchange -> {
+          clientAddresses.add(exchange.getRemoteAddress());
+          byte[] body = "library Common version '1.0.000'".getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, body.length);
+          exchange.getResponseBody().write(body);
+          exchange.close();
+        });
+    server.start();
+    url = "http://localhost:" + server.getAddress().getPort() + "/cql-libraries/cql";
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  void testPooledClientReusesConnectionAndExportsPoolMetrics() throws Exception {
+    LibraryServiceHttpProperties properties = new LibraryServiceHttpProperties();
+    properties.getHttp().setMaxConnections(7);
+    ClientHttpRequestFactory requestFactory =
+        LibraryServiceHttpClients.requestFactory(properties, meterRegistry);
+    RestTemplate restTemplate = new RestTemplate(requestFactory);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(
+          "library Common version '1.0.000'", restTemplate.getForObject(url, String.class));
+    }
+
+    // one keep-alive connection served all fetches
+    assertEquals(1, clientAddresses.size());
+    assertEquals(
+        3,
+        meterRegistry
+            .timer(LibraryServiceHttpClients.ACQUIRE_TIMER, "pool", "library-service")
+            .count());
+    assertEquals(
+        7.0, meterRegistry.get("httpcomponents.httpclient.pool.total.max").gauge().value());
+    ((HttpComponentsClientHttpRequestFactory) requestFactory).destroy();
+  }
+
+  @Test
+  void testHttp2UsesTheJdkClient() {
+    LibraryServiceHttpProperties properties = new LibraryServiceHttpProperties();
+    properties.getHttp().setHttp2(true);
+
+    assertInstanceOf(
+        JdkClientHttpRequestFactory.class,
+        LibraryServiceHttpClients.requestFactory(properties, meterRegistry));
+  }
+}
@@ -0,0 +1,69 @@
+package gov.cms.mat.cql_elm_translation.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+class TranslationDeadlineInterceptorTest {
+  private TranslationDeadlineInterceptor interceptor;
+  private HandlerMethod handler;
+  private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+  @BeforeEach
+  void setUp() throws NoSuchMethodException {
+    MockEnvironment environment =
+        new MockEnvironment().withProperty("madie.deadline.endpoints.translate", "5s");
+    interceptor =
+        new TranslationDeadlineInterceptor(
+            environment, Duration.ofSeconds(60), Duration.ofSeconds(120));
+    handler = new HandlerMethod(this, getClass().getDeclaredMethod("translate"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    TranslationDeadline.clear();
+  }
+
+  @Test
+  void testUsesEndpointDeadline() {
+    interceptor.preHandle(new MockHttpServletRequest(), response, handler);
+    assertEquals(Duration.ofSeconds(5), TranslationDeadline.current().getTimeout());
+
+    interceptor.afterCompletion(new MockHttpServletRequest(), response, handler, null);
+    assertNull(TranslationDeadline.current());
+  }
+
+  @Test
+  void testUsesDefaultForOtherEndpoints() throws NoSuchMethodException {
+    HandlerMethod other = new HandlerMethod(this, getClass().getDeclaredMethod("setUp"));
+    assertEquals(
+        Duration.ofSeconds(60), interceptor.timeoutFor(new MockHttpServletRequest(), other));
+  }
+
+  @Test
+  void testHeaderOverridesDeadlineUpToMax() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(TranslationDeadlineInterceptor.DEADLINE_HEADER, "1500");
+    assertEquals(Duration.ofMillis(1500), interceptor.timeoutFor(request, handler));
+
+    request = new MockHttpServletRequest();
+    request.addHeader(TranslationDeadlineInterceptor.DEADLINE_HEADER, "600000");
+    assertEquals(Duration.ofSeconds(120), interceptor.timeoutFor(request, handler));
+
+    request = new MockHttpServletRequest();
+    request.addHeader(TranslationDeadlineInterceptor.DEADLINE_HEADER, "soon");
+    assertEquals(Duration.ofSeconds(5), interceptor.timeoutFor(request, handler));
+  }
+
+  void translate() {}
+}
@@ -76,4 +76,13 @@ class SecurityFilterTest {
     securityFilter.doFilter(servletRequest, servletResponse, filterChain);
     assertEquals(200, servletResponse.getStatus());
   }
+
+  @Test
+  void testDoFilterIfReadinessProbeIsWhiteListed() throws ServletException, IOException {
+    filterChain = mock(FilterChain.class);
+    servletRequest.setRequestURI("/actuator/health/readiness");
+    servletRequest.setMethod("GET");
+    securityFilter.doFilter(servletRequest, servletResponse, filterChain);
+    assertEquals(200, servletResponse.getStatus());
+  }
 }
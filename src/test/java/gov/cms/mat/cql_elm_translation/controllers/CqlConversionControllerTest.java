@@ -1,13 +1,17 @@
 package gov.cms.mat.cql_elm_translation.controllers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 
-import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,24 +19,33 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
 
 import gov.cms.mat.cql.dto.CqlConversionPayload;
 import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
 import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
 import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql_elm_translation.dto.BatchTranslationItem;
+import gov.cms.mat.cql_elm_translation.dto.BatchTranslationResult;
+import gov.cms.mat.cql_elm_translation.service.BatchTranslationExecutor;
 import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.cache.CqlConversionPayloadCache;
+import gov.cms.mat.cql_elm_translation.service.incremental.IncrementalTranslationService;
+import gov.cms.mat.cql_elm_translation.service.TranslationETags;
+import gov.cms.mat.cql_elm_translation.service.cache.IncludeTreeDigest;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
 
 @ExtendWith(MockitoExtension.class)
 class CqlConversionControllerTest implements ResourceFileUtil {
-  private static final String translatorOptionsTag = "\"translatorOptions\"";
 
   @Mock private CqlConversionService cqlConversionService;
   @Mock private CqlLibraryService cqlLibraryService;
+  @Mock private CqlConversionPayloadCache cqlConversionPayloadCache;
+  @Mock private IncrementalTranslationService incrementalTranslationService;
   @InjectMocks private CqlConversionController cqlConversionController;
 
   @Test
@@ -40,89 +53,297 @@ class CqlConversionControllerTest implements ResourceFileUtil {
     String cqlData = getData("/cv_populations.cql");
     String result = getData("/cv_populations.json");
     CqlConversionPayload payload = CqlConversionPayload.builder().json(result).build();
-    Mockito.when(cqlConversionService.processCqlDataWithErrors(any(RequestData.class)))
+    Mockito.when(
+            cqlConversionService.processCqlDataWithErrors(any(RequestData.class), any(), any()))
         .thenReturn(payload);
+    Mockito.when(cqlConversionPayloadCache.keyFor(any(RequestData.class), any()))
+        .thenReturn("key");
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
 
     CqlConversionPayload cqlConversionPayload =
         cqlConversionController.cqlToElmJson(
-            cqlData, null, true, true, true, true, true, true, true, true, "test");
+            cqlData,
+            null,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            "both",
+            "test",
+            null,
+            new MockHttpServletRequest(),
+            response);
 
     assertEquals(result, cqlConversionPayload.getJson());
-    Mockito.verify(cqlConversionService).processCqlDataWithErrors(any());
+    assertEquals("MISS", response.getHeader(CqlConversionController.TRANSLATION_CACHE_HEADER));
+    Mockito.verify(cqlConversionService).processCqlDataWithErrors(any(), any(), any());
+    Mockito.verify(cqlConversionPayloadCache).put(any(), any(CqlConversionPayload.class));
   }
 
   @Test
-  void translatorOptionsRemoverNoErrors() {
-    String json = getData("/fhir4_std_lib_no_errors.json");
-
-    assertTrue(json.contains(translatorOptionsTag));
-
-    CqlConversionController.TranslatorOptionsRemover translatorOptionsRemover =
-        new CqlConversionController.TranslatorOptionsRemover(json);
-
-    String cleaned = translatorOptionsRemover.clean();
+  void cqlToElmJsonServedFromCache() {
+    String cqlData = getData("/cv_populations.cql");
+    CqlConversionPayload payload =
+        CqlConversionPayload.builder().json(getData("/cv_populations.json")).build();
+    Mockito.when(cqlConversionPayloadCache.isKeyedWithoutFetch(anyString())).thenReturn(true);
+    Mockito.when(cqlConversionPayloadCache.keyFor(any(RequestData.class), any()))
+        .thenReturn("key");
+    Mockito.when(cqlConversionPayloadCache.get(anyString())).thenReturn(payload);
+    MockHttpServletResponse response = new MockHttpServletResponse();
 
-    assertFalse(cleaned.contains(translatorOptionsTag));
+    CqlConversionPayload cqlConversionPayload =
+        cqlConversionController.cqlToElmJson(
+            cqlData,
+            null,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            "both",
+            "test",
+            null,
+            new MockHttpServletRequest(),
+            response);
+
+    assertEquals(payload, cqlConversionPayload);
+    assertEquals("HIT", response.getHeader(CqlConversionController.TRANSLATION_CACHE_HEADER));
+    Mockito.verifyNoInteractions(cqlConversionService, cqlLibraryService);
   }
 
   @Test
-  void translatorOptionsRemoverErrors() {
-
-    String json = getData("/fhir4_std_lib_errors.json");
-
-    assertTrue(json.contains(translatorOptionsTag));
-
-    CqlConversionController.TranslatorOptionsRemover translatorOptionsRemover =
-        new CqlConversionController.TranslatorOptionsRemover(json);
+  void cqlToElmJsonForEditorSession() {
+    String cqlData = getData("/cv_populations.cql");
+    CqlConversionPayload payload =
+        CqlConversionPayload.builder().json(getData("/cv_populations.json")).build();
+    Mockito.when(
+            incrementalTranslationService.translate(
+                Mockito.eq("session-1"), any(RequestData.class), any(), any()))
+        .thenReturn(new IncrementalTranslationService.Result(payload, true));
+    MockHttpServletResponse response = new MockHttpServletResponse();
 
-    String cleaned = translatorOptionsRemover.clean();
-    assertFalse(cleaned.contains(translatorOptionsTag));
+    CqlConversionPayload cqlConversionPayload =
+        cqlConversionController.cqlToElmJson(
+            cqlData,
+            null,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            "json",
+            "test",
+            "session-1",
+            new MockHttpServletRequest(),
+            response);
+
+    assertEquals(payload, cqlConversionPayload);
+    assertEquals(
+        "INCREMENTAL", response.getHeader(CqlConversionController.TRANSLATION_CACHE_HEADER));
+    Mockito.verify(cqlConversionPayloadCache, Mockito.never()).put(any(), any());
   }
 
   @Test
-  void translatorOptionsRemoverNoAnnotations() {
-
-    String json = getData("/fhir4_std_lib_no_annotations.json");
-
-    assertFalse(json.contains(translatorOptionsTag));
-
-    CqlConversionController.TranslatorOptionsRemover translatorOptionsRemover =
-        new CqlConversionController.TranslatorOptionsRemover(json);
-
-    String cleaned = translatorOptionsRemover.clean();
+  void cqlToElmJsonForEditorSessionWithXmlIsTranslatedInFull() {
+    String cqlData = getData("/cv_populations.cql");
+    CqlConversionPayload payload =
+        CqlConversionPayload.builder()
+            .json(getData("/cv_populations.json"))
+            .xml("<library/>")
+            .build();
+    Mockito.when(
+            cqlConversionService.processCqlDataWithErrors(any(RequestData.class), any(), any()))
+        .thenReturn(payload);
+    MockHttpServletResponse response = new MockHttpServletResponse();
 
-    assertFalse(json.contains(translatorOptionsTag));
-    assertEquals(json, cleaned);
+    CqlConversionPayload cqlConversionPayload =
+        cqlConversionController.cqlToElmJson(
+            cqlData,
+            null,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            true,
+            "both",
+            "test",
+            "session-1",
+            new MockHttpServletRequest(),
+            response);
+
+    assertEquals("<library/>", cqlConversionPayload.getXml());
+    assertEquals("MISS", response.getHeader(CqlConversionController.TRANSLATION_CACHE_HEADER));
+    Mockito.verifyNoInteractions(incrementalTranslationService);
   }
 
   @Test
-  void translatorOptionsRemoverEmptyAnnotations()
-      throws JsonMappingException, JsonProcessingException {
-
-    String json = getData("/fhir4_std_lib_empty_array_annotations.json");
-
-    assertFalse(json.contains(translatorOptionsTag));
-
-    CqlConversionController.TranslatorOptionsRemover translatorOptionsRemover =
-        new CqlConversionController.TranslatorOptionsRemover(json);
+  void cqlToElmJsonAnswersMatchingETagWithoutTranslating() {
+    String cqlData = getData("/cv_populations.cql");
+    Mockito.when(
+            cqlConversionService.processCqlDataWithErrors(any(RequestData.class), any(), any()))
+        .thenReturn(CqlConversionPayload.builder().json(getData("/cv_populations.json")).build());
+    TranslatorVersionConfig translatorVersionConfig = new TranslatorVersionConfig();
+    translatorVersionConfig.setCurrentTranslatorVersion("3.14.0");
+    TranslationETags translationETags =
+        new TranslationETags(translatorVersionConfig, new IncludeTreeDigest("0\\.0\\.000"), true);
+    CqlConversionController controller =
+        new CqlConversionController(
+            cqlConversionService,
+            cqlLibraryService,
+            cqlConversionPayloadCache,
+            null,
+            incrementalTranslationService,
+            translationETags);
+
+    MockHttpServletResponse first = new MockHttpServletResponse();
+    assertNotNull(translateWithETag(controller, cqlData, null, first));
+    String etag = first.getHeader(HttpHeaders.ETAG);
+    assertNotNull(etag);
+
+    MockHttpServletResponse second = new MockHttpServletResponse();
+    assertNull(translateWithETag(controller, cqlData, etag, second));
+    assertEquals(HttpStatus.NOT_MODIFIED.value(), second.getStatus());
+    assertEquals(etag, second.getHeader(HttpHeaders.ETAG));
+
+    MockHttpServletResponse edited = new MockHttpServletResponse();
+    assertNotNull(translateWithETag(controller, cqlData + "\n", etag, edited));
+    assertEquals(HttpStatus.OK.value(), edited.getStatus());
+    Mockito.verify(cqlConversionService, Mockito.times(2))
+        .processCqlDataWithErrors(any(), any(), any());
+  }
 
-    String cleaned = translatorOptionsRemover.clean();
+  @Test
+  void cqlToElmJsonCachedDraftTranslationIsTaggedByTheSourcesThisRequestFetched() {
+    String cqlData =
+        """
+        library Measure version '1.0.000'
+        include Draft version '0.0.000' called Draft
+        """;
+    Mockito.when(cqlConversionService.setUpLibrarySources(anyString(), any(), any()))
+        .thenReturn(Map.of("Draft|0.0.000", "library Draft version '0.0.000'"))
+        .thenReturn(Map.of("Draft|0.0.000", "library Draft version '0.0.000'\ndefine X: 1"))
+        .thenReturn(Map.of());
+    Mockito.when(cqlConversionPayloadCache.keyFor(any(RequestData.class), any()))
+        .thenReturn("key");
+    Mockito.when(cqlConversionPayloadCache.get(anyString()))
+        .thenReturn(CqlConversionPayload.builder().json("{}").build());
+    TranslatorVersionConfig translatorVersionConfig = new TranslatorVersionConfig();
+    translatorVersionConfig.setCurrentTranslatorVersion("3.14.0");
+    CqlConversionController controller =
+        new CqlConversionController(
+            cqlConversionService,
+            cqlLibraryService,
+            cqlConversionPayloadCache,
+            null,
+            incrementalTranslationService,
+            new TranslationETags(
+                translatorVersionConfig, new IncludeTreeDigest("0\\.0\\.000"), true));
+
+    MockHttpServletResponse first = new MockHttpServletResponse();
+    translateWithETag(controller, cqlData, null, first);
+    MockHttpServletResponse edited = new MockHttpServletResponse();
+    translateWithETag(controller, cqlData, first.getHeader(HttpHeaders.ETAG), edited);
+    MockHttpServletResponse unfetched = new MockHttpServletResponse();
+    translateWithETag(controller, cqlData, null, unfetched);
+
+    assertEquals("HIT", edited.getHeader(CqlConversionController.TRANSLATION_CACHE_HEADER));
+    assertNotNull(first.getHeader(HttpHeaders.ETAG));
+    assertEquals(HttpStatus.OK.value(), edited.getStatus());
+    assertNotEquals(first.getHeader(HttpHeaders.ETAG), edited.getHeader(HttpHeaders.ETAG));
+    assertNull(unfetched.getHeader(HttpHeaders.ETAG));
+    Mockito.verify(cqlConversionService, Mockito.never())
+        .processCqlDataWithErrors(any(), any(), any());
+  }
 
-    assertFalse(cleaned.contains(translatorOptionsTag));
-    ObjectMapper objectMapper = new ObjectMapper();
-    JsonNode rootNode = objectMapper.readTree(cleaned);
-    JsonNode libraryNode = rootNode.get("library");
-    JsonNode annotationNode = libraryNode.get("annotation");
-    assertNull(annotationNode);
+  private CqlConversionPayload translateWithETag(
+      CqlConversionController controller,
+      String cqlData,
+      String ifNoneMatch,
+      MockHttpServletResponse response) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    if (ifNoneMatch != null) {
+      request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+    }
+    return controller.cqlToElmJson(
+        cqlData,
+        null,
+        true,
+        true,
+        true,
+        true,
+        true,
+        true,
+        true,
+        true,
+        "both",
+        "test",
+        null,
+        request,
+        response);
   }
 
   @Test
-  void translatorOptionsRemoverBadJson() {
+  void cqlToElmJsonBatchKeepsInputOrder() {
+    String result = getData("/cv_populations.json");
+    Mockito.when(
+            cqlConversionService.processCqlDataWithErrors(any(RequestData.class), any(), any()))
+        .thenAnswer(invocation -> CqlConversionPayload.builder().json(result).build());
+    CqlConversionController controller = batchController(3);
+    List<BatchTranslationItem> items =
+        List.of(
+            BatchTranslationItem.builder().id("first").cql(getData("/cv_populations.cql")).build(),
+            BatchTranslationItem.builder().id("blank").cql(" ").build(),
+            BatchTranslationItem.builder().id("third").cql(getData("/fhir.cql")).build());
+
+    List<BatchTranslationResult> results = controller.cqlToElmJsonBatch(items, "test");
+
+    assertEquals(3, results.size());
+    assertEquals(
+        List.of("first", "blank", "third"),
+        results.stream().map(BatchTranslationResult::getId).toList());
+    assertEquals(result, results.get(0).getPayload().getJson());
+    assertNull(results.get(1).getPayload());
+    assertEquals("CQL is required", results.get(1).getError());
+    assertEquals(2, results.get(2).getIndex());
+    assertNull(results.get(2).getError());
+    Mockito.verify(cqlConversionService, Mockito.times(2))
+        .processCqlDataWithErrors(any(), any(), any());
+  }
 
-    String json = "{this isn't json/>";
-    CqlConversionController.TranslatorOptionsRemover translatorOptionsRemover =
-        new CqlConversionController.TranslatorOptionsRemover(json);
+  @Test
+  void cqlToElmJsonBatchRejectsOversizedBatch() {
+    CqlConversionController controller = batchController(2);
+    List<BatchTranslationItem> items =
+        Collections.nCopies(3, BatchTranslationItem.builder().cql("library Test").build());
+
+    ResponseStatusException exception =
+        assertThrows(
+            ResponseStatusException.class, () -> controller.cqlToElmJsonBatch(items, "test"));
+    assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    Mockito.verifyNoInteractions(cqlConversionService);
+  }
 
-    assertThrows(UncheckedIOException.class, () -> translatorOptionsRemover.clean());
+  private CqlConversionController batchController(int maxItems) {
+    return new CqlConversionController(
+        cqlConversionService,
+        cqlLibraryService,
+        cqlConversionPayloadCache,
+        new BatchTranslationExecutor(2, 1, maxItems, Duration.ofSeconds(30)),
+        incrementalTranslationService,
+        null);
   }
 }
@@ -1,9 +1,17 @@
 package gov.cms.mat.cql_elm_translation.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import gov.cms.madie.cql_elm_translator.dto.CqlBuilderLookup;
+import gov.cms.madie.models.dto.TranslatedLibrary;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
 import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService.LibraryBuilders;
 import gov.cms.mat.cql_elm_translation.service.CqlParsingService;
 import gov.cms.mat.cql_elm_translation.service.DataCriteriaService;
+import gov.cms.mat.cql_elm_translation.service.TranslationETags;
+import gov.cms.mat.cql_elm_translation.service.cache.ElmBaselineStore;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,14 +22,18 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 
@@ -31,9 +43,95 @@ public class CqlToolsControllerMvcTest {
   @MockBean private DataCriteriaService dataCriteriaService;
   @MockBean private CqlConversionService cqlConversionService;
   @MockBean private CqlParsingService cqlParsingService;
+  @MockBean private TranslationETags translationETags;
+  @MockBean private ElmBaselineStore elmBaselineStore;
 
   @Autowired private MockMvc mockMvc;
 
+  @Test
+  void testGetLibraryElmsEmbedsElmJsonForV2MediaType() throws Exception {
+    TranslatedLibrary library =
+        TranslatedLibrary.builder()
+            .name("Test")
+            .version("1.0.000")
+            .elmJson("{\"library\":{\"identifier\":{\"id\":\"Test\"}}}")
+            .build();
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(new LibraryBuilders(List.of(() -> library), true));
+
+    var results =
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.put("/cql/elm")
+                    .with(user(TEST_USER_ID))
+                    .with(csrf())
+                    .header(HttpHeaders.AUTHORIZATION, TEST_USER_ID)
+                    .accept(ElmMediaTypes.ELM_PAYLOAD_V2)
+                    .content("test cql")
+                    .contentType(MediaType.TEXT_PLAIN_VALUE))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    results = mockMvc.perform(asyncDispatch(results)).andReturn();
+
+    assertThat(results.getResponse().getStatus(), is(equalTo(HttpStatus.SC_OK)));
+    JsonNode body = new ObjectMapper().readTree(results.getResponse().getContentAsString());
+    assertThat(body.get(0).get("elmJson").at("/library/identifier/id").asText(), is("Test"));
+  }
+
+  @Test
+  void testGetLibraryElmsKeepsElmJsonStringByDefault() throws Exception {
+    TranslatedLibrary library = TranslatedLibrary.builder().elmJson("{\"library\":{}}").build();
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(new LibraryBuilders(List.of(() -> library), true));
+
+    var results =
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.put("/cql/elm")
+                    .with(user(TEST_USER_ID))
+                    .with(csrf())
+                    .header(HttpHeaders.AUTHORIZATION, TEST_USER_ID)
+                    .content("test cql")
+                    .contentType(MediaType.TEXT_PLAIN_VALUE))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    results = mockMvc.perform(asyncDispatch(results)).andReturn();
+
+    JsonNode body = new ObjectMapper().readTree(results.getResponse().getContentAsString());
+    assertThat(body.get(0).get("elmJson").isTextual(), is(true));
+  }
+
+  @Test
+  void testGetLibraryElmsWritesCborWhenAccepted() throws Exception {
+    TranslatedLibrary library =
+        TranslatedLibrary.builder()
+            .name("Test")
+            .elmJson("{\"library\":{\"type\":\"Library\"}}")
+            .build();
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(new LibraryBuilders(List.of(() -> library), true));
+
+    var results =
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.put("/cql/elm")
+                    .with(user(TEST_USER_ID))
+                    .with(csrf())
+                    .header(HttpHeaders.AUTHORIZATION, TEST_USER_ID)
+                    .accept(ElmMediaTypes.CBOR)
+                    .content("test cql")
+                    .contentType(MediaType.TEXT_PLAIN_VALUE))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    results = mockMvc.perform(asyncDispatch(results)).andReturn();
+
+    assertThat(results.getResponse().getContentType(), is(ElmMediaTypes.CBOR_VALUE));
+    JsonNode body =
+        new ObjectMapper(new CBORFactory())
+            .readTree(results.getResponse().getContentAsByteArray());
+    assertThat(body.get(0).get("elmJson").at("/library/type").asText(), is("Library"));
+  }
+
   @Test
   void testGetCqlBuilderLookups() throws Exception {
     var p = CqlBuilderLookup.Lookup.builder().name("Parameter").logic("abc").build();
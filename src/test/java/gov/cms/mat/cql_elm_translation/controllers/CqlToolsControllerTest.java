@@ -5,12 +5,14 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,11 +21,15 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gov.cms.madie.models.dto.TranslatedLibrary;
 
 import gov.cms.mat.cql_elm_translation.dto.CqlLookupRequest;
 import gov.cms.madie.cql_elm_translator.dto.CqlBuilderLookup;
+import gov.cms.madie.cql_elm_translator.exceptions.InternalServerException;
 import gov.cms.mat.cql_elm_translation.dto.CqlLookups;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
 import gov.cms.mat.cql_elm_translation.service.CqlParsingService;
 
 import org.cqframework.cql.tools.formatter.CqlFormatterVisitor;
@@ -33,12 +39,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import gov.cms.madie.models.measure.Measure;
 import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
 import gov.cms.madie.cql_elm_translator.dto.SourceDataCriteria;
 import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService.LibraryBuilders;
 import gov.cms.mat.cql_elm_translation.service.DataCriteriaService;
 import gov.cms.madie.cql_elm_translator.utils.cql.parsing.model.CQLDefinition;
 
@@ -74,26 +83,110 @@ class CqlToolsControllerTest implements ResourceFileUtil {
     TranslatedLibrary translatedLibrary2 =
         TranslatedLibrary.builder().cql("cql 2").elmJson("elm json 2").elmXml("elm xml 2").build();
 
-    when(cqlConversionService.getTranslatedLibrariesForCql(anyString(), anyString()))
-        .thenReturn(List.of(translatedLibrary1, translatedLibrary2));
-    var result = cqlToolsController.getLibraryElms("test cql", "john");
-    List<TranslatedLibrary> libraries = result.getBody();
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(
+            new LibraryBuilders(List.of(() -> translatedLibrary1, () -> translatedLibrary2), true));
+    var result = cqlToolsController.getLibraryElms("test cql", "both", false, null, null, "john");
+    assertThat(result.getHeaders().getContentType(), is(equalTo(MediaType.APPLICATION_JSON)));
+    String body = stream(result.getBody());
+    assertThat(body.contains("\n"), is(false));
+    JsonNode libraries = new ObjectMapper().readTree(body);
     assertThat(libraries.size(), is(equalTo(2)));
-    assertThat(libraries.get(0).getCql(), is(equalTo(translatedLibrary1.getCql())));
-    assertThat(libraries.get(0).getElmJson(), is(equalTo(translatedLibrary1.getElmJson())));
-    assertThat(libraries.get(0).getElmXml(), is(equalTo(translatedLibrary1.getElmXml())));
-    assertThat(libraries.get(1).getCql(), is(equalTo(translatedLibrary2.getCql())));
-    assertThat(libraries.get(1).getElmJson(), is(equalTo(translatedLibrary2.getElmJson())));
-    assertThat(libraries.get(1).getElmXml(), is(equalTo(translatedLibrary2.getElmXml())));
+    assertThat(libraries.get(0).get("cql").asText(), is(equalTo(translatedLibrary1.getCql())));
+    assertThat(
+        libraries.get(0).get("elmJson").asText(), is(equalTo(translatedLibrary1.getElmJson())));
+    assertThat(
+        libraries.get(0).get("elmXml").asText(), is(equalTo(translatedLibrary1.getElmXml())));
+    assertThat(libraries.get(1).get("cql").asText(), is(equalTo(translatedLibrary2.getCql())));
+    assertThat(
+        libraries.get(1).get("elmJson").asText(), is(equalTo(translatedLibrary2.getElmJson())));
+    assertThat(
+        libraries.get(1).get("elmXml").asText(), is(equalTo(translatedLibrary2.getElmXml())));
+  }
+
+  @Test
+  void testGetLibraryElmsPrettyPrintsAndCompactsEmbeddedElmForV2() throws IOException {
+    TranslatedLibrary library =
+        TranslatedLibrary.builder().name("Test").elmJson("{\n  \"library\" : { }\n}").build();
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(new LibraryBuilders(List.of(() -> library), true));
+
+    var result =
+        cqlToolsController.getLibraryElms(
+            "test cql", "json", true, ElmMediaTypes.ELM_PAYLOAD_V2_VALUE, null, "john");
+    assertThat(result.getHeaders().getContentType(), is(equalTo(ElmMediaTypes.ELM_PAYLOAD_V2)));
+    String body = stream(result.getBody());
+    assertThat(body.contains("\n"), is(true));
+    JsonNode libraries = new ObjectMapper().readTree(body);
+    assertThat(libraries.get(0).get("elmJson").has("library"), is(true));
+  }
+
+  @Test
+  void testGetLibraryElmsForBlankCql() throws IOException {
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(new LibraryBuilders(List.of(), true));
+    var result = cqlToolsController.getLibraryElms(" ", "both", false, null, null, "john");
+    assertThat(stream(result.getBody()), is(equalTo("[]")));
+  }
+
+  @Test
+  void testGetLibraryElmsThrowsException() {
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(
+            new LibraryBuilders(
+                List.of(
+                    () -> {
+                      throw new InternalServerException("An error occurred");
+                    }),
+                true));
+
+    assertThrows(
+        InternalServerException.class,
+        () -> cqlToolsController.getLibraryElms("test cql", "both", false, null, null, "john"));
+  }
+
+  @Test
+  void testGetLibraryElmsLeavesArrayOpenWhenIncludeFails() throws IOException {
+    TranslatedLibrary library = TranslatedLibrary.builder().cql("cql 1").build();
+    when(cqlConversionService.getTranslatedLibraryBuildersForCql(anyString(), anyString(), any()))
+        .thenReturn(
+            new LibraryBuilders(
+                List.of(
+                    () -> library,
+                    () -> {
+                      throw new InternalServerException("An error occurred");
+                    }),
+                true));
+    var result = cqlToolsController.getLibraryElms("test cql", "both", false, null, null, "john");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThrows(InternalServerException.class, () -> result.getBody().writeTo(out));
+    assertThat(out.toString(StandardCharsets.UTF_8).endsWith("]"), is(false));
   }
 
   @Test
-  void testGetLibraryElmsThrowsException() throws IOException {
-    when(cqlConversionService.getTranslatedLibrariesForCql(anyString(), anyString()))
-        .thenThrow(IOException.class);
-    var result = cqlToolsController.getLibraryElms("test cql", "john");
-    List<TranslatedLibrary> libraries = result.getBody();
-    assertNull(libraries);
+  void testLibraryContentTypeFollowsQualityValues() {
+    assertThat(
+        CqlToolsController.libraryContentType(
+            "application/json;q=0.5, " + ElmMediaTypes.CBOR_VALUE),
+        is(equalTo(ElmMediaTypes.CBOR)));
+    assertThat(
+        CqlToolsController.libraryContentType(
+            ElmMediaTypes.SMILE_VALUE + ";q=0.2, application/json;q=0.8"),
+        is(equalTo(MediaType.APPLICATION_JSON)));
+    assertThat(
+        CqlToolsController.libraryContentType(ElmMediaTypes.CBOR_VALUE + ";q=0"),
+        is(equalTo(MediaType.APPLICATION_JSON)));
+    assertThat(
+        CqlToolsController.libraryContentType(
+            ElmMediaTypes.SMILE_VALUE + ", " + ElmMediaTypes.CBOR_VALUE),
+        is(equalTo(ElmMediaTypes.SMILE)));
+  }
+
+  private String stream(StreamingResponseBody body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    return out.toString(StandardCharsets.UTF_8);
   }
 
   @Test
@@ -0,0 +1,85 @@
+package gov.cms.mat.cql_elm_translation.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.dto.ElmMediaTypes;
+import gov.cms.mat.cql_elm_translation.service.cache.ElmBaselineStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class ElmPatchResponseAdviceTest {
+  private static final String ETAG = "\"full\"";
+  private static final String VARY = "Accept, " + CqlConversionController.ELM_BASELINE_HEADER;
+  private static final String BASELINE =
+      "{\"library\":{\"annotation\":\"" + "x".repeat(200) + "\",\"version\":\"1\"}}";
+  private static final String EDITED =
+      "{\"library\":{\"annotation\":\"" + "x".repeat(200) + "\",\"version\":\"2\"}}";
+
+  private final ElmBaselineStore elmBaselineStore =
+      new ElmBaselineStore(new ConcurrentMapCacheManager(ElmBaselineStore.CACHE_NAME));
+  private final ElmPatchResponseAdvice advice = new ElmPatchResponseAdvice(elmBaselineStore);
+
+  @Test
+  void testPatchVariesByBaselineAndHasItsOwnETag() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(
+        CqlConversionController.ELM_BASELINE_HEADER, elmBaselineStore.put(BASELINE));
+    MockHttpServletResponse response = taggedResponse();
+
+    Object body = write(CqlConversionPayload.builder().json(EDITED).build(), request, response);
+
+    assertInstanceOf(JsonNode.class, body);
+    assertEquals(ElmMediaTypes.JSON_PATCH_VALUE, response.getContentType());
+    assertEquals(VARY, response.getHeader(HttpHeaders.VARY));
+    assertEquals(1, response.getHeaders(HttpHeaders.ETAG).size());
+    assertNotNull(response.getHeader(HttpHeaders.ETAG));
+    assertNotEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+  }
+
+  @Test
+  void testFullPayloadKeepsItsETagAndStillVariesByBaseline() {
+    MockHttpServletResponse response = taggedResponse();
+    CqlConversionPayload payload = CqlConversionPayload.builder().json(EDITED).build();
+
+    Object body = write(payload, new MockHttpServletRequest(), response);
+
+    assertSame(payload, body);
+    assertEquals(ElmMediaTypes.ELM_JSON_VALUE, response.getContentType());
+    assertEquals(VARY, response.getHeader(HttpHeaders.VARY));
+    assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+  }
+
+  private static MockHttpServletResponse taggedResponse() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    response.setHeader(HttpHeaders.ETAG, ETAG);
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    return response;
+  }
+
+  private Object write(
+      Object body, MockHttpServletRequest request, MockHttpServletResponse response) {
+    ServletServerHttpResponse serverResponse = new ServletServerHttpResponse(response);
+    Object written =
+        advice.beforeBodyWrite(
+            body,
+            null,
+            ElmMediaTypes.JSON_PATCH,
+            null,
+            new ServletServerHttpRequest(request),
+            serverResponse);
+    // the message converter sends the headers when it writes the body
+    serverResponse.close();
+    return written;
+  }
+}
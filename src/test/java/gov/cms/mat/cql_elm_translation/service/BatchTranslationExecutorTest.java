@@ -0,0 +1,57 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+
+class BatchTranslationExecutorTest {
+
+  @AfterEach
+  void tearDown() {
+    TranslationDeadline.clear();
+  }
+
+  @Test
+  void testEveryItemRunsWithItsOwnDeadline() {
+    BatchTranslationExecutor executor =
+        new BatchTranslationExecutor(2, 1, 10, Duration.ofMinutes(1));
+    TranslationDeadline.start(Duration.ZERO);
+
+    List<String> results =
+        executor.mapInOrder(
+            List.of("a", "b", "c", "d"),
+            (index, item) -> {
+              TranslationDeadline.checkpoint(TranslationDeadline.STAGE_COMPILE);
+              return item;
+            },
+            (index, e) -> "failed");
+
+    assertEquals(List.of("a", "b", "c", "d"), results);
+    executor.destroy();
+  }
+
+  @Test
+  void testItemOutOfTimeFailsAlone() {
+    BatchTranslationExecutor executor = new BatchTranslationExecutor(2, 1, 10, Duration.ZERO);
+
+    List<String> results =
+        executor.mapInOrder(
+            List.of("a", "b"),
+            (index, item) -> {
+              if (index == 1) {
+                TranslationDeadline.checkpoint(TranslationDeadline.STAGE_COMPILE);
+              }
+              return item;
+            },
+            (index, e) -> "failed");
+
+    assertEquals(List.of("a", "failed"), results);
+    executor.destroy();
+  }
+}
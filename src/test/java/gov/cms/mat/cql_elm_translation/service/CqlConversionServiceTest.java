@@ -7,6 +7,7 @@ import gov.cms.madie.models.dto.TranslatedLibrary;
 import gov.cms.mat.cql.CqlTextParser;
 import gov.cms.mat.cql.dto.CqlConversionPayload;
 import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
+import gov.cms.mat.cql_elm_translation.dto.ElmArtifacts;
 import gov.cms.madie.cql_elm_translator.utils.cql.cql_translator.MadieLibrarySourceProvider;
 import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
 import gov.cms.madie.cql_elm_translator.exceptions.InternalServerException;
@@ -219,6 +220,48 @@ class CqlConversionServiceTest implements ResourceFileUtil {
     assertThat(translatedLibrary.getCql(), is(equalTo("test cql")));
   }
 
+  @Test
+  void testProcessCqlDataWithErrorsSerializesSelectedArtifacts() throws JsonProcessingException {
+    RequestData data = requestData.toBuilder().cqlData(getData("/non_supported_model.cql")).build();
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    CqlConversionPayload json = service.processCqlDataWithErrors(data, ElmArtifacts.JSON);
+    assertNull(json.getXml());
+    assertFalse(objectMapper.readTree(json.getJson()).path("library").isMissingNode());
+
+    CqlConversionPayload errors = service.processCqlDataWithErrors(data, ElmArtifacts.ERRORS);
+    assertNull(errors.getXml());
+    JsonNode errorsOnly = objectMapper.readTree(errors.getJson());
+    assertTrue(errorsOnly.path("library").isMissingNode());
+    assertFalse(errorsOnly.path("errorExceptions").isEmpty());
+
+    CqlConversionPayload xml = service.processCqlDataWithErrors(data, ElmArtifacts.XML);
+    assertNotNull(xml.getXml());
+    assertTrue(objectMapper.readTree(xml.getJson()).path("library").isMissingNode());
+  }
+
+  @Test
+  void testBuildTranslatedLibraryWithSelectedArtifacts() {
+    Library library = new Library();
+    VersionedIdentifier identifier = new VersionedIdentifier();
+    identifier.setId("test");
+    identifier.setVersion("0.0.000");
+    library.setIdentifier(identifier);
+    CompiledLibrary compiledLibrary = new CompiledLibrary();
+    compiledLibrary.setLibrary(library);
+
+    TranslatedLibrary xml =
+        service.buildTranslatedLibrary(compiledLibrary, Map.of(), ElmArtifacts.XML);
+    assertNull(xml.getElmJson());
+    assertNotNull(xml.getElmXml());
+
+    TranslatedLibrary errors =
+        service.buildTranslatedLibrary(compiledLibrary, Map.of(), ElmArtifacts.ERRORS);
+    assertNull(errors.getElmJson());
+    assertNull(errors.getElmXml());
+    assertThat(errors.getName(), is(equalTo("test")));
+  }
+
   @Test
   void testBuildTranslatedLibraryWhenExceptionThrown() throws IOException {
     Library library = new Library();
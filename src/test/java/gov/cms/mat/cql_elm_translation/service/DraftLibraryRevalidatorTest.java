@@ -0,0 +1,139 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DraftLibraryRevalidatorTest {
+  private static final String TOKEN = "Bearer token";
+  private static final VersionedIdentifier DRAFT =
+      new VersionedIdentifier().withId("Helpers").withVersion("0.0.000");
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicReference<String> source =
+      new AtomicReference<>("library Helpers version '0.0.000'");
+  private final AtomicInteger revision = new AtomicInteger(1);
+  private final List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+  private HttpServer server;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/api/cql-libraries/cql",
+        exchange -> {
+          String etag = "\"" + revision.get() + "\"";
+          String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+          ifNoneMatch.add(String.valueOf(condition));
+          exchange.getResponseHeaders().set("ETag", etag);
+          if (etag.equals(condition)) {
+            exchange.sendResponseHeaders(304, -1);
+          } else {
+            byte[] body = source.get().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+          }
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  void testExpiredDraftIsRevalidatedAndRefetchedOnlyWhenChanged() {
+    DraftLibraryRevalidator revalidator = revalidator(Duration.ZERO);
+
+    assertEquals("library Helpers version '0.0.000'", revalidator.fetch(DRAFT, TOKEN));
+    assertEquals("library Helpers version '0.0.000'", revalidator.fetch(DRAFT, TOKEN));
+    source.set("library Helpers version '0.0.000'\ndefine \"Edited\": true");
+    revision.incrementAndGet();
+    assertTrue(revalidator.fetch(DRAFT, TOKEN).contains("Edited"));
+
+    assertEquals(List.of("null", "\"1\"", "\"1\""), ifNoneMatch);
+    assertEquals(1.0, revalidations("miss"));
+    assertEquals(1.0, revalidations("not_modified"));
+    assertEquals(1.0, revalidations("changed"));
+  }
+
+  @Test
+  void testFreshDraftIsServedWithoutAskingTheLibraryService() {
+    DraftLibraryRevalidator revalidator = revalidator(Duration.ofMinutes(5));
+
+    revalidator.fetch(DRAFT, TOKEN);
+    revalidator.fetch(DRAFT, TOKEN);
+
+    assertEquals(1, ifNoneMatch.size());
+    assertEquals(1.0, revalidations("fresh"));
+  }
+
+  @Test
+  void testFreshDraftIsNotServedToAnotherToken() {
+    DraftLibraryRevalidator revalidator = revalidator(Duration.ofMinutes(5));
+
+    revalidator.fetch(DRAFT, TOKEN);
+    revalidator.fetch(DRAFT, "Bearer other");
+
+    assertEquals(List.of("null", "null"), ifNoneMatch);
+    assertEquals(2.0, revalidations("miss"));
+  }
+
+  @Test
+  void testEvictedDraftIsFetchedUnconditionally() {
+    DraftLibraryRevalidator revalidator = revalidator(Duration.ofMinutes(5));
+
+    revalidator.fetch(DRAFT, TOKEN);
+    revalidator.fetch(DRAFT, "Bearer other");
+    revalidator.evict(DRAFT);
+    revalidator.fetch(DRAFT, TOKEN);
+    revalidator.fetch(DRAFT, "Bearer other");
+
+    assertEquals(List.of("null", "null", "null", "null"), ifNoneMatch);
+  }
+
+  @Test
+  void testOnlyVersionedDraftsAreHandled() {
+    DraftLibraryRevalidator revalidator = revalidator(Duration.ZERO);
+
+    assertTrue(revalidator.handles(DRAFT));
+    assertFalse(
+        revalidator.handles(new VersionedIdentifier().withId("Helpers").withVersion("1.0.000")));
+    assertFalse(revalidator.handles(new VersionedIdentifier().withId("Helpers")));
+  }
+
+  private DraftLibraryRevalidator revalidator(Duration revalidateAfter) {
+    return new DraftLibraryRevalidator(
+        new ConcurrentMapCacheManager(DraftLibraryRevalidator.CACHE_NAME),
+        new RestTemplate(),
+        meterRegistry,
+        "http://localhost:" + server.getAddress().getPort() + "/api",
+        "/cql-libraries/cql",
+        revalidateAfter,
+        "0\\.0\\.000");
+  }
+
+  private double revalidations(String outcome) {
+    return meterRegistry.counter(DraftLibraryRevalidator.METRIC_NAME, "outcome", outcome).count();
+  }
+}
@@ -0,0 +1,105 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
+import gov.cms.mat.cql_elm_translation.dto.RawCqlConversionPayload;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Compares payload size and encode/decode time of the JSON, Smile and CBOR encodings of the
+ * version 2 conversion payload for the bundled test CQL. Timings are logged, not asserted; the
+ * iteration counts only aim at comparable numbers on a developer machine. Excluded from the
+ * default build, run with {@code mvn test -Pbenchmark}; {@link ElmEncodingTest} covers the
+ * encodings themselves.
+ */
+@Slf4j
+@Tag("benchmark")
+@ExtendWith(MockitoExtension.class)
+class ElmEncodingBenchmarkTest implements ResourceFileUtil {
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int MEASURED_ITERATIONS = 50;
+  private static final Map<String, ObjectMapper> MAPPERS =
+      Map.of(
+          "json", new ObjectMapper(),
+          "smile", new ObjectMapper(new SmileFactory()),
+          "cbor", new ObjectMapper(new CBORFactory()));
+
+  @Mock private CqlLibraryService cqlLibraryService;
+  @InjectMocks private CqlConversionService service;
+
+  private RawCqlConversionPayload payload;
+
+  @BeforeEach
+  void setUp() {
+    RequestData requestData =
+        RequestData.builder()
+            .cqlData(getData("/fhir.cql"))
+            .showWarnings(true)
+            .annotations(true)
+            .locators(true)
+            .disableListDemotion(true)
+            .disableListPromotion(true)
+            .disableMethodInvocation(false)
+            .validateUnits(true)
+            .resultTypes(true)
+            .build();
+    CqlConversionPayload translated = service.processCqlDataWithErrors(requestData);
+    payload = RawCqlConversionPayload.from(translated);
+  }
+
+  @Test
+  void compareEncodings() throws IOException {
+    byte[] json = MAPPERS.get("json").writeValueAsBytes(payload);
+    JsonNode expected = MAPPERS.get("json").readTree(json);
+
+    for (Map.Entry<String, ObjectMapper> format : MAPPERS.entrySet()) {
+      ObjectMapper mapper = format.getValue();
+      byte[] encoded = mapper.writeValueAsBytes(payload);
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        mapper.readTree(mapper.writeValueAsBytes(payload));
+      }
+      long encodeStart = System.nanoTime();
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        mapper.writeValueAsBytes(payload);
+      }
+      long encodeNanos = (System.nanoTime() - encodeStart) / MEASURED_ITERATIONS;
+      long decodeStart = System.nanoTime();
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        mapper.readTree(encoded);
+      }
+      long decodeNanos = (System.nanoTime() - decodeStart) / MEASURED_ITERATIONS;
+      log.info(
+          "{}: {} bytes, encode {} us, decode {} us",
+          format.getKey(),
+          encoded.length,
+          encodeNanos / 1_000,
+          decodeNanos / 1_000);
+
+      assertThat(mapper.readTree(encoded), is(equalTo(expected)));
+      if (!"json".equals(format.getKey())) {
+        assertThat(encoded.length, is(lessThan(json.length)));
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
+import gov.cms.mat.cql_elm_translation.dto.RawCqlConversionPayload;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+@ExtendWith(MockitoExtension.class)
+class ElmEncodingTest implements ResourceFileUtil {
+  private final ObjectMapper json = new ObjectMapper();
+
+  @Mock private CqlLibraryService cqlLibraryService;
+  @InjectMocks private CqlConversionService service;
+
+  @Test
+  void binaryEncodingsAreSmallerAndDecodeToTheSameElm() throws IOException {
+    RequestData requestData =
+        RequestData.builder()
+            .cqlData(getData("/fhirhelpers.cql"))
+            .showWarnings(true)
+            .annotations(true)
+            .locators(true)
+            .disableListDemotion(true)
+            .disableListPromotion(true)
+            .disableMethodInvocation(false)
+            .validateUnits(true)
+            .resultTypes(true)
+            .build();
+    CqlConversionPayload translated = service.processCqlDataWithErrors(requestData);
+    RawCqlConversionPayload payload = RawCqlConversionPayload.from(translated);
+    byte[] encoded = json.writeValueAsBytes(payload);
+    JsonNode expected = json.readTree(encoded);
+
+    for (ObjectMapper binary :
+        new ObjectMapper[] {
+          new ObjectMapper(new SmileFactory()), new ObjectMapper(new CBORFactory())
+        }) {
+      byte[] binaryEncoded = binary.writeValueAsBytes(payload);
+
+      assertThat(binary.readTree(binaryEncoded), is(equalTo(expected)));
+      assertThat(binaryEncoded.length, is(lessThan(encoded.length)));
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class IncludeLibraryPrefetcherTest {
+  private static final String TOKEN = "token";
+  private static final String MEASURE =
+      """
+      library Measure version '1.0.000'
+      using QDM version '5.6'
+      include Common version '1.0.000' called Common
+      include "Helpers" version '2.0.000' called Helpers
+      """;
+  private static final String COMMON =
+      """
+      library Common version '1.0.000'
+      using QDM version '5.6'
+      include Helpers version '2.0.000' called Helpers
+      include Base version '3.0.000' called Base
+      """;
+  private static final String HELPERS = "library Helpers version '2.0.000'";
+  private static final String BASE = "library Base version '3.0.000'";
+
+  @Mock private CqlLibraryService cqlLibraryService;
+
+  private IncludeLibraryPrefetcher prefetcher;
+
+  @BeforeEach
+  void setUp() {
+    prefetcher = new IncludeLibraryPrefetcher(cqlLibraryService, true, 4, Duration.ofSeconds(5));
+  }
+
+  @AfterEach
+  void tearDown() {
+    prefetcher.destroy();
+  }
+
+  @Test
+  void testPrefetchWalksIncludeTreeOnce() throws IOException {
+    doReturn(COMMON).when(cqlLibraryService).getLibraryCql("Common", "1.0.000", TOKEN);
+    doReturn(HELPERS).when(cqlLibraryService).getLibraryCql("Helpers", "2.0.000", TOKEN);
+    doReturn(BASE).when(cqlLibraryService).getLibraryCql("Base", "3.0.000", TOKEN);
+
+    Map<String, String> sources = prefetcher.prefetch(MEASURE, TOKEN);
+
+    assertEquals(3, sources.size());
+    verify(cqlLibraryService, times(1)).getLibraryCql("Helpers", "2.0.000", TOKEN);
+    PrefetchedLibrarySourceProvider provider = prefetcher.take(MEASURE);
+    assertNotNull(provider);
+    VersionedIdentifier base = new VersionedIdentifier().withId("Base").withVersion("3.0.000");
+    assertEquals(
+        BASE, new String(provider.getLibrarySource(base).readAllBytes(), StandardCharsets.UTF_8));
+    assertNull(provider.getLibrarySource(base.withVersion("4.0.000")));
+  }
+
+  @Test
+  void testFailedFetchIsLeftToLazyResolution() {
+    doThrow(new IllegalStateException("not found"))
+        .when(cqlLibraryService)
+        .getLibraryCql("Common", "1.0.000", TOKEN);
+    doReturn(HELPERS).when(cqlLibraryService).getLibraryCql("Helpers", "2.0.000", TOKEN);
+
+    Map<String, String> sources = prefetcher.prefetch(MEASURE, TOKEN);
+
+    assertEquals(Map.of("Helpers|2.0.000", HELPERS), sources);
+  }
+
+  @Test
+  void testTakeIsSingleUseAndBoundToCql() {
+    doReturn(HELPERS).when(cqlLibraryService).getLibraryCql(anyString(), anyString(), any());
+    prefetcher.prefetch(MEASURE, TOKEN);
+
+    assertNull(prefetcher.take(COMMON));
+    assertNull(prefetcher.take(MEASURE));
+  }
+
+  @Test
+  void testDisabledPrefetcherDoesNothing() {
+    IncludeLibraryPrefetcher disabled =
+        new IncludeLibraryPrefetcher(cqlLibraryService, false, 1, Duration.ofSeconds(1));
+
+    assertTrue(disabled.prefetch(MEASURE, TOKEN).isEmpty());
+    assertNull(disabled.take(MEASURE));
+    verifyNoInteractions(cqlLibraryService);
+    disabled.destroy();
+  }
+}
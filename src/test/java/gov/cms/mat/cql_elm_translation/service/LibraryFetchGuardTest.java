@@ -0,0 +1,197 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import com.sun.net.httpserver.HttpServer;
+import gov.cms.mat.cql_elm_translation.config.LibraryServiceHttpClients;
+import gov.cms.mat.cql_elm_translation.config.LibraryServiceHttpProperties;
+import gov.cms.mat.cql_elm_translation.exceptions.LibraryServiceUnavailableException;
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationTimeoutException;
+import gov.cms.mat.cql_elm_translation.service.support.TranslationDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryFetchGuardTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private LibraryFetchGuard guard;
+  private HttpServer server;
+
+  @AfterEach
+  void tearDown() {
+    if (guard != null) {
+      guard.destroy();
+    }
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void testCircuitOpensAfterConsecutiveFailuresAndClosesAfterTrial() throws Exception {
+    guard = guard(2, Duration.ofMillis(100), Duration.ZERO);
+
+    for (int i = 0; i < 2; i++) {
+      assertThrows(IllegalStateException.class, () -> guard.execute(this::fail));
+    }
+    assertEquals(LibraryFetchGuard.State.OPEN, guard.getState());
+    assertThrows(LibraryServiceUnavailableException.class, () -> guard.execute(() -> "cql"));
+    assertEquals(1.0, calls("rejected"));
+
+    Thread.sleep(150);
+    assertEquals(LibraryFetchGuard.State.HALF_OPEN, guard.getState());
+    assertEquals("cql", guard.execute(() -> "cql"));
+    assertEquals(LibraryFetchGuard.State.CLOSED, guard.getState());
+    assertEquals(2.0, calls("failure"));
+  }
+
+  @Test
+  void testNotFoundDoesNotCountAsFailure() {
+    guard = guard(1, Duration.ofSeconds(30), Duration.ZERO);
+
+    assertThrows(
+        HttpClientErrorException.class,
+        () ->
+            guard.execute(
+                () -> {
+                  throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+                }));
+
+    assertEquals(LibraryFetchGuard.State.CLOSED, guard.getState());
+    assertEquals(1.0, calls("client_error"));
+  }
+
+  @Test
+  void testSlowFetchIsHedged() {
+    guard = guard(5, Duration.ofSeconds(30), Duration.ofMillis(50));
+    AtomicInteger attempts = new AtomicInteger();
+
+    long start = System.nanoTime();
+    String source =
+        guard.executeHedged(
+            () -> {
+              if (attempts.incrementAndGet() == 1) {
+                sleep(2_000);
+                return "slow";
+              }
+              return "fast";
+            });
+
+    assertEquals("fast", source);
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1_000);
+    assertEquals(1.0, meterRegistry.counter(LibraryFetchGuard.METRIC_PREFIX + ".hedged").count());
+    assertEquals(
+        1.0, meterRegistry.counter(LibraryFetchGuard.METRIC_PREFIX + ".hedge.won").count());
+  }
+
+  @Test
+  void testHedgedFetchWaitsNoLongerThanTheReadTimeout() throws InterruptedException {
+    guard = guard(5, Duration.ofSeconds(30), Duration.ofMillis(50), Duration.ofMillis(100));
+    AtomicInteger interrupted = new AtomicInteger();
+
+    long start = System.nanoTime();
+    assertThrows(ResourceAccessException.class, () -> guard.executeHedged(() -> hang(interrupted)));
+
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1_000);
+    assertEquals(1.0, calls("failure"));
+    for (int i = 0; i < 50 && interrupted.get() < 2; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(2, interrupted.get());
+  }
+
+  @Test
+  void testHedgedFetchWaitsNoLongerThanTheTranslationDeadline() {
+    guard = guard(5, Duration.ofSeconds(30), Duration.ofMillis(50));
+    AtomicInteger interrupted = new AtomicInteger();
+
+    long start = System.nanoTime();
+    TranslationTimeoutException e =
+        assertThrows(
+            TranslationTimeoutException.class,
+            () ->
+                TranslationDeadline.callWith(
+                    TranslationDeadline.of(Duration.ofMillis(200)),
+                    () -> guard.executeHedged(() -> hang(interrupted))));
+
+    assertEquals(TranslationDeadline.STAGE_INCLUDE_FETCH, e.getStage());
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1_000);
+    assertEquals(1.0, calls("failure"));
+  }
+
+  @Test
+  void testReadTimeoutOfSlowLibraryServiceOpensCircuit() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/cql-libraries/cql",
+        exchange -> {
+          sleep(1_000);
+          byte[] body = "library Slow version '1.0.000'".getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, body.length);
+          exchange.getResponseBody().write(body);
+          exchange.close();
+        });
+    server.start();
+    LibraryServiceHttpProperties properties = new LibraryServiceHttpProperties();
+    properties.setReadTimeout(Duration.ofMillis(100));
+    RestTemplate restTemplate =
+        new RestTemplate(LibraryServiceHttpClients.requestFactory(properties, meterRegistry));
+    String url = "http://localhost:" + server.getAddress().getPort() + "/cql-libraries/cql";
+    guard = guard(1, Duration.ofSeconds(30), Duration.ZERO);
+
+    assertThrows(
+        ResourceAccessException.class,
+        () -> guard.execute(() -> restTemplate.getForObject(url, String.class)));
+
+    assertEquals(LibraryFetchGuard.State.OPEN, guard.getState());
+  }
+
+  private LibraryFetchGuard guard(int failureThreshold, Duration openDuration, Duration hedge) {
+    return guard(failureThreshold, openDuration, hedge, Duration.ofSeconds(10));
+  }
+
+  private LibraryFetchGuard guard(
+      int failureThreshold, Duration openDuration, Duration hedge, Duration readTimeout) {
+    return new LibraryFetchGuard(
+        meterRegistry, true, failureThreshold, openDuration, hedge, 4, readTimeout);
+  }
+
+  private String hang(AtomicInteger interrupted) {
+    try {
+      Thread.sleep(5_000);
+    } catch (InterruptedException e) {
+      interrupted.incrementAndGet();
+    }
+    return "late";
+  }
+
+  private double calls(String outcome) {
+    return meterRegistry
+        .counter(LibraryFetchGuard.METRIC_PREFIX + ".calls", "outcome", outcome)
+        .count();
+  }
+
+  private String fail() {
+    throw new IllegalStateException("library service is down");
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+
+class TranslationBulkheadTest {
+  private static final String INCLUDES =
+      """
+      library Test version '1.0.000'
+      include FHIRHelpers version '4.1.000' called FHIRHelpers
+      include SupplementalDataElements version '3.4.000' called SDE
+      """;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final List<Object> events = new ArrayList<>();
+
+  private TranslationBulkhead bulkhead(int permits, int maxQueue, Duration maxWait) {
+    TranslationBulkhead bulkhead =
+        new TranslationBulkhead(
+            meterRegistry, true, permits, 100, maxQueue, maxWait, Duration.ofSeconds(7));
+    bulkhead.setEventPublisher(events::add);
+    return bulkhead;
+  }
+
+  private List<Object> readinessStates() {
+    return events.stream()
+        .map(event -> ((AvailabilityChangeEvent<?>) event).getState())
+        .map(Object.class::cast)
+        .toList();
+  }
+
+  @Test
+  void testWeightGrowsWithSizeAndIncludes() {
+    TranslationBulkhead bulkhead = bulkhead(16, 1, Duration.ofSeconds(1));
+    assertEquals(1, bulkhead.weigh("library Test"));
+    assertEquals(3, bulkhead.weigh("x".repeat(250)));
+    assertEquals(1 + INCLUDES.length() / 100 + 2, bulkhead.weigh(INCLUDES));
+    assertEquals(16, bulkhead.weigh("x".repeat(10_000)));
+  }
+
+  @Test
+  void testPermitsAreReleasedAfterWork() {
+    TranslationBulkhead bulkhead = bulkhead(4, 1, Duration.ofSeconds(1));
+    assertEquals("done", bulkhead.execute("x".repeat(250), () -> "done"));
+    assertEquals(0, bulkhead.activePermits());
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            bulkhead.execute(
+                "cql",
+                () -> {
+                  throw new IllegalStateException();
+                }));
+    assertEquals(0, bulkhead.activePermits());
+  }
+
+  @Test
+  void testRejectsWhenQueueIsFull() throws Exception {
+    TranslationBulkhead bulkhead = bulkhead(1, 0, Duration.ofSeconds(5));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> running =
+          executor.submit(() -> bulkhead.execute("cql", blocking(started, release)));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+
+      TranslationRejectedException ex =
+          assertThrows(
+              TranslationRejectedException.class, () -> bulkhead.execute("cql", () -> "second"));
+      assertEquals(Duration.ofSeconds(7), ex.getRetryAfter());
+      assertEquals(1.0, meterRegistry.counter("madie.translation.bulkhead.rejected").count());
+      Health health = new TranslationBulkheadHealthIndicator(bulkhead).health();
+      assertEquals(Status.UP, health.getStatus());
+      assertEquals(true, health.getDetails().get("saturated"));
+      assertEquals(List.of(ReadinessState.REFUSING_TRAFFIC), readinessStates());
+
+      release.countDown();
+      assertEquals("first", running.get(5, TimeUnit.SECONDS));
+      assertFalse(bulkhead.isSaturated());
+      assertEquals(
+          List.of(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC),
+          readinessStates());
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testQueuedRequestRunsOncePermitsAreFreed() throws Exception {
+    TranslationBulkhead bulkhead = bulkhead(1, 1, Duration.ofSeconds(5));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      executor.submit(() -> bulkhead.execute("cql", blocking(started, release)));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      Future<String> queued = executor.submit(() -> bulkhead.execute("cql", () -> "second"));
+      while (bulkhead.queued() == 0) {
+        Thread.onSpinWait();
+      }
+      release.countDown();
+      assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+      assertEquals(0, bulkhead.queued());
+      assertEquals(
+          Status.UP, new TranslationBulkheadHealthIndicator(bulkhead).health().getStatus());
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testFullQueueRefusesTrafficAcceptedByOthers() {
+    TranslationBulkhead bulkhead = bulkhead(1, 1, Duration.ofMillis(50));
+    bulkhead.onReadinessChange(
+        new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+    assertEquals(List.of(), readinessStates());
+
+    bulkhead.execute(
+        "cql",
+        () -> {
+          assertThrows(
+              TranslationRejectedException.class, () -> bulkhead.execute("cql", () -> "nested"));
+          bulkhead.onReadinessChange(
+              new AvailabilityChangeEvent<>(this, ReadinessState.ACCEPTING_TRAFFIC));
+          return "outer";
+        });
+
+    assertEquals(
+        List.of(
+            ReadinessState.REFUSING_TRAFFIC,
+            ReadinessState.REFUSING_TRAFFIC,
+            ReadinessState.ACCEPTING_TRAFFIC),
+        readinessStates());
+  }
+
+  @Test
+  void testRejectsWhenWaitTimesOut() {
+    TranslationBulkhead bulkhead = bulkhead(1, 1, Duration.ofMillis(50));
+    assertThrows(
+        TranslationRejectedException.class,
+        () -> bulkhead.execute("cql", () -> bulkhead.execute("cql", () -> "nested")));
+    assertEquals(0, bulkhead.activePermits());
+    assertEquals(2, meterRegistry.timer("madie.translation.bulkhead.wait").count());
+  }
+
+  @Test
+  void testDisabledBulkheadRunsWorkDirectly() {
+    TranslationBulkhead bulkhead =
+        new TranslationBulkhead(
+            meterRegistry, false, 1, 100, 0, Duration.ZERO, Duration.ofSeconds(1));
+    assertEquals(
+        "nested", bulkhead.execute("cql", () -> bulkhead.execute("cql", () -> "nested")));
+  }
+
+  private static Supplier<String> blocking(CountDownLatch started, CountDownLatch release) {
+    return () -> {
+      started.countDown();
+      await(release);
+      return "first";
+    };
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package gov.cms.mat.cql_elm_translation.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+import gov.cms.mat.cql_elm_translation.dto.ElmArtifacts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TranslationCoalescerTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final RequestData requestData =
+      RequestData.builder().cqlData("library Test version '1.0.000'").build();
+
+  @Test
+  void testRequestsWithDifferentTokensAreNotCoalesced() throws Exception {
+    TranslatorVersionConfig translatorVersionConfig = new TranslatorVersionConfig();
+    translatorVersionConfig.setCurrentTranslatorVersion("3.14.0");
+    TranslationCoalescer coalescer =
+        new TranslationCoalescer(translatorVersionConfig, meterRegistry);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<CqlConversionPayload> first =
+          executor.submit(
+              () ->
+                  coalescer.payload(
+                      requestData,
+                      ElmArtifacts.BOTH,
+                      "Bearer first",
+                      () -> {
+                        executions.incrementAndGet();
+                        started.countDown();
+                        await(release);
+                        return CqlConversionPayload.builder().json("first").build();
+                      }));
+      started.await(5, TimeUnit.SECONDS);
+
+      CqlConversionPayload second =
+          coalescer.payload(
+              requestData,
+              ElmArtifacts.BOTH,
+              "Bearer second",
+              () -> {
+                executions.incrementAndGet();
+                return CqlConversionPayload.builder().json("second").build();
+              });
+      release.countDown();
+
+      assertEquals("second", second.getJson());
+      assertEquals("first", first.get(5, TimeUnit.SECONDS).getJson());
+      assertEquals(2, executions.get());
+      assertEquals(
+          0.0,
+          meterRegistry
+              .counter(
+                  TranslationCoalescer.COALESCED_COUNTER, "operation", "processCqlDataWithErrors")
+              .count());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+class CompiledLibraryCacheTest {
+  private static final String SCOPE = "QDM-5.6|options";
+
+  private CompiledLibraryCache compiledLibraryCache;
+  private final VersionedIdentifier versioned =
+      new VersionedIdentifier().withId("MATGlobalCommonFunctions").withVersion("7.0.000");
+  private final VersionedIdentifier draft =
+      new VersionedIdentifier().withId("DraftLibrary").withVersion("0.0.000");
+
+  @BeforeEach
+  void setUp() {
+    compiledLibraryCache =
+        new CompiledLibraryCache(
+            new ConcurrentMapCacheManager(CompiledLibraryCache.CACHE_NAME), "0\\.0\\.000");
+  }
+
+  @Test
+  void testVersionedLibraryIsSharedAcrossTranslations() {
+    CompiledLibrary library = new CompiledLibrary();
+    compiledLibraryCache.newTranslationView(SCOPE).put(versioned, library);
+
+    Map<VersionedIdentifier, CompiledLibrary> next = compiledLibraryCache.newTranslationView(SCOPE);
+    assertTrue(next.isEmpty());
+    assertTrue(next.containsKey(versioned));
+    assertSame(library, next.get(versioned));
+    assertEquals(1, next.size());
+  }
+
+  @Test
+  void testLibraryIsNotSharedAcrossScopes() {
+    compiledLibraryCache.newTranslationView(SCOPE).put(versioned, new CompiledLibrary());
+
+    assertNull(compiledLibraryCache.newTranslationView("FHIR-4.0.1|options").get(versioned));
+  }
+
+  @Test
+  void testDraftLibraryIsNotShared() {
+    Map<VersionedIdentifier, CompiledLibrary> view = compiledLibraryCache.newTranslationView(SCOPE);
+    view.put(draft, new CompiledLibrary());
+
+    assertTrue(view.containsKey(draft));
+    assertFalse(compiledLibraryCache.newTranslationView(SCOPE).containsKey(draft));
+  }
+
+  @Test
+  void testEvict() {
+    compiledLibraryCache.newTranslationView(SCOPE).put(versioned, new CompiledLibrary());
+    compiledLibraryCache.evict(SCOPE, versioned);
+
+    assertNull(compiledLibraryCache.newTranslationView(SCOPE).get(versioned));
+  }
+
+  @Test
+  void testIsDraft() {
+    assertTrue(compiledLibraryCache.isDraft(draft));
+    assertTrue(compiledLibraryCache.isDraft(new VersionedIdentifier().withId("NoVersion")));
+    assertFalse(compiledLibraryCache.isDraft(versioned));
+  }
+}
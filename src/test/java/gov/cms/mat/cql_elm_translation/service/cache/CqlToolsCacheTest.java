@@ -0,0 +1,111 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.CQLTools;
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+
+class CqlToolsCacheTest {
+  private static final String CQL = "library Test version '1.0.000'";
+
+  private CqlToolsCache cqlToolsCache;
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @BeforeEach
+  void setUp() {
+    TranslatorVersionConfig translatorVersionConfig = new TranslatorVersionConfig();
+    translatorVersionConfig.setCurrentTranslatorVersion("3.14.0");
+    cqlToolsCache =
+        new CqlToolsCache(
+            new ConcurrentMapCacheManager(CqlToolsCache.CACHE_NAME),
+            translatorVersionConfig,
+            new IncludeTreeDigest("0\\.0\\.000"));
+  }
+
+  @Test
+  void testAnalysisIsComputedOnce() {
+    CQLTools cqlTools = mock(CQLTools.class);
+
+    CQLTools first = cqlToolsCache.get(CQL, null, null, () -> load(cqlTools, true));
+    CQLTools second = cqlToolsCache.get(CQL, Set.of(), null, () -> load(cqlTools, true));
+
+    assertSame(cqlTools, first);
+    assertSame(cqlTools, second);
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void testIncompleteAnalysisIsNotKept() {
+    CQLTools cqlTools = mock(CQLTools.class);
+
+    cqlToolsCache.get(CQL, null, null, () -> load(cqlTools, false));
+    cqlToolsCache.get(CQL, null, null, () -> load(cqlTools, false));
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void testKeyIgnoresParentExpressionOrder() {
+    Set<String> ordered = new LinkedHashSet<>(List.of("Numerator", "Denominator"));
+    Set<String> reversed = new LinkedHashSet<>(List.of("Denominator", "Numerator"));
+
+    assertEquals(
+        cqlToolsCache.keyFor(CQL, ordered, null), cqlToolsCache.keyFor(CQL, reversed, null));
+    assertNotEquals(
+        cqlToolsCache.keyFor(CQL, ordered, null), cqlToolsCache.keyFor(CQL, null, null));
+  }
+
+  @Test
+  void testLoaderExceptionIsRethrown() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            cqlToolsCache.get(
+                CQL,
+                null,
+                null,
+                () -> {
+                  throw new IllegalStateException("translation failed");
+                }));
+  }
+
+  @Test
+  void testAnalysisWithDraftIncludesIsKeyedByTheFetchedSources() {
+    String cql = CQL + "\ninclude Helpers version '0.0.000' called Helpers\n";
+    CQLTools cqlTools = mock(CQLTools.class);
+
+    assertFalse(cqlToolsCache.isKeyedWithoutFetch(cql));
+    cqlToolsCache.get(cql, null, null, () -> load(cqlTools, true));
+    cqlToolsCache.get(cql, null, null, () -> load(cqlTools, true));
+    assertEquals(2, loads.get());
+
+    Map<String, String> fetched = Map.of("Helpers|0.0.000", "library Helpers");
+    cqlToolsCache.get(cql, null, fetched, () -> load(cqlTools, true));
+    cqlToolsCache.get(cql, null, fetched, () -> load(cqlTools, true));
+    assertEquals(3, loads.get());
+
+    Map<String, String> edited = Map.of("Helpers|0.0.000", "library Helpers\ndefine X: 1");
+    cqlToolsCache.get(cql, null, edited, () -> load(cqlTools, true));
+    assertEquals(4, loads.get());
+  }
+
+  private CqlToolsCache.Analysis load(CQLTools cqlTools, boolean complete) {
+    loads.incrementAndGet();
+    return new CqlToolsCache.Analysis(cqlTools, complete);
+  }
+}
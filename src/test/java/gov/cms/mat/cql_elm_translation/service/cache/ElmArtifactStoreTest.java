@@ -0,0 +1,164 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.cqframework.cql.cql2elm.LibraryContentType;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.hl7.elm.r1.Library;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.util.unit.DataSize;
+
+import gov.cms.mat.cql_elm_translation.config.TranslatorVersionConfig;
+
+class ElmArtifactStoreTest {
+  private static final String OPTIONS = "QDM-5.6|annotations=true";
+  private static final String ELM_JSON = "{\"library\":{}}";
+  private static final String ELM_XML = "<library/>";
+
+  @TempDir Path directory;
+
+  private TranslatorVersionConfig translatorVersionConfig;
+  private CompiledLibraryCache compiledLibraryCache;
+  private final VersionedIdentifier versioned =
+      new VersionedIdentifier().withId("MATGlobalCommonFunctions").withVersion("7.0.000");
+
+  @BeforeEach
+  void setUp() {
+    translatorVersionConfig = new TranslatorVersionConfig();
+    translatorVersionConfig.setCurrentTranslatorVersion("3.14.0");
+    compiledLibraryCache =
+        new CompiledLibraryCache(
+            new ConcurrentMapCacheManager(CompiledLibraryCache.CACHE_NAME), "0\\.0\\.000");
+  }
+
+  @Test
+  void testStoredArtifactSurvivesRestart() throws IOException {
+    store(DataSize.ofMegabytes(1)).put(versioned, OPTIONS, ELM_JSON, ELM_XML);
+
+    ElmArtifactStore restarted = store(DataSize.ofMegabytes(1));
+    ElmArtifactStore.StoredArtifact artifact = restarted.get(versioned, OPTIONS).orElseThrow();
+    assertEquals(ELM_JSON, artifact.elmJson());
+    assertEquals(ELM_XML, artifact.elmXml());
+    assertEquals(
+        ELM_JSON,
+        new String(
+            restarted
+                .sourceProvider(OPTIONS)
+                .getLibraryContent(versioned, LibraryContentType.JSON)
+                .readAllBytes(),
+            StandardCharsets.UTF_8));
+    assertNull(restarted.sourceProvider(OPTIONS).getLibrarySource(versioned));
+  }
+
+  @Test
+  void testKeyIncludesScopeAndTranslatorVersion() {
+    store(DataSize.ofMegabytes(1)).put(versioned, OPTIONS, ELM_JSON, ELM_XML);
+
+    ElmArtifactStore restarted = store(DataSize.ofMegabytes(1));
+    assertTrue(restarted.get(versioned, "QDM-5.6|annotations=false").isEmpty());
+    assertTrue(restarted.get(versioned, "FHIR-4.0.1|annotations=true").isEmpty());
+    translatorVersionConfig.setCurrentTranslatorVersion("3.15.0");
+    assertTrue(store(DataSize.ofMegabytes(1)).get(versioned, OPTIONS).isEmpty());
+  }
+
+  @Test
+  void testDraftIsNotStored() {
+    ElmArtifactStore store = store(DataSize.ofMegabytes(1));
+    VersionedIdentifier draft = new VersionedIdentifier().withId("Draft").withVersion("0.0.000");
+
+    store.put(draft, OPTIONS, ELM_JSON, ELM_XML);
+
+    assertTrue(store.get(draft, OPTIONS).isEmpty());
+  }
+
+  @Test
+  void testCorruptArtifactIsDiscarded() throws IOException {
+    ElmArtifactStore store = store(DataSize.ofMegabytes(1));
+    store.put(versioned, OPTIONS, ELM_JSON, ELM_XML);
+    Path file = entries().get(0);
+    Files.writeString(file, Files.readString(file).replace("<library/>", "<library></library>"));
+
+    assertTrue(store.get(versioned, OPTIONS).isEmpty());
+    assertFalse(Files.exists(file));
+  }
+
+  @Test
+  void testStoreIsTrimmedToMaximumSize() throws IOException {
+    ElmArtifactStore store = store(DataSize.ofBytes(700));
+    for (int i = 0; i < 5; i++) {
+      store.put(
+          new VersionedIdentifier().withId("Library" + i).withVersion("1.0.000"),
+          OPTIONS,
+          ELM_JSON,
+          ELM_XML);
+    }
+
+    List<Path> entries = entries();
+    assertTrue(entries.size() < 5);
+    long size = 0;
+    for (Path entry : entries) {
+      size += Files.size(entry);
+    }
+    assertTrue(size <= 700);
+  }
+
+  @Test
+  void testDisabledStoreIsEmpty() {
+    ElmArtifactStore store =
+        new ElmArtifactStore(
+            translatorVersionConfig,
+            compiledLibraryCache,
+            false,
+            directory,
+            DataSize.ofMegabytes(1),
+            10);
+
+    store.put(versioned, OPTIONS, ELM_JSON, ELM_XML);
+
+    assertFalse(store.isEnabled());
+    assertTrue(store.get(versioned, OPTIONS).isEmpty());
+  }
+
+  @Test
+  void testCompiledIncludesAreStoredInTheBackground() throws InterruptedException {
+    ElmArtifactStore store = store(DataSize.ofMegabytes(1));
+    CompiledLibrary compiledLibrary = new CompiledLibrary();
+    compiledLibrary.setIdentifier(versioned);
+    compiledLibrary.setLibrary(new Library().withIdentifier(versioned));
+
+    store.putAll(List.of(compiledLibrary), OPTIONS);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (store.get(versioned, OPTIONS).isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    ElmArtifactStore.StoredArtifact artifact = store.get(versioned, OPTIONS).orElseThrow();
+    assertTrue(artifact.elmJson().contains("MATGlobalCommonFunctions"));
+    assertTrue(artifact.elmXml().contains("MATGlobalCommonFunctions"));
+    store.destroy();
+  }
+
+  private ElmArtifactStore store(DataSize maxSize) {
+    return new ElmArtifactStore(
+        translatorVersionConfig, compiledLibraryCache, true, directory, maxSize, 10);
+  }
+
+  private List<Path> entries() throws IOException {
+    try (var files = Files.list(directory)) {
+      return files.filter(f -> f.toString().endsWith(".json")).toList();
+    }
+  }
+}
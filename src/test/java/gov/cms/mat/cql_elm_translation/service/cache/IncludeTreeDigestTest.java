@@ -0,0 +1,56 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class IncludeTreeDigestTest {
+  private static final String RELEASED =
+      """
+      library Measure version '1.0.000'
+      include Common version '1.0.000' called Common
+      """;
+  private static final String WITH_DRAFT =
+      """
+      library Measure version '1.0.000'
+      include Common version '1.0.000' called Common
+      include Draft version '0.0.000' called Draft
+      """;
+  private static final String DRAFT_SOURCE =
+      """
+      library Draft version '0.0.000'
+      include Helpers called Helpers
+      """;
+
+  private final IncludeTreeDigest includeTreeDigest = new IncludeTreeDigest("0\\.0\\.000");
+
+  @Test
+  void testReleasedIncludesNeedNoFetchedSource() {
+    assertNotNull(includeTreeDigest.treeDigest(RELEASED, Map.of()));
+    assertEquals(
+        includeTreeDigest.treeDigest(RELEASED, Map.of()),
+        includeTreeDigest.treeDigest(RELEASED, Map.of("Common|1.0.000", "library Common")));
+  }
+
+  @Test
+  void testDraftIncludesNeedTheirWholeTreeFetched() {
+    assertNull(includeTreeDigest.treeDigest(WITH_DRAFT, Map.of()));
+    // the unversioned Helpers include of the draft is still unknown
+    assertNull(includeTreeDigest.treeDigest(WITH_DRAFT, Map.of("Draft|0.0.000", DRAFT_SOURCE)));
+
+    Map<String, String> fetched =
+        Map.of("Draft|0.0.000", DRAFT_SOURCE, "Helpers|null", "library Helpers");
+    String digest = includeTreeDigest.treeDigest(WITH_DRAFT, fetched);
+    assertNotNull(digest);
+    assertEquals(digest, includeTreeDigest.treeDigest(WITH_DRAFT, Map.copyOf(fetched)));
+
+    Map<String, String> edited =
+        Map.of("Draft|0.0.000", DRAFT_SOURCE, "Helpers|null", "library Helpers\ndefine X: 1");
+    assertNotEquals(digest, includeTreeDigest.treeDigest(WITH_DRAFT, edited));
+  }
+}
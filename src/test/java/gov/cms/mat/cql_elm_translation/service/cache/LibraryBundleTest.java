@@ -0,0 +1,51 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+class LibraryBundleTest {
+  private CompiledLibraryCache compiledLibraryCache;
+
+  @BeforeEach
+  void setUp() {
+    compiledLibraryCache =
+        new CompiledLibraryCache(
+            new ConcurrentMapCacheManager(CompiledLibraryCache.CACHE_NAME), "0\\.0\\.000");
+  }
+
+  @Test
+  void testReleasedLibrariesAreBundledByNameAndVersion() {
+    LibraryBundle bundle = new LibraryBundle(compiledLibraryCache, "classpath:fhirhelpers.cql");
+
+    assertEquals(Set.of("FHIRHelpers|4.0.000"), bundle.libraries());
+    VersionedIdentifier helpers =
+        new VersionedIdentifier().withId("FHIRHelpers").withVersion("4.0.000");
+    assertTrue(bundle.get(helpers).orElseThrow().startsWith("library FHIRHelpers"));
+    assertNotNull(bundle.sourceProvider().getLibrarySource(helpers));
+    assertNull(
+        bundle
+            .sourceProvider()
+            .getLibrarySource(new VersionedIdentifier().withId("FHIRHelpers").withVersion("9")));
+  }
+
+  @Test
+  void testDraftLibraryIsNotBundled() {
+    assertTrue(
+        new LibraryBundle(compiledLibraryCache, "classpath:qicore_included_lib.cql").isEmpty());
+  }
+
+  @Test
+  void testMissingBundleIsEmpty() {
+    assertTrue(
+        new LibraryBundle(compiledLibraryCache, "classpath*:no-such-bundle/*.cql").isEmpty());
+  }
+}
@@ -0,0 +1,90 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.CqlElmTranslationApplication;
+import gov.cms.mat.cql_elm_translation.dto.LibraryReference;
+import gov.cms.mat.cql_elm_translation.service.DraftLibraryRevalidator;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class LibraryInvalidatorTest {
+  @Mock private DraftLibraryRevalidator draftLibraryRevalidator;
+
+  private CacheManager cacheManager;
+  private UnresolvedLibraryCache unresolvedLibraryCache;
+  private LibraryInvalidator libraryInvalidator;
+
+  @BeforeEach
+  void setUp() {
+    cacheManager =
+        new ConcurrentMapCacheManager(
+            CqlElmTranslationApplication.CQL_LIBRARIES_CACHE,
+            CompiledLibraryCache.CACHE_NAME,
+            CqlConversionPayloadCache.CACHE_NAME,
+            CqlToolsCache.CACHE_NAME,
+            UnresolvedLibraryCache.CACHE_NAME);
+    unresolvedLibraryCache = new UnresolvedLibraryCache(cacheManager);
+    libraryInvalidator =
+        new LibraryInvalidator(
+            cacheManager,
+            new CompiledLibraryCache(cacheManager, "0\\.0\\.000"),
+            unresolvedLibraryCache,
+            draftLibraryRevalidator);
+    cache(CqlElmTranslationApplication.CQL_LIBRARIES_CACHE)
+        .put(new SimpleKey("Helpers", "0.0.000", "Bearer token"), "library Helpers");
+    cache(CqlElmTranslationApplication.CQL_LIBRARIES_CACHE)
+        .put(new SimpleKey("Common", "1.0.000", "Bearer token"), "library Common");
+    cache(CqlConversionPayloadCache.CACHE_NAME)
+        .put("measure", CqlConversionPayload.builder().json("{}").build());
+  }
+
+  @Test
+  void testDraftIsEvictedEverywhereAndTranslationsAreKept() {
+    int drafts =
+        libraryInvalidator.invalidate(
+            List.of(LibraryReference.builder().name("Helpers").version("0.0.000").build()));
+
+    assertEquals(1, drafts);
+    Cache libraries = cache(CqlElmTranslationApplication.CQL_LIBRARIES_CACHE);
+    assertNull(libraries.get(new SimpleKey("Helpers", "0.0.000", "Bearer token")));
+    assertNotNull(libraries.get(new SimpleKey("Common", "1.0.000", "Bearer token")));
+    assertNotNull(cache(CqlConversionPayloadCache.CACHE_NAME).get("measure"));
+    verify(draftLibraryRevalidator).evict(argThat(id -> "Helpers".equals(id.getId())));
+  }
+
+  @Test
+  void testReleasedVersionKeepsTranslations() {
+    VersionedIdentifier released = new VersionedIdentifier().withId("New").withVersion("1.0.000");
+    unresolvedLibraryCache.markUnresolved(released);
+
+    int drafts =
+        libraryInvalidator.invalidate(
+            List.of(LibraryReference.builder().name("New").version("1.0.000").build()));
+
+    assertEquals(0, drafts);
+    assertFalse(unresolvedLibraryCache.isUnresolved(released));
+    assertNotNull(cache(CqlConversionPayloadCache.CACHE_NAME).get("measure"));
+  }
+
+  private Cache cache(String name) {
+    return cacheManager.getCache(name);
+  }
+}
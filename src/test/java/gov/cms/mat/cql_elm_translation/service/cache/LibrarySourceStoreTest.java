@@ -0,0 +1,133 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.util.unit.DataSize;
+
+class LibrarySourceStoreTest {
+  private static final String CQL = "library Common version '1.0.000'";
+
+  @TempDir Path directory;
+
+  private CompiledLibraryCache compiledLibraryCache;
+  private final VersionedIdentifier versioned =
+      new VersionedIdentifier().withId("Common").withVersion("1.0.000");
+
+  @BeforeEach
+  void setUp() {
+    compiledLibraryCache =
+        new CompiledLibraryCache(
+            new ConcurrentMapCacheManager(CompiledLibraryCache.CACHE_NAME), "0\\.0\\.000");
+  }
+
+  @Test
+  void testStoredSourceSurvivesRestart() {
+    store(DataSize.ofMegabytes(1)).put(versioned, CQL);
+
+    assertEquals(CQL, store(DataSize.ofMegabytes(1)).get(versioned).orElseThrow());
+  }
+
+  @Test
+  void testSameSourceIsStoredOnce() throws IOException {
+    LibrarySourceStore store = store(DataSize.ofMegabytes(1));
+    store.put(versioned, CQL);
+    store.put(new VersionedIdentifier().withId("Alias").withVersion("1.0.000"), CQL);
+
+    assertEquals(1, objects().size());
+  }
+
+  @Test
+  void testDraftIsNotStored() {
+    LibrarySourceStore store = store(DataSize.ofMegabytes(1));
+    VersionedIdentifier draft = new VersionedIdentifier().withId("Draft").withVersion("0.0.000");
+
+    store.put(draft, CQL);
+
+    assertTrue(store.get(draft).isEmpty());
+  }
+
+  @Test
+  void testCorruptSourceIsDiscarded() throws IOException {
+    LibrarySourceStore store = store(DataSize.ofMegabytes(1));
+    store.put(versioned, CQL);
+    Path object = objects().get(0);
+    Files.writeString(object, CQL + " ");
+
+    assertTrue(store.get(versioned).isEmpty());
+    assertFalse(Files.exists(object));
+  }
+
+  @Test
+  void testStoreIsTrimmedToMaximumSize() throws IOException {
+    LibrarySourceStore store = store(DataSize.ofBytes(100));
+    for (int i = 0; i < 5; i++) {
+      store.put(
+          new VersionedIdentifier().withId("Library" + i).withVersion("1.0.000"),
+          "library Library" + i + " version '1.0.000'");
+    }
+
+    long size = 0;
+    for (Path object : objects()) {
+      size += Files.size(object);
+    }
+    assertTrue(size <= 100);
+  }
+
+  @Test
+  void testProviderFetchesOnceAndStoresReleasedSources() throws IOException {
+    AtomicInteger fetches = new AtomicInteger();
+    LibrarySourceProvider delegate =
+        identifier -> {
+          fetches.incrementAndGet();
+          return new ByteArrayInputStream(CQL.getBytes(StandardCharsets.UTF_8));
+        };
+    LibrarySourceProvider provider = store(DataSize.ofMegabytes(1)).sourceProvider(delegate);
+
+    for (int i = 0; i < 2; i++) {
+      byte[] source = provider.getLibrarySource(versioned).readAllBytes();
+      assertEquals(CQL, new String(source, StandardCharsets.UTF_8));
+    }
+    provider.getLibrarySource(new VersionedIdentifier().withId("Draft").withVersion("0.0.000"));
+    provider.getLibrarySource(new VersionedIdentifier().withId("Draft").withVersion("0.0.000"));
+
+    assertEquals(3, fetches.get());
+  }
+
+  @Test
+  void testDisabledStoreIsEmpty() {
+    LibrarySourceStore store =
+        new LibrarySourceStore(compiledLibraryCache, false, directory, DataSize.ofMegabytes(1));
+    store.put(versioned, CQL);
+
+    assertFalse(store.isEnabled());
+    assertTrue(store.get(versioned).isEmpty());
+    assertNull(store.sourceProvider(identifier -> null).getLibrarySource(versioned));
+  }
+
+  private LibrarySourceStore store(DataSize maxSize) {
+    return new LibrarySourceStore(compiledLibraryCache, true, directory, maxSize);
+  }
+
+  private List<Path> objects() throws IOException {
+    try (var files = Files.list(directory.resolve("objects"))) {
+      return files.toList();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.interceptor.SimpleKey;
+
+import java.time.Duration;
+
+class LibraryVersionExpiryTest {
+  private final LibraryVersionExpiry expiry =
+      new LibraryVersionExpiry(Duration.ofMinutes(5), null, null, "0\\.0\\.000");
+
+  @Test
+  void testReleasedVersionsAreNotDrafts() {
+    assertFalse(expiry.isDraft("Common|1.0.000"));
+    assertFalse(expiry.isDraft(new SimpleKey("Common", "2.1.003", "token")));
+  }
+
+  @Test
+  void testDraftAndUnversionedLibrariesAreDrafts() {
+    assertTrue(expiry.isDraft("Common|0.0.000"));
+    assertTrue(expiry.isDraft("Common|null"));
+    assertTrue(expiry.isDraft(new SimpleKey("Common", null, "token")));
+  }
+
+  @Test
+  void testReleasedVersionsNeverExpireWithoutReleasedTtl() {
+    assertEquals(Long.MAX_VALUE, expiry.expireAfterCreate("Common|1.0.000", "cql", 0));
+    assertEquals(
+        Duration.ofMinutes(5).toNanos(), expiry.expireAfterCreate("Common|0.0.000", "cql", 0));
+  }
+
+  @Test
+  void testReadsKeepTheRemainingTime() {
+    assertEquals(42, expiry.expireAfterRead("Common|0.0.000", "cql", 0, 42));
+  }
+
+  @Test
+  void testReadsRenewReleasedEntriesWithAccessTtl() {
+    LibraryVersionExpiry idle =
+        new LibraryVersionExpiry(Duration.ofMinutes(5), null, Duration.ofHours(1), "0\\.0\\.000");
+
+    assertEquals(Duration.ofHours(1).toNanos(), idle.expireAfterCreate("Common|1.0.000", "cql", 0));
+    assertEquals(
+        Duration.ofHours(1).toNanos(), idle.expireAfterRead("Common|1.0.000", "cql", 0, 42));
+    assertEquals(42, idle.expireAfterRead("Common|0.0.000", "cql", 0, 42));
+  }
+
+  @Test
+  void testReleasedWriteAndAccessTtlCannotBeCombined() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new LibraryVersionExpiry(
+                Duration.ofMinutes(5), Duration.ofHours(1), Duration.ofHours(1), "0\\.0\\.000"));
+  }
+}
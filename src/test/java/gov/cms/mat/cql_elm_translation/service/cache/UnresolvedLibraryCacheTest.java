@@ -0,0 +1,81 @@
+package gov.cms.mat.cql_elm_translation.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cqframework.cql.cql2elm.CqlIncludeException;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+class UnresolvedLibraryCacheTest {
+  private final VersionedIdentifier missing =
+      new VersionedIdentifier().withId("Misspeled").withVersion("1.0.000");
+
+  private UnresolvedLibraryCache unresolvedLibraryCache;
+
+  @BeforeEach
+  void setUp() {
+    unresolvedLibraryCache =
+        new UnresolvedLibraryCache(
+            new ConcurrentMapCacheManager(UnresolvedLibraryCache.CACHE_NAME));
+  }
+
+  @Test
+  void testMissingLibraryFailsFastOnTheNextLookup() {
+    AtomicInteger lookups = new AtomicInteger();
+    LibrarySourceProvider recording =
+        unresolvedLibraryCache.recordingProvider(
+            identifier -> {
+              lookups.incrementAndGet();
+              return null;
+            });
+    LibrarySourceProvider failFast = unresolvedLibraryCache.failFastProvider();
+
+    assertNull(failFast.getLibrarySource(missing));
+    assertNull(recording.getLibrarySource(missing));
+    CqlIncludeException e =
+        assertThrows(CqlIncludeException.class, () -> failFast.getLibrarySource(missing));
+
+    assertEquals(1, lookups.get());
+    assertTrue(e.getMessage().startsWith(CqlConversionPayloadCache.UNRESOLVED_INCLUDE_MESSAGE));
+  }
+
+  @Test
+  void testOnlyNotFoundFailuresAreRemembered() {
+    LibrarySourceProvider serverError =
+        unresolvedLibraryCache.recordingProvider(
+            identifier -> {
+              throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+            });
+    assertThrows(HttpServerErrorException.class, () -> serverError.getLibrarySource(missing));
+    assertFalse(unresolvedLibraryCache.isUnresolved(missing));
+
+    LibrarySourceProvider notFound =
+        unresolvedLibraryCache.recordingProvider(
+            identifier -> {
+              throw new IllegalStateException(
+                  new HttpClientErrorException(HttpStatus.NOT_FOUND));
+            });
+    assertThrows(IllegalStateException.class, () -> notFound.getLibrarySource(missing));
+    assertTrue(unresolvedLibraryCache.isUnresolved(missing));
+  }
+
+  @Test
+  void testResolvedLibraryIsForgotten() {
+    unresolvedLibraryCache.markUnresolved(missing);
+    unresolvedLibraryCache.markResolved(missing);
+
+    assertFalse(unresolvedLibraryCache.isUnresolved(missing));
+  }
+}
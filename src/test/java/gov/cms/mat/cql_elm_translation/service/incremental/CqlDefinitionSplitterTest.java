@@ -0,0 +1,78 @@
+package gov.cms.mat.cql_elm_translation.service.incremental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cms.mat.cql_elm_translation.service.incremental.CqlDefinitionSplitter.SplitCql;
+
+class CqlDefinitionSplitterTest {
+  private static final String CQL =
+      """
+      library Test version '1.0.000'
+      using QDM version '5.6'
+      context Patient
+
+      define "Initial Population":
+        "Has Encounter" and Adult
+
+      define Adult:
+        true
+
+      define function "Has Encounter"():
+        exists ["Encounter, Performed"]
+      """;
+
+  @Test
+  void testSplit() {
+    SplitCql split = CqlDefinitionSplitter.split(CQL);
+
+    assertEquals(List.of("Initial Population", "Adult", "Has Encounter"), split.names());
+    assertEquals(5, split.blocks().get(0).startLine());
+    assertEquals(7, split.blocks().get(0).endLine());
+    assertTrue(split.header().startsWith("library Test"));
+    assertFalse(split.declarationAfterDefine());
+  }
+
+  @Test
+  void testReferences() {
+    SplitCql split = CqlDefinitionSplitter.split(CQL);
+
+    assertTrue(CqlDefinitionSplitter.references(split.blocks().get(0), "Adult"));
+    assertTrue(CqlDefinitionSplitter.references(split.blocks().get(0), "Has Encounter"));
+    assertFalse(CqlDefinitionSplitter.references(split.blocks().get(1), "Initial Population"));
+  }
+
+  @Test
+  void testReferencesFluentFunctionCall() {
+    SplitCql split =
+        CqlDefinitionSplitter.split(
+            CQL.replace("\"Has Encounter\" and Adult", "[\"Encounter, Performed\"].IsInpatient()"));
+
+    assertTrue(CqlDefinitionSplitter.references(split.blocks().get(0), "IsInpatient"));
+  }
+
+  @Test
+  void testReduceKeepsLineLayout() {
+    SplitCql split = CqlDefinitionSplitter.split(CQL);
+
+    String reduced = CqlDefinitionSplitter.reduce(CQL, split, Set.of("Adult"));
+
+    assertEquals(CQL.split("\n", -1).length, reduced.split("\n", -1).length);
+    assertFalse(reduced.contains("Initial Population"));
+    assertTrue(reduced.contains("define Adult:"));
+    assertTrue(reduced.contains("context Patient"));
+  }
+
+  @Test
+  void testDeclarationAfterDefineIsFlagged() {
+    SplitCql split = CqlDefinitionSplitter.split(CQL + "\nparameter \"Late\" Integer\n");
+
+    assertTrue(split.declarationAfterDefine());
+  }
+}
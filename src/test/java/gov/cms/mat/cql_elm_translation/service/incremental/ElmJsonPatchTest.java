@@ -0,0 +1,89 @@
+package gov.cms.mat.cql_elm_translation.service.incremental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
+import org.junit.jupiter.api.Test;
+
+class ElmJsonPatchTest implements ResourceFileUtil {
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  void testEqualDocumentsGiveEmptyPatch() throws Exception {
+    JsonNode elm = mapper.readTree(getData("/cv_populations.json"));
+
+    assertTrue(ElmJsonPatch.diff(elm, elm.deepCopy()).isEmpty());
+  }
+
+  @Test
+  void testChangedDefinitionIsPatchedInPlace() throws Exception {
+    JsonNode source = mapper.readTree(getData("/cv_populations.json"));
+    JsonNode target = source.deepCopy();
+    ArrayNode defs = (ArrayNode) target.at("/library/statements/def");
+    ((ObjectNode) defs.get(1)).put("accessLevel", "Private");
+
+    ArrayNode patch = ElmJsonPatch.diff(source, target);
+
+    assertEquals(1, patch.size());
+    assertEquals("replace", patch.get(0).get("op").asText());
+    assertEquals("/library/statements/def/1/accessLevel", patch.get(0).get("path").asText());
+    assertEquals(target, apply(source, patch));
+  }
+
+  @Test
+  void testAddedAndRemovedElementsRoundTrip() throws Exception {
+    JsonNode source = mapper.readTree("{\"a/b\":[1,2,3,4],\"c~\":{\"x\":1},\"gone\":true}");
+    JsonNode target = mapper.readTree("{\"a/b\":[1,9,8,4,5],\"c~\":{\"x\":2,\"y\":[]}}");
+
+    ArrayNode patch = ElmJsonPatch.diff(source, target);
+
+    assertEquals(target, apply(source, patch));
+    assertTrue(patch.toString().contains("/a~1b/1"));
+    assertTrue(patch.toString().contains("/c~0/y"));
+  }
+
+  @Test
+  void testRemovedDefinitionRoundTrips() throws Exception {
+    JsonNode source = mapper.readTree(getData("/cv_populations.json"));
+    JsonNode target = source.deepCopy();
+    ((ArrayNode) target.at("/library/statements/def")).remove(2);
+
+    ArrayNode patch = ElmJsonPatch.diff(source, target);
+
+    assertEquals(target, apply(source, patch));
+  }
+
+  /** Minimal RFC 6902 applier for add, remove and replace. */
+  private JsonNode apply(JsonNode document, ArrayNode patch) {
+    JsonNode result = document.deepCopy();
+    for (JsonNode operation : patch) {
+      String path = operation.get("path").asText();
+      if (path.isEmpty()) {
+        result = operation.get("value");
+        continue;
+      }
+      int slash = path.lastIndexOf('/');
+      JsonNode parent = result.at(path.substring(0, slash));
+      String key = path.substring(slash + 1).replace("~1", "/").replace("~0", "~");
+      String op = operation.get("op").asText();
+      if (parent instanceof ArrayNode array) {
+        int index = Integer.parseInt(key);
+        switch (op) {
+          case "add" -> array.insert(index, operation.get("value"));
+          case "remove" -> array.remove(index);
+          default -> array.set(index, operation.get("value"));
+        }
+      } else if ("remove".equals(op)) {
+        ((ObjectNode) parent).remove(key);
+      } else {
+        ((ObjectNode) parent).set(key, operation.get("value"));
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,169 @@
+package gov.cms.mat.cql_elm_translation.service.incremental;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql.dto.CqlConversionPayload;
+import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.cache.IncludeTreeDigest;
+import gov.cms.mat.cql_elm_translation.service.incremental.CqlDefinitionSplitter.SplitCql;
+
+class IncrementalTranslationServiceTest implements ResourceFileUtil {
+  private static final String SESSION = "session";
+  private static final String INJECTION =
+      "[\"Medication, Order\": \"1 ML digoxin 0.1 MG/ML Injection\"]";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final CqlConversionService cqlConversionService =
+      new CqlConversionService(mock(CqlLibraryService.class));
+  private final List<String> compiled = new ArrayList<>();
+  private IncrementalTranslationService service;
+  private String cql;
+
+  @BeforeEach
+  void setUp() {
+    service =
+        new IncrementalTranslationService(
+            new ConcurrentMapCacheManager(IncrementalTranslationService.CACHE_NAME),
+            new IncludeTreeDigest("0\\.0\\.000"));
+    cql = getData("/warmup/qdm_warmup.cql");
+  }
+
+  @Test
+  void testFirstTranslationIsFull() {
+    IncrementalTranslationService.Result result = translate(cql);
+
+    assertFalse(result.incremental());
+    assertEquals(1, compiled.size());
+  }
+
+  @Test
+  void testChangedDefinitionIsSplicedIntoPreviousElm() throws Exception {
+    translate(cql);
+    String edited = cql.replace(INJECTION, "[\"Medication, Order\": \"Digoxin Medications\"]");
+
+    IncrementalTranslationService.Result result = translate(edited);
+
+    assertTrue(result.incremental());
+    assertNull(result.payload().getXml());
+    assertEquals(2, compiled.size());
+    assertEquals(edited.split("\n", -1).length, compiled.get(1).split("\n", -1).length);
+
+    JsonNode full =
+        objectMapper.readTree(
+            cqlConversionService.processCqlDataWithErrors(requestData(edited)).getJson());
+    JsonNode merged = objectMapper.readTree(result.payload().getJson());
+    assertEquals(defNames(full), defNames(merged));
+    assertTrue(
+        merged.at("/library/statements/def").toString().contains("Digoxin Medications"));
+  }
+
+  @Test
+  void testErrorInChangedDefinitionIsReported() throws Exception {
+    translate(cql);
+    String edited = cql.replace(INJECTION, "[\"Medication, Order\": \"Unknown Codes\"]");
+
+    IncrementalTranslationService.Result result = translate(edited);
+
+    assertTrue(result.incremental());
+    JsonNode merged = objectMapper.readTree(result.payload().getJson());
+    assertTrue(merged.path("errorExceptions").toString().contains("Unknown Codes"));
+  }
+
+  @Test
+  void testUnchangedCqlIsServedFromSession() {
+    translate(cql);
+
+    IncrementalTranslationService.Result result = translate(cql);
+
+    assertTrue(result.incremental());
+    assertEquals(1, compiled.size());
+  }
+
+  @Test
+  void testHeaderChangeFallsBackToFullTranslation() {
+    translate(cql);
+
+    IncrementalTranslationService.Result result =
+        translate(cql.replace("parameter \"Measurement Period\"", "parameter \"Period\""));
+
+    assertFalse(result.incremental());
+  }
+
+  @Test
+  void testRecompileSetIncludesDependents() {
+    IncrementalTranslationService.EditorSession session =
+        new IncrementalTranslationService.EditorSession(
+            "options", "includes", CqlDefinitionSplitter.split(cql), "{}");
+    String edited = cql.replace(INJECTION, "[\"Medication, Order\": \"Digoxin Medications\"]");
+
+    Set<String> recompile =
+        IncrementalTranslationService.recompileSet(
+            session, "options", "includes", CqlDefinitionSplitter.split(edited));
+
+    assertEquals(
+        new TreeSet<>(Set.of("MedicationOrderInjection", "Initial Population")),
+        new TreeSet<>(recompile));
+  }
+
+  @Test
+  void testChangedDraftIncludeFallsBackToFullTranslation() {
+    IncrementalTranslationService.EditorSession session =
+        new IncrementalTranslationService.EditorSession(
+            "options", "includes", CqlDefinitionSplitter.split(cql), "{}");
+    SplitCql split = CqlDefinitionSplitter.split(cql);
+
+    assertNull(
+        IncrementalTranslationService.recompileSet(session, "options", "edited includes", split));
+    assertNull(IncrementalTranslationService.recompileSet(session, "options", null, split));
+  }
+
+  private IncrementalTranslationService.Result translate(String text) {
+    return service.translate(
+        SESSION,
+        requestData(text),
+        null,
+        request -> {
+          compiled.add(request.getCqlData());
+          return cqlConversionService.processCqlDataWithErrors(request);
+        });
+  }
+
+  private Set<String> defNames(JsonNode elm) {
+    Set<String> names = new TreeSet<>();
+    elm.at("/library/statements/def").forEach(def -> names.add(def.path("name").asText()));
+    return names;
+  }
+
+  private static RequestData requestData(String text) {
+    return RequestData.builder()
+        .cqlData(text)
+        .showWarnings(false)
+        .annotations(true)
+        .locators(true)
+        .disableListDemotion(true)
+        .disableListPromotion(true)
+        .disableMethodInvocation(false)
+        .validateUnits(true)
+        .resultTypes(true)
+        .build();
+  }
+}
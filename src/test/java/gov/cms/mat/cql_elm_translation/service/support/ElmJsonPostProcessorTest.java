@@ -0,0 +1,106 @@
+package gov.cms.mat.cql_elm_translation.service.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
+import gov.cms.mat.cql_elm_translation.service.filters.AnnotationErrorFilter;
+import org.cqframework.cql.cql2elm.CqlCompilerException;
+import org.junit.jupiter.api.Test;
+
+class ElmJsonPostProcessorTest implements ResourceFileUtil {
+  private static final String CQL = "library URI_HEDIS_2020 version '1.1.000'\n";
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void testUnchangedJsonIsReturnedAsIs() {
+    String json = getData("/fhir4_std_lib_no_annotations.json");
+    ElmJsonPostProcessor postProcessor = new ElmJsonPostProcessor(CQL, false, List.of());
+
+    assertSame(json, postProcessor.process(json));
+    assertFalse(postProcessor.isMissingModelReported());
+  }
+
+  @Test
+  void testMatchesSeparateSteps() throws JsonProcessingException {
+    String json = getData("/fhir4_std_lib_errors_annotations.json");
+    List<CqlCompilerException> errors =
+        List.of(new CqlCompilerException("message", CqlCompilerException.ErrorSeverity.Error));
+
+    String filtered = new AnnotationErrorFilter(CQL, false, json).filter();
+    String expected = new CqlExceptionErrorProcessor(errors, filtered).process();
+    String processed = new ElmJsonPostProcessor(CQL, false, errors).process(json);
+
+    assertEquals(objectMapper.readTree(expected), objectMapper.readTree(processed));
+    assertEquals("errorExceptions", objectMapper.readTree(processed).fieldNames().next());
+    assertFalse(processed.contains("\"errorSeverity\" : \"error\""));
+    assertTrue(processed.contains("\"externalErrors\""));
+  }
+
+  @Test
+  void testStripsTranslatorOptions() throws JsonProcessingException {
+    JsonNode root = objectMapper.readTree(getData("/fhir4_std_lib_errors.json"));
+
+    assertTrue(ElmJsonPostProcessor.stripTranslatorOptions(root));
+    assertFalse(root.toString().contains("\"translatorOptions\""));
+  }
+
+  @Test
+  void testStripsTranslatorOptionsWithoutErrors() throws JsonProcessingException {
+    JsonNode root = objectMapper.readTree(getData("/fhir4_std_lib_no_errors.json"));
+
+    assertTrue(ElmJsonPostProcessor.stripTranslatorOptions(root));
+    assertFalse(root.toString().contains("\"translatorOptions\""));
+  }
+
+  @Test
+  void testLibraryWithoutAnnotationsIsLeftAlone() throws JsonProcessingException {
+    JsonNode root = objectMapper.readTree(getData("/fhir4_std_lib_no_annotations.json"));
+    JsonNode original = root.deepCopy();
+
+    assertFalse(ElmJsonPostProcessor.stripTranslatorOptions(root));
+    assertEquals(original, root);
+  }
+
+  @Test
+  void testEmptyAnnotationsAreRemoved() throws JsonProcessingException {
+    JsonNode root =
+        objectMapper.readTree(getData("/fhir4_std_lib_empty_array_annotations.json"));
+
+    assertTrue(ElmJsonPostProcessor.stripTranslatorOptions(root));
+    assertNull(root.get("library").get("annotation"));
+  }
+
+  @Test
+  void testInvalidJsonIsRejected() {
+    ElmJsonPostProcessor postProcessor = new ElmJsonPostProcessor(CQL, false, List.of());
+
+    assertThrows(UncheckedIOException.class, () -> postProcessor.process("{this isn't json/>"));
+  }
+
+  @Test
+  void testReportsMissingModel() {
+    String json = getData("/fhir4_std_lib_no_annotations.json");
+    List<CqlCompilerException> errors =
+        List.of(
+            new CqlCompilerException(
+                "Cannot invoke \"gov.cms.mat.cql.elements.UsingProperties.getVersion()\" because "
+                    + "the return value of \"java.lang.ThreadLocal.get()\" is null",
+                CqlCompilerException.ErrorSeverity.Error));
+    ElmJsonPostProcessor postProcessor = new ElmJsonPostProcessor(CQL, false, errors);
+
+    postProcessor.process(json);
+
+    assertTrue(postProcessor.isMissingModelReported());
+  }
+}
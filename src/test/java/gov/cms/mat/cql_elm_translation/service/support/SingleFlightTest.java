@@ -0,0 +1,176 @@
+package gov.cms.mat.cql_elm_translation.service.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationRejectedException;
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationTimeoutException;
+
+class SingleFlightTest {
+  private final AtomicInteger coalesced = new AtomicInteger();
+  private final SingleFlight<String, Object> singleFlight =
+      new SingleFlight<>(coalesced::incrementAndGet);
+
+  @Test
+  void testConcurrentCallersShareOneExecution() throws Exception {
+    int callers = 4;
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    Object result = new Object();
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    try {
+      List<Future<Object>> futures = new ArrayList<>();
+      for (int i = 0; i < callers; i++) {
+        futures.add(
+            executor.submit(
+                () ->
+                    singleFlight.execute(
+                        "key",
+                        () -> {
+                          executions.incrementAndGet();
+                          await(release);
+                          return result;
+                        })));
+      }
+      while (coalesced.get() < callers - 1) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      for (Future<Object> future : futures) {
+        assertSame(result, future.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, executions.get());
+      assertEquals(0, singleFlight.inFlight());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testSequentialCallsAreNotCoalesced() {
+    singleFlight.execute("key", Object::new);
+    singleFlight.execute("key", Object::new);
+
+    assertEquals(0, coalesced.get());
+  }
+
+  @Test
+  void testExceptionIsRethrownAndForgotten() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            singleFlight.execute(
+                "key",
+                () -> {
+                  throw new IllegalStateException("failed");
+                }));
+
+    assertEquals(0, singleFlight.inFlight());
+  }
+
+  @Test
+  void testJoinedCallerRunsTheWorkItselfWhenTheFirstCallerTimedOut() throws Exception {
+    assertEquals(
+        "own",
+        joinFailingLeader(
+            new TranslationTimeoutException(
+                TranslationDeadline.STAGE_COMPILE, Duration.ofMillis(1), Duration.ofMillis(2))));
+  }
+
+  @Test
+  void testJoinedCallerRunsTheWorkItselfWhenTheFirstCallerWasRejected() throws Exception {
+    assertEquals(
+        "own", joinFailingLeader(new TranslationRejectedException("full", Duration.ofSeconds(1))));
+  }
+
+  @Test
+  void testJoinedCallerWaitsNoLongerThanItsOwnDeadline() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> leader =
+          executor.submit(
+              () ->
+                  singleFlight.execute(
+                      "key",
+                      () -> {
+                        started.countDown();
+                        await(release);
+                        return "shared";
+                      }));
+      started.await(5, TimeUnit.SECONDS);
+
+      assertThrows(
+          TranslationTimeoutException.class,
+          () ->
+              TranslationDeadline.callWith(
+                  TranslationDeadline.of(Duration.ofMillis(50)),
+                  () -> singleFlight.execute("key", () -> "own")));
+      release.countDown();
+
+      assertEquals("shared", leader.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Object joinFailingLeader(RuntimeException failure) throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Object> leader =
+          executor.submit(
+              () ->
+                  singleFlight.execute(
+                      "key",
+                      () -> {
+                        started.countDown();
+                        await(release);
+                        throw failure;
+                      }));
+      started.await(5, TimeUnit.SECONDS);
+      Future<Object> joined =
+          executor.submit(
+              () ->
+                  TranslationDeadline.callWith(
+                      TranslationDeadline.of(Duration.ofSeconds(5)),
+                      () -> singleFlight.execute("key", () -> "own")));
+      while (coalesced.get() < 1) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      ExecutionException leaderFailure =
+          assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+      assertSame(failure, leaderFailure.getCause());
+      return joined.get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
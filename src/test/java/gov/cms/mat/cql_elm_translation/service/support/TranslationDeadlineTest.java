@@ -0,0 +1,70 @@
+package gov.cms.mat.cql_elm_translation.service.support;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import gov.cms.mat.cql_elm_translation.exceptions.TranslationTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class TranslationDeadlineTest {
+
+  @AfterEach
+  void tearDown() {
+    TranslationDeadline.clear();
+  }
+
+  @Test
+  void testChecksAreNoOpsWithoutDeadline() {
+    assertDoesNotThrow(() -> TranslationDeadline.checkpoint(TranslationDeadline.STAGE_COMPILE));
+    assertEquals(Duration.ofSeconds(3), TranslationDeadline.remaining(Duration.ofSeconds(3)));
+  }
+
+  @Test
+  void testCheckpointRecordsStageWhileTimeIsLeft() {
+    TranslationDeadline deadline = TranslationDeadline.start(Duration.ofMinutes(1));
+    TranslationDeadline.checkpoint(TranslationDeadline.STAGE_INCLUDE_FETCH);
+    assertEquals(TranslationDeadline.STAGE_INCLUDE_FETCH, deadline.getStage());
+    assertEquals(Duration.ofSeconds(3), TranslationDeadline.remaining(Duration.ofSeconds(3)));
+    Duration remaining = TranslationDeadline.remaining(Duration.ofHours(1));
+    assertTrue(remaining.compareTo(Duration.ofMinutes(1)) <= 0);
+  }
+
+  @Test
+  void testCheckpointFailsWithStageOnceExpired() {
+    TranslationDeadline.start(Duration.ZERO);
+    TranslationTimeoutException ex =
+        assertThrows(
+            TranslationTimeoutException.class,
+            () -> TranslationDeadline.checkpoint(TranslationDeadline.STAGE_ANALYSIS));
+    assertEquals(TranslationDeadline.STAGE_ANALYSIS, ex.getStage());
+    assertEquals(Duration.ZERO, ex.getTimeout());
+    assertEquals(Duration.ZERO, TranslationDeadline.remaining(Duration.ofSeconds(3)));
+  }
+
+  @Test
+  void testCallWithBindsAndRestoresDeadline() {
+    TranslationDeadline current = TranslationDeadline.start(Duration.ofMinutes(1));
+    TranslationDeadline expired = TranslationDeadline.start(Duration.ZERO);
+    TranslationDeadline.start(Duration.ofMinutes(1));
+    assertSame(current, TranslationDeadline.callWith(current, TranslationDeadline::current));
+
+    TranslationDeadline.clear();
+    assertThrows(
+        TranslationTimeoutException.class,
+        () ->
+            TranslationDeadline.callWith(
+                expired,
+                () -> {
+                  TranslationDeadline.checkpoint(TranslationDeadline.STAGE_COMPILE);
+                  return null;
+                }));
+    assertNull(TranslationDeadline.current());
+  }
+}
@@ -0,0 +1,102 @@
+package gov.cms.mat.cql_elm_translation.service.warmup;
+
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.mat.cql_elm_translation.dto.LibraryReference;
+import gov.cms.mat.cql_elm_translation.dto.LibraryWarmupResult;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.cache.CompiledLibraryCache;
+import gov.cms.mat.cql_elm_translation.service.cache.LibraryBundle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LibraryWarmupServiceTest {
+  private static final String STUB =
+      """
+      library MadieLibraryWarmup version '0.0.000'
+      using QDM version '5.6'
+      include MATGlobalCommonFunctions version '7.0.000' called Warmed
+      """;
+
+  @Mock private CqlConversionService cqlConversionService;
+  @Mock private CqlLibraryService cqlLibraryService;
+
+  private LibraryWarmupService service;
+
+  @BeforeEach
+  void setUp() {
+    LibraryBundle libraryBundle =
+        new LibraryBundle(
+            new CompiledLibraryCache(
+                new ConcurrentMapCacheManager(CompiledLibraryCache.CACHE_NAME), "0\\.0\\.000"),
+            "classpath:mat_global_common_functions.cql");
+    service =
+        new LibraryWarmupService(cqlConversionService, cqlLibraryService, libraryBundle, true);
+  }
+
+  @Test
+  void testBundledLibraryIsCompiledWithoutFetching() {
+    when(cqlConversionService.precompile(STUB, "library-bundle")).thenReturn(List.of());
+
+    service.warmBundle();
+
+    verify(cqlConversionService).precompile(STUB, "library-bundle");
+    verify(cqlLibraryService, never()).getLibraryCql(anyString(), anyString(), anyString());
+  }
+
+  @Test
+  void testOtherLibrariesAreFetchedAndErrorsReported() {
+    when(cqlLibraryService.getLibraryCql("Other", "1.0.000", "token"))
+        .thenReturn("library Other version '1.0.000'\nusing FHIR version '4.0.1'\n");
+    when(cqlConversionService.precompile(anyString(), eq("token")))
+        .thenReturn(List.of("Could not resolve FHIRHelpers"));
+
+    List<LibraryWarmupResult> results =
+        service.warm(
+            List.of(
+                LibraryReference.builder().name("Other").version("1.0.000").build(),
+                LibraryReference.builder().name("Unversioned").build()),
+            "token");
+
+    assertEquals(2, results.size());
+    assertFalse(results.get(0).isWarmed());
+    assertEquals("Could not resolve FHIRHelpers", results.get(0).getError());
+    assertEquals("Name and version are required", results.get(1).getError());
+    verify(cqlConversionService)
+        .precompile(
+            "library MadieLibraryWarmup version '0.0.000'\nusing FHIR version '4.0.1'\n"
+                + "include Other version '1.0.000' called Warmed\n",
+            "token");
+  }
+
+  @Test
+  void testBundledLibraryIsWarmedOnDemand() {
+    when(cqlConversionService.precompile(STUB, "token")).thenReturn(List.of());
+
+    List<LibraryWarmupResult> results =
+        service.warm(
+            List.of(
+                LibraryReference.builder()
+                    .name("MATGlobalCommonFunctions")
+                    .version("7.0.000")
+                    .build()),
+            "token");
+
+    assertTrue(results.get(0).isWarmed());
+  }
+}
@@ -0,0 +1,129 @@
+package gov.cms.mat.cql_elm_translation.service.warmup;
+
+import gov.cms.madie.cql_elm_translator.service.CqlLibraryService;
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql_elm_translation.service.CqlConversionService;
+import gov.cms.mat.cql_elm_translation.service.CqlParsingService;
+import gov.cms.mat.cql_elm_translation.service.DataCriteriaService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TranslatorWarmupServiceTest {
+  private static final String LOCATIONS = "classpath:warmup/*.cql";
+
+  @Mock private CqlConversionService cqlConversionService;
+  @Mock private CqlParsingService cqlParsingService;
+  @Mock private DataCriteriaService dataCriteriaService;
+  @Mock private CqlLibraryService cqlLibraryService;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final List<Object> events = new ArrayList<>();
+
+  @Test
+  void testWarmUpRunsEveryCqlForEachIteration() {
+    TranslatorWarmupService service = service(true, 2);
+    TranslatorWarmupHealthIndicator healthIndicator = new TranslatorWarmupHealthIndicator(service);
+    assertEquals(Status.UP, healthIndicator.health().getStatus());
+
+    service.warmUp();
+
+    // bundled QDM and FHIR warm-up CQL, twice each
+    verify(cqlConversionService, times(4)).processCqlDataWithErrors(any(RequestData.class));
+    verify(cqlParsingService, times(4)).getCqlBuilderLookups(anyString(), anyString());
+    verify(dataCriteriaService, times(4)).getSourceDataCriteria(anyString(), anyString());
+    assertEquals(TranslatorWarmupService.WarmupState.COMPLETED, service.getState());
+    assertNotNull(service.getDuration());
+    assertEquals(Status.UP, healthIndicator.health().getStatus());
+    assertEquals(
+        1,
+        meterRegistry
+            .get(TranslatorWarmupService.WARMUP_TIMER)
+            .tag("outcome", "COMPLETED")
+            .timer()
+            .count());
+  }
+
+  @Test
+  void testTrafficIsRefusedUntilTheWarmUpHasFinished() {
+    TranslatorWarmupService service = service(true, 1);
+
+    service.onReadinessChange(readiness(ReadinessState.ACCEPTING_TRAFFIC));
+    assertEquals(List.of(ReadinessState.REFUSING_TRAFFIC), readinessStates());
+
+    service.warmUp();
+    service.onReadinessChange(readiness(ReadinessState.ACCEPTING_TRAFFIC));
+
+    assertEquals(
+        List.of(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC),
+        readinessStates());
+  }
+
+  @Test
+  void testFailingStepDoesNotBlockReadiness() {
+    TranslatorWarmupService service = service(true, 1);
+    when(cqlConversionService.processCqlDataWithErrors(any(RequestData.class)))
+        .thenThrow(new IllegalStateException("boom"));
+
+    service.warmUp();
+
+    assertEquals(TranslatorWarmupService.WarmupState.COMPLETED, service.getState());
+    verify(cqlParsingService, never()).getCqlBuilderLookups(anyString(), anyString());
+  }
+
+  @Test
+  void testDisabledWarmUpIsReady() {
+    TranslatorWarmupService service = service(false, 3);
+
+    service.onApplicationReady();
+
+    service.onReadinessChange(readiness(ReadinessState.ACCEPTING_TRAFFIC));
+
+    assertEquals(TranslatorWarmupService.WarmupState.SKIPPED, service.getState());
+    assertEquals(Status.UP, new TranslatorWarmupHealthIndicator(service).health().getStatus());
+    assertEquals(List.of(), readinessStates());
+    verify(cqlConversionService, never()).processCqlDataWithErrors(any(RequestData.class));
+  }
+
+  private AvailabilityChangeEvent<ReadinessState> readiness(ReadinessState state) {
+    return new AvailabilityChangeEvent<>(this, state);
+  }
+
+  private List<Object> readinessStates() {
+    return events.stream()
+        .map(event -> ((AvailabilityChangeEvent<?>) event).getState())
+        .map(Object.class::cast)
+        .toList();
+  }
+
+  private TranslatorWarmupService service(boolean enabled, int iterations) {
+    return new TranslatorWarmupService(
+        cqlConversionService,
+        cqlParsingService,
+        dataCriteriaService,
+        cqlLibraryService,
+        meterRegistry,
+        events::add,
+        enabled,
+        iterations,
+        LOCATIONS);
+  }
+}
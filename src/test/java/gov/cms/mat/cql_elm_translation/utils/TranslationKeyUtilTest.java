@@ -0,0 +1,72 @@
+package gov.cms.mat.cql_elm_translation.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.cqframework.cql.cql2elm.LibraryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gov.cms.madie.cql_elm_translator.utils.cql.data.RequestData;
+import gov.cms.mat.cql_elm_translation.ResourceFileUtil;
+
+class TranslationKeyUtilTest implements ResourceFileUtil {
+  private RequestData requestData;
+
+  @BeforeEach
+  void setUp() {
+    requestData =
+        RequestData.builder()
+            .cqlData(getData("/cv_populations.cql"))
+            .showWarnings(false)
+            .signatures(LibraryBuilder.SignatureLevel.All)
+            .annotations(true)
+            .locators(true)
+            .disableListDemotion(true)
+            .disableListPromotion(true)
+            .disableMethodInvocation(false)
+            .validateUnits(true)
+            .resultTypes(true)
+            .build();
+  }
+
+  @Test
+  void testIncludesAreSortedNameVersionPairs() {
+    assertThat(
+        TranslationKeyUtil.includes(requestData.getCqlData()),
+        contains(
+            "FHIRHelpers|4.0.001",
+            "MATGlobalCommonFunctionsFHIR4|4.0.001",
+            "SupplementalDataElementsFHIR4|4.0.001"));
+  }
+
+  @Test
+  void testIncludesForBlankCql() {
+    assertTrue(TranslationKeyUtil.includes(" ").isEmpty());
+  }
+
+  @Test
+  void testKeyIsStableForSameRequest() {
+    assertEquals(
+        TranslationKeyUtil.forRequest(requestData, "3.14.0"),
+        TranslationKeyUtil.forRequest(requestData.toBuilder().build(), "3.14.0"));
+  }
+
+  @Test
+  void testKeyChangesWithOptions() {
+    RequestData withWarnings = requestData.toBuilder().showWarnings(true).build();
+    assertNotEquals(
+        TranslationKeyUtil.forRequest(requestData, "3.14.0"),
+        TranslationKeyUtil.forRequest(withWarnings, "3.14.0"));
+  }
+
+  @Test
+  void testKeyChangesWithTranslatorVersion() {
+    assertNotEquals(
+        TranslationKeyUtil.forRequest(requestData, "3.14.0"),
+        TranslationKeyUtil.forRequest(requestData, "3.15.0"));
+  }
+}